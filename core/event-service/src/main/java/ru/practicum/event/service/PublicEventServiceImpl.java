@@ -15,9 +15,12 @@ import ru.practicum.event.mapper.EventMapper;
 import ru.practicum.event.model.Event;
 import ru.practicum.event.model.EventState;
 import ru.practicum.event.repository.EventRepository;
+import ru.practicum.ewm.BufferedStatsClient;
 import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.ResourceStatsOutputDto;
+import ru.practicum.ewm.ResourceStatsRequestParams;
 import ru.practicum.ewm.StatsClient;
-import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.TrendingOutputDto;
 import ru.practicum.exception.BadRequestException;
 import ru.practicum.exception.NotFoundException;
 import ru.practicum.user.model.User;
@@ -35,6 +38,7 @@ public class PublicEventServiceImpl implements PublicEventService {
 
     private final EventRepository eventRepository;
     private final StatsClient statsClient;
+    private final BufferedStatsClient bufferedStatsClient;
     private final EventMapper eventMapper;
     private final UserClient userClient;
 
@@ -48,7 +52,7 @@ public class PublicEventServiceImpl implements PublicEventService {
             throw new NotFoundException("Event с id " + id + " еще не опубликован");
         }
 
-        addHit(request);
+        addHitNow(request);
         updateEventViews(event);
 
         User u = getUserOrThrow(event.getInitiatorId());
@@ -142,22 +146,18 @@ public class PublicEventServiceImpl implements PublicEventService {
     }
 
     private Map<Long, Long> getViewsForEvents(List<Event> events) {
-        List<String> uris = events.stream()
-                .map(event -> "/events/" + event.getId())
+        List<Long> eventIds = events.stream()
+                .map(Event::getId)
                 .collect(Collectors.toList());
 
         try {
-            List<ViewStatsOutputDto> response = statsClient.getStats(
-                    LocalDateTime.now().minusYears(999),
-                    LocalDateTime.now().plusYears(1),
-                    uris,
-                    true
-            );
+            List<ResourceStatsOutputDto> response = statsClient.queryResourceStats(exactViews(eventIds));
 
             return response.stream()
                     .collect(Collectors.toMap(
-                            stat -> Long.parseLong(stat.getUri().substring("/events/".length())),
-                            ViewStatsOutputDto::getHits
+                            ResourceStatsOutputDto::getResourceId,
+                            ResourceStatsOutputDto::getHits,
+                            Long::sum
                     ));
         } catch (Exception e) {
             log.error("Ошибка при получении статистики просмотров", e);
@@ -180,16 +180,10 @@ public class PublicEventServiceImpl implements PublicEventService {
 
     private void updateEventViews(Event event) {
         try {
-            String uri = "/events/" + event.getId();
-            List<ViewStatsOutputDto> response = statsClient.getStats(
-                    LocalDateTime.now().minusYears(999),
-                    LocalDateTime.now().plusYears(1),
-                    List.of(uri),
-                    true
-            );
+            List<ResourceStatsOutputDto> response = statsClient.queryResourceStats(exactViews(List.of(event.getId())));
 
             if (!response.isEmpty()) {
-                long hits = response.get(0).getHits();
+                long hits = response.stream().mapToLong(ResourceStatsOutputDto::getHits).sum();
                 event.setViews(hits);
                 eventRepository.save(event);
             }
@@ -198,25 +192,65 @@ public class PublicEventServiceImpl implements PublicEventService {
         }
     }
 
+    // Просмотры - точное число уникальных IP за все время: оценка по скетчу расходится с ним на несколько процентов
+    private static ResourceStatsRequestParams exactViews(List<Long> eventIds) {
+        return new ResourceStatsRequestParams("events", eventIds, null, null, true, true);
+    }
+
     private void sortEventDtos(List<EventShortDto> dtos, EventSort sort) {
         if (sort == EventSort.EVENT_DATE) {
             dtos.sort(Comparator.comparing(EventShortDto::getEventDate));
+        } else if (sort == EventSort.TRENDING) {
+            Map<Long, Double> scoreByEventId = getTrendingScores(dtos);
+            dtos.sort(Comparator.comparing((EventShortDto dto) -> scoreByEventId.getOrDefault(dto.getId(), 0.0),
+                    Comparator.reverseOrder()));
         } else {
             dtos.sort(Comparator.comparing(EventShortDto::getViews, Comparator.reverseOrder()));
         }
     }
 
+    // Популярность считает stats-server по каждому хиту, поэтому сортировка не требует запросов по диапазону дат
+    private Map<Long, Double> getTrendingScores(List<EventShortDto> dtos) {
+        List<String> uris = dtos.stream()
+                .map(dto -> "/events/" + dto.getId())
+                .collect(Collectors.toList());
+
+        try {
+            return statsClient.getTrending(null, uris, null).stream()
+                    .collect(Collectors.toMap(
+                            score -> Long.parseLong(score.getUri().substring("/events/".length())),
+                            TrendingOutputDto::getScore,
+                            Double::sum
+                    ));
+        } catch (Exception e) {
+            log.error("Ошибка при получении популярности событий", e);
+        }
+
+        return Collections.emptyMap();
+    }
+
     private void addHit(HttpServletRequest request) {
-        EndpointHitInputDto hit = new EndpointHitInputDto();
-        hit.setApp(APP_NAME);
-        hit.setUri(request.getRequestURI());
-        hit.setIp(request.getRemoteAddr());
-        hit.setTimestamp(LocalDateTime.now());
+        bufferedStatsClient.record(toHit(request));
+    }
 
+    // Просмотры события читаются сразу после записи хита, а из буфера хит ушел бы позже и не попал бы в ответ.
+    // Поэтому хит этого запроса отправляется синхронно; если stats-server его не принял, хит остается буферу
+    private void addHitNow(HttpServletRequest request) {
+        EndpointHitInputDto hit = toHit(request);
         try {
             statsClient.addHit(hit);
         } catch (Exception e) {
-            log.error("Ошибка при отправке статистики просмотра", e);
+            log.warn("Хит {} не отправлен в stats-server, он передан в буфер: {}", hit.getUri(), e.getMessage());
+            bufferedStatsClient.record(hit);
         }
     }
+
+    private EndpointHitInputDto toHit(HttpServletRequest request) {
+        EndpointHitInputDto hit = new EndpointHitInputDto();
+        hit.setApp(APP_NAME);
+        hit.setUri(request.getRequestURI());
+        hit.setIp(request.getRemoteAddr());
+        hit.setTimestamp(LocalDateTime.now());
+        return hit;
+    }
 }
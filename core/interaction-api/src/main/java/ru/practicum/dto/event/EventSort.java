@@ -2,4 +2,6 @@ package ru.practicum.dto.event;
 
 public enum EventSort {
     EVENT_DATE,
+    VIEWS,
+    TRENDING, // По популярности за последнее время: недавние просмотры весят больше старых
 }
@@ -0,0 +1,46 @@
+package ru.practicum.ewm.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.StatisticServer;
+
+import java.util.Map;
+
+// Поднимает контекст stats-server без config-server, Eureka и веб-сервера поверх локальной PostgreSQL.
+// H2 не подходит: схема использует секционирование, тип INET и ON CONFLICT ... RETURNING.
+// Параметры подключения задаются системными свойствами bench.jdbc.url, bench.jdbc.username, bench.jdbc.password
+final class BenchContext {
+
+    static final String JDBC_URL = System.getProperty("bench.jdbc.url",
+            "jdbc:postgresql://localhost:6541/statsdb_bench?reWriteBatchedInserts=true");
+    static final String JDBC_USERNAME = System.getProperty("bench.jdbc.username", "postgres");
+    static final String JDBC_PASSWORD = System.getProperty("bench.jdbc.password", "12345");
+
+    private BenchContext() {
+    }
+
+    // Схема не пересоздается: ее и данные готовит SyntheticDataset
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(StatisticServer.class)
+                .web(WebApplicationType.NONE)
+                .properties(Map.ofEntries(
+                        Map.entry("spring.config.import", ""),
+                        Map.entry("spring.cloud.config.enabled", "false"),
+                        Map.entry("spring.cloud.discovery.enabled", "false"),
+                        Map.entry("eureka.client.enabled", "false"),
+                        Map.entry("spring.datasource.url", JDBC_URL),
+                        Map.entry("spring.datasource.username", JDBC_USERNAME),
+                        Map.entry("spring.datasource.password", JDBC_PASSWORD),
+                        Map.entry("spring.sql.init.mode", "never"),
+                        Map.entry("spring.jpa.show-sql", "false"),
+                        Map.entry("logging.level.root", "WARN"),
+                        Map.entry("stats.store.engine", "jpa"),
+                        Map.entry("stats.ingestion.mode", "sync"),
+                        Map.entry("stats.ingestion.overload-policy", "wait"),
+                        Map.entry("stats.query.cache.enabled", "false"),
+                        Map.entry("stats.top.warm-up", "false"),
+                        Map.entry("stats.trending.warm-up", "false")))
+                .run();
+    }
+}
@@ -0,0 +1,180 @@
+package ru.practicum.ewm.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Сравнение stats-server и stats-server-reactive под всплесками записи: каждую burst.interval на сервер
+// одновременно уходит burst.size запросов POST /hit. Для каждого сервера измеряются перцентили задержки
+// и наибольшее число живых потоков JVM (jvm_threads_live_threads из /actuator/prometheus, опрос раз в 100 мс).
+// Оба сервера уже должны быть запущены (stats-server по умолчанию слушает случайный порт, для сравнения - server.port=9090);
+// JMH здесь не подходит - измеряется сервер, а не код в этом процессе.
+// Запуск: mvn -Pbench -pl stats/stats-bench exec:exec@burst -Dburst.targets=имя=url,...
+// Результаты в формате JSON пишутся в target/burst-result.json.
+// Серверы делают разную работу на каждый хит: stats-server обновляет агрегаты, скетчи, счетчики и слушателей,
+// stats-server-reactive только вставляет сырую строку. Разница записывается в результаты рядом с цифрами
+public final class BurstLoadComparison {
+
+    private static final Logger log = LoggerFactory.getLogger(BurstLoadComparison.class);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String THREADS_METRIC = "jvm_threads_live_threads";
+    private static final String WRITE_PATHS = "Пути записи не равноценны: stats-server на каждый хит обновляет "
+            + "минутные, часовые и дневные агрегаты, скетчи HyperLogLog, счетчики за все время, топ и популярность, "
+            + "stats-server-reactive только вставляет сырую строку в endpoint_hit. Разница задержек включает эту работу "
+            + "и не сводится к модели потоков";
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final int burstSize = Integer.getInteger("burst.size", 500);
+    private final int burstCount = Integer.getInteger("burst.count", 20);
+    private final int warmUpBursts = Integer.getInteger("burst.warm-up", 3);
+    private final Duration interval = Duration.ofMillis(Long.getLong("burst.interval", 1000));
+    private final AtomicLong sequence = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        String targets = System.getProperty("burst.targets",
+                "stats-server=http://localhost:9090,stats-server-reactive=http://localhost:9091");
+        BurstLoadComparison comparison = new BurstLoadComparison();
+
+        Map<String, Map<String, Object>> targetResults = new LinkedHashMap<>();
+        for (String target : targets.split(",")) {
+            String[] nameAndUrl = target.split("=", 2);
+            targetResults.put(nameAndUrl[0], comparison.run(nameAndUrl[1]));
+            log.info("{}: {}", nameAndUrl[0], targetResults.get(nameAndUrl[0]));
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("note", WRITE_PATHS);
+        results.put("targets", targetResults);
+        Path output = Path.of(System.getProperty("burst.output", "target/burst-result.json"));
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+        log.info("Результаты записаны в {}", output.toAbsolutePath());
+    }
+
+    private Map<String, Object> run(String baseUrl) throws Exception {
+        for (int i = 0; i < warmUpBursts; i++) {
+            burst(baseUrl, new long[burstSize], new AtomicInteger());
+            Thread.sleep(interval.toMillis());
+        }
+
+        int baselineThreads = liveThreads(baseUrl);
+        AtomicInteger peakThreads = new AtomicInteger(baselineThreads);
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = Thread.ofVirtual().start(() -> {
+            while (sampling.get()) {
+                try {
+                    peakThreads.accumulateAndGet(liveThreads(baseUrl), Math::max);
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    // Сервер не успел ответить на опрос под нагрузкой, пропускаем отсчет
+                }
+            }
+        });
+
+        long[] latencies = new long[burstSize * burstCount];
+        AtomicInteger errors = new AtomicInteger();
+        long started = System.nanoTime();
+        for (int i = 0; i < burstCount; i++) {
+            long burstStarted = System.nanoTime();
+            long[] burstLatencies = new long[burstSize];
+            burst(baseUrl, burstLatencies, errors);
+            System.arraycopy(burstLatencies, 0, latencies, i * burstSize, burstSize);
+            long rest = interval.toNanos() - (System.nanoTime() - burstStarted);
+            if (rest > 0) {
+                Thread.sleep(Duration.ofNanos(rest));
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        sampling.set(false);
+        sampler.join();
+
+        Arrays.sort(latencies);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", latencies.length);
+        result.put("errors", errors.get());
+        result.put("throughputPerSecond", latencies.length * 1e9 / elapsed);
+        result.put("p50Ms", percentile(latencies, 0.5));
+        result.put("p90Ms", percentile(latencies, 0.9));
+        result.put("p99Ms", percentile(latencies, 0.99));
+        result.put("p999Ms", percentile(latencies, 0.999));
+        result.put("maxMs", latencies[latencies.length - 1] / 1e6);
+        result.put("baselineThreads", baselineThreads);
+        result.put("peakThreads", peakThreads.get());
+        return result;
+    }
+
+    // Все запросы всплеска отправляются сразу; задержка - от отправки до получения ответа
+    private void burst(String baseUrl, long[] latencies, AtomicInteger errors) {
+        List<CompletableFuture<Void>> responses = new ArrayList<>(latencies.length);
+        for (int i = 0; i < latencies.length; i++) {
+            int index = i;
+            long sent = System.nanoTime();
+            responses.add(httpClient.sendAsync(hitRequest(baseUrl), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        latencies[index] = System.nanoTime() - sent;
+                        if (error != null || response.statusCode() != 201) {
+                            errors.incrementAndGet();
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private HttpRequest hitRequest(String baseUrl) {
+        long n = sequence.incrementAndGet();
+        String body = "{\"app\":\"bench-burst\",\"uri\":\"/events/" + (n % SyntheticDataset.URIS + 1)
+                + "\",\"ip\":\"10.1." + (n / 256 % 256) + "." + (n % 256)
+                + "\",\"timestamp\":\"" + LocalDateTime.now().format(TIMESTAMP) + "\"}";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/hit"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private int liveThreads(String baseUrl) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/prometheus"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        String metrics = httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(THREADS_METRIC)) {
+                return (int) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        throw new IOException("В ответе " + baseUrl + "/actuator/prometheus нет " + THREADS_METRIC);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.practicum.ewm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.service.StatisticServiceImpl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Запись хитов через StatisticServiceImpl в синхронном режиме: по одному (POST /hit) и пачками (POST /hits).
+// Результат - пропускная способность в хитах в секунду, для пачек пересчитана на один хит.
+// Хиты пишутся с текущим временем в секции текущего дня и не влияют на набор QueryBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(4)
+public class IngestionBenchmark {
+
+    private static final int BATCH = 100;
+
+    // Сколько разных uri получают хиты: от горячего события до длинного хвоста
+    @Param({"10", "10000"})
+    private int distinctUris;
+
+    private ConfigurableApplicationContext context;
+    private StatisticServiceImpl statisticService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticDataset.ensureSchema();
+        context = BenchContext.start();
+        statisticService = context.getBean(StatisticServiceImpl.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void singleHit() {
+        statisticService.createEndpointHit(hit());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batchedHits() {
+        List<EndpointHitInputDto> hits = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            hits.add(hit());
+        }
+        statisticService.createEndpointHits(hits, null);
+    }
+
+    private EndpointHitInputDto hit() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        EndpointHitInputDto hit = new EndpointHitInputDto();
+        hit.setApp("bench-app-" + (1 + random.nextInt(SyntheticDataset.APPS)));
+        hit.setUri("/events/" + (1 + random.nextInt(distinctUris)));
+        hit.setIp("10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256));
+        hit.setTimestamp(LocalDateTime.now());
+        return hit;
+    }
+}
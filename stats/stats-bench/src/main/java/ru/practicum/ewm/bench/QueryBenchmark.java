@@ -0,0 +1,94 @@
+package ru.practicum.ewm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.model.HitCount;
+import ru.practicum.ewm.repository.EndpointHitJdbcRepository;
+import ru.practicum.ewm.store.StatsStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Запросы статистики по синтетическому набору: findStats через движок хранения (агрегаты + сырые края)
+// и точный COUNT(DISTINCT ip) по сырым хитам. Кеш результатов отключен. Скетчи IP набор не заполняет,
+// поэтому оценка уникальных по скетчам здесь не измеряется.
+// Первый запуск с 100M хитов загружает набор десятки минут; для быстрого прогона: -p hits=1000000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"1000000", "10000000", "100000000"})
+    private long hits;
+
+    // Сколько uri в запросе: все (null) или страница событий
+    @Param({"all", "20"})
+    private String uris;
+
+    private ConfigurableApplicationContext context;
+    private StatsStore statsStore;
+    private EndpointHitJdbcRepository endpointHitJdbcRepository;
+    private List<String> uriList;
+    private List<Integer> uriIds;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private LocalDateTime dayStart;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticDataset.ensureLoaded(hits);
+        context = BenchContext.start();
+        statsStore = context.getBean(StatsStore.class);
+        endpointHitJdbcRepository = context.getBean(EndpointHitJdbcRepository.class);
+
+        uriList = "all".equals(uris) ? null : SyntheticDataset.uris(Integer.parseInt(uris));
+        uriIds = uriList == null ? null : context.getBean(HitDictionary.class).findUriIds(uriList);
+        // Границы не выровнены по часам, чтобы в план попадали и агрегаты, и сырые края
+        start = SyntheticDataset.start().plusMinutes(17).plusSeconds(5);
+        end = SyntheticDataset.end().minusMinutes(43);
+        dayStart = end.minusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStatsOutputDto> findStatsMonth() {
+        return statsStore.findStats(uriList, start, end, false, false);
+    }
+
+    @Benchmark
+    public List<ViewStatsOutputDto> findStatsDay() {
+        return statsStore.findStats(uriList, dayStart, end, false, false);
+    }
+
+    @Benchmark
+    public List<HitCount> findDistinctIpStatsDay() {
+        return endpointHitJdbcRepository.findDistinctIpStats(uriIds, dayStart, end);
+    }
+
+    @Benchmark
+    public List<HitCount> findDistinctIpStatsMonth() {
+        return endpointHitJdbcRepository.findDistinctIpStats(uriIds, start, end);
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.ewm.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// JSON тел POST /hit, POST /hits и ответа GET /stats с настройками ObjectMapper как в Spring MVC
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final TypeReference<List<EndpointHitInputDto>> HITS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<ViewStatsOutputDto>> STATS = new TypeReference<>() {
+    };
+
+    // Размер пачки хитов и число строк статистики
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private EndpointHitInputDto hit;
+    private List<EndpointHitInputDto> hits;
+    private List<ViewStatsOutputDto> stats;
+    private String hitJson;
+    private String hitsJson;
+    private String statsJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        hits = new ArrayList<>(size);
+        stats = new ArrayList<>(size);
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0, 0);
+        for (int i = 0; i < size; i++) {
+            EndpointHitInputDto endpointHit = new EndpointHitInputDto();
+            endpointHit.setApp("ewm-main-service");
+            endpointHit.setUri("/events/" + i);
+            endpointHit.setIp("192.168.0." + (i % 256));
+            endpointHit.setTimestamp(now.plusSeconds(i));
+            hits.add(endpointHit);
+            stats.add(new ViewStatsOutputDto("ewm-main-service", "/events/" + i, 1_000_000L - i));
+        }
+        hit = hits.get(0);
+
+        hitJson = objectMapper.writeValueAsString(hit);
+        hitsJson = objectMapper.writeValueAsString(hits);
+        statsJson = objectMapper.writeValueAsString(stats);
+    }
+
+    @Benchmark
+    public String serializeHit() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(hit);
+    }
+
+    @Benchmark
+    public EndpointHitInputDto deserializeHit() throws JsonProcessingException {
+        return objectMapper.readValue(hitJson, EndpointHitInputDto.class);
+    }
+
+    @Benchmark
+    public String serializeHits() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(hits);
+    }
+
+    @Benchmark
+    public List<EndpointHitInputDto> deserializeHits() throws JsonProcessingException {
+        return objectMapper.readValue(hitsJson, HITS);
+    }
+
+    @Benchmark
+    public String serializeStats() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(stats);
+    }
+
+    @Benchmark
+    public List<ViewStatsOutputDto> deserializeStats() throws JsonProcessingException {
+        return objectMapper.readValue(statsJson, STATS);
+    }
+}
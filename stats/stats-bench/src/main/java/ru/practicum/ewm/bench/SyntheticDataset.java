@@ -0,0 +1,104 @@
+package ru.practicum.ewm.bench;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Синтетический набор хитов за 30 дней до начала текущих суток: попадает в секцию по умолчанию и
+// не пересекается с хитами бенчмарков записи. Значения вычисляются из номера хита хешированием,
+// поэтому набор одинаков между запусками и релизами. Популярность uri скошена (куб равномерной величины),
+// как у реальных событий. Загруженный набор переиспользуется, пока совпадает его размер
+final class SyntheticDataset {
+
+    static final int APPS = 3;
+    static final int URIS = 10_000;
+    static final int IPS = 1_000_000;
+    static final int DAYS = 30;
+
+    private static final long CHUNK = 1_000_000;
+
+    private SyntheticDataset() {
+    }
+
+    static LocalDateTime start() {
+        return LocalDate.now().minusDays(DAYS).atStartOfDay();
+    }
+
+    static LocalDateTime end() {
+        return LocalDate.now().atStartOfDay();
+    }
+
+    static List<String> uris(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(id -> "/events/" + id)
+                .toList();
+    }
+
+    // Для бенчмарков записи достаточно схемы; уже загруженный набор не трогается
+    static void ensureSchema() {
+        String table = new JdbcTemplate(dataSource())
+                .queryForObject("SELECT to_regclass('endpoint_hit')::text", String.class);
+        if (table == null) {
+            ensureLoaded(0);
+        }
+    }
+
+    static void ensureLoaded(long hits) {
+        DriverManagerDataSource dataSource = dataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS bench_dataset (hits BIGINT NOT NULL, start_at TIMESTAMP NOT NULL)");
+        List<Long> loaded = jdbcTemplate.queryForList("SELECT hits FROM bench_dataset WHERE start_at = ?",
+                Long.class, start());
+        if (loaded.size() == 1 && loaded.get(0) == hits) {
+            return;
+        }
+
+        // schema.sql ничего не удаляет, поэтому прежний набор данных сбрасывается здесь
+        jdbcTemplate.execute("""
+                DROP TABLE IF EXISTS endpoint_hit, endpoint_hit_minute, endpoint_hit_hour, endpoint_hit_day,
+                    app_dictionary, uri_dictionary, hit_counter_checkpoint, hit_counter_watermark,
+                    hit_import_staging, hit_import_batch CASCADE
+                """);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate.update("INSERT INTO app_dictionary (name) SELECT 'bench-app-' || a FROM generate_series(1, ?) a", APPS);
+        jdbcTemplate.update("INSERT INTO uri_dictionary (uri, resource_type, resource_id) "
+                + "SELECT '/events/' || u, 'events', u FROM generate_series(1, ?) u", URIS);
+
+        long span = (long) DAYS * 24 * 3600;
+        for (long from = 0; from < hits; from += CHUNK) {
+            jdbcTemplate.update("""
+                            INSERT INTO endpoint_hit (app_id, uri_id, ip, timestamp)
+                            SELECT 1 + g % ?,
+                                   1 + floor(? * power(((g * 2654435761) % 4294967296) / 4294967296.0, 3))::int,
+                                   '10.0.0.0'::inet + (g * 40503) % ?,
+                                   ? + ((g * 1103515245) % ?) * interval '1 second'
+                            FROM generate_series(?, ?) g
+                            """,
+                    APPS, URIS, IPS, start(), span, from, Math.min(from + CHUNK, hits) - 1);
+        }
+
+        for (String unit : List.of("minute", "hour", "day")) {
+            jdbcTemplate.update("INSERT INTO endpoint_hit_" + unit + " (app_id, uri_id, bucket_start, hits) "
+                    + "SELECT app_id, uri_id, date_trunc('" + unit + "', timestamp), COUNT(*) FROM endpoint_hit "
+                    + "GROUP BY app_id, uri_id, date_trunc('" + unit + "', timestamp)");
+        }
+        // Счетчики за все время не восстанавливаются повтором набора при каждом старте контекста
+        jdbcTemplate.update("INSERT INTO hit_counter_watermark (id, last_hit_id, created_at) "
+                + "SELECT 1, COALESCE(MAX(id), 0), now() FROM endpoint_hit");
+        jdbcTemplate.execute("ANALYZE");
+
+        jdbcTemplate.update("DELETE FROM bench_dataset");
+        jdbcTemplate.update("INSERT INTO bench_dataset (hits, start_at) VALUES (?, ?)", hits, start());
+    }
+
+    private static DriverManagerDataSource dataSource() {
+        return new DriverManagerDataSource(BenchContext.JDBC_URL, BenchContext.JDBC_USERNAME, BenchContext.JDBC_PASSWORD);
+    }
+}
@@ -0,0 +1,4 @@
+package ru.practicum.ewm.bench.jmh_generated;
+public class IngestionBenchmark_jmhType extends IngestionBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package ru.practicum.ewm.bench.jmh_generated;
+public class QueryBenchmark_jmhType extends QueryBenchmark_jmhType_B3 {
+}
+
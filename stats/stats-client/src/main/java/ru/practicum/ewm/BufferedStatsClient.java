@@ -0,0 +1,282 @@
+package ru.practicum.ewm;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Накапливает хиты вне потока запроса и отправляет их в stats-server пачками через POST /hits.
+// Хиты, которые не удалось отправить или положить в буфер, сохраняются в локальную очередь на диске
+// и дочитываются из нее в фоне, когда stats-server снова принимает хиты. Каждая пачка получает ключ
+// идемпотентности и сохраняется с ним: если ответ не дошел, а пачка была принята, повтор ее не задвоит
+@Component
+@Slf4j
+public class BufferedStatsClient {
+
+    private final StatsClient statsClient;
+    private final int batchSize;
+    private final BlockingQueue<EndpointHitInputDto> queue;
+    private final BlockingQueue<EndpointHitInputDto> overflow; // Не поместились в буфер, ждут записи на диск
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final HitSpool spool; // null, если очередь на диске отключена или недоступна
+    private volatile long pausedUntil; // System.nanoTime(), до которого stats-server просил не присылать хиты
+    private boolean drainStalled; // Часть узлов недоступна, дочитывание откладывается; меняется только в потоке flusher
+
+    public BufferedStatsClient(StatsClient statsClient,
+                               ObjectProvider<MeterRegistry> meterRegistry,
+                               @Value("${stats.client.buffer.capacity:10000}") int capacity,
+                               @Value("${stats.client.buffer.batch-size:100}") int batchSize,
+                               @Value("${stats.client.buffer.max-age:1s}") Duration maxAge,
+                               @Value("${stats.client.spool.enabled:true}") boolean spoolEnabled,
+                               @Value("${stats.client.spool.directory:${java.io.tmpdir}/stats-spool/${spring.application.name:application}}") Path spoolDirectory,
+                               @Value("${stats.client.spool.file-size:8MB}") DataSize spoolFileSize,
+                               @Value("${stats.client.spool.max-size:256MB}") DataSize spoolMaxSize,
+                               @Value("${stats.client.spool.drain-interval:5s}") Duration drainInterval) {
+        this.statsClient = statsClient;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflow = new ArrayBlockingQueue<>(capacity);
+        this.spool = spoolEnabled ? openSpool(spoolDirectory, spoolFileSize, spoolMaxSize) : null;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-client-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, maxAge.toMillis(), maxAge.toMillis(), TimeUnit.MILLISECONDS);
+        if (spool != null) {
+            this.flusher.scheduleWithFixedDelay(this::drainSpool,
+                    drainInterval.toMillis(), drainInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        meterRegistry.ifAvailable(this::registerMeters);
+    }
+
+    // Никогда не блокирует вызывающий поток и не пишет на диск: при переполнении буфера хит передается
+    // потоку отправки, который сохраняет такие хиты в очередь на диске пачками. Если очереди на диске нет
+    // или переполнен и этот резерв, хит отбрасывается
+    public void record(EndpointHitInputDto hit) {
+        if (queue.offer(hit)) {
+            if (queue.size() >= batchSize) {
+                scheduleFlush();
+            }
+            return;
+        }
+        if (spool == null || !overflow.offer(hit)) {
+            long total = dropped.incrementAndGet();
+            log.warn("Хит {} не поместился в буфер, он отброшен (всего отброшено {})", hit.getUri(), total);
+            return;
+        }
+        scheduleFlush();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                log.error("Ошибка при закрытии очереди хитов на диске", e);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false); // Клиент останавливается, буфер отправит shutdown
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        spoolOverflow();
+        List<EndpointHitInputDto> batch = new ArrayList<>(batchSize);
+        while (System.nanoTime() - pausedUntil >= 0 && queue.drainTo(batch, batchSize) > 0) {
+            send(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    private void send(List<EndpointHitInputDto> batch) {
+        String key = newKey();
+        try {
+            statsClient.addHits(key, batch);
+        } catch (FeignException.TooManyRequests e) {
+            // stats-server перегружен и не принял ни одного хита пачки: она возвращается в буфер,
+            // отправка приостанавливается на Retry-After
+            pause(e);
+            List<EndpointHitInputDto> overflow = new ArrayList<>();
+            for (EndpointHitInputDto hit : batch) {
+                if (!queue.offer(hit)) {
+                    overflow.add(hit);
+                }
+            }
+            spool(newKey(), overflow);
+        } catch (PartialHitDeliveryException e) {
+            log.error("Часть узлов stats-server не приняла хиты, на диск сохранено {} из {}",
+                    e.getUndelivered().size(), batch.size(), e.getCause());
+            spoolParts(e);
+        } catch (Exception e) {
+            // В том числе таймаут чтения: пачка могла быть принята, поэтому сохраняется с тем же ключом
+            log.error("Ошибка при отправке пачки из {} хитов в stats-server, пачка сохранена на диск", batch.size(), e);
+            spool(key, batch);
+        }
+    }
+
+    // Хиты, не поместившиеся в буфер, сохраняются пачками, чтобы при дочитывании уйти в stats-server так же пачками
+    private void spoolOverflow() {
+        List<EndpointHitInputDto> batch = new ArrayList<>(batchSize);
+        while (overflow.drainTo(batch, batchSize) > 0) {
+            spool(newKey(), batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    // Дочитывает очередь на диске, пока stats-server принимает хиты; первая же ошибка откладывает
+    // доставку до следующего запуска
+    private void drainSpool() {
+        drainStalled = false;
+        try {
+            while (System.nanoTime() - pausedUntil >= 0 && !drainStalled && spool.drain(this::trySend)) {
+                // Пачка доставлена, читается следующая
+            }
+        } catch (IOException e) {
+            log.error("Ошибка чтения очереди хитов на диске", e);
+        }
+    }
+
+    private boolean trySend(String key, List<EndpointHitInputDto> batch) {
+        try {
+            statsClient.addHits(key, batch);
+            return true;
+        } catch (PartialHitDeliveryException e) {
+            // Доставленные хиты подтверждаются вместе с пачкой, недоставленные дописываются в конец очереди
+            drainStalled = true;
+            log.warn("Часть узлов stats-server недоступна, {} хитов возвращено в очередь на диске: {}",
+                    e.getUndelivered().size(), e.getCause().getMessage());
+            spoolParts(e);
+            return true;
+        } catch (FeignException.TooManyRequests e) {
+            pause(e);
+        } catch (Exception e) {
+            log.warn("stats-server недоступен, в очереди на диске {} хитов: {}", spool.getBacklog(), e.getMessage());
+        }
+        return false;
+    }
+
+    // Каждая часть сохраняется с ключом, под которым ее получал узел: с ключом всей пачки повтор
+    // ушел бы другому узлу под ключом уже принятой им части и был бы молча пропущен как дубликат
+    private void spoolParts(PartialHitDeliveryException e) {
+        e.getParts().forEach(part -> spool(part.key() != null ? part.key() : newKey(), part.hits()));
+    }
+
+    private void spool(String key, List<EndpointHitInputDto> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        int saved = 0;
+        if (spool != null) {
+            try {
+                saved = spool.append(key, hits);
+            } catch (IOException e) {
+                log.error("Ошибка записи пачки хитов в очередь на диске", e);
+            }
+        }
+        if (saved < hits.size()) {
+            long total = dropped.addAndGet(hits.size() - saved);
+            log.warn("{} хитов не удалось сохранить, они отброшены (всего отброшено {})", hits.size() - saved, total);
+        }
+    }
+
+    private static String newKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    private void pause(FeignException e) {
+        Duration retryAfter = retryAfter(e);
+        pausedUntil = System.nanoTime() + retryAfter.toNanos();
+        log.warn("stats-server перегружен, отправка хитов приостановлена на {}", retryAfter);
+    }
+
+    private void registerMeters(MeterRegistry meterRegistry) {
+        Gauge.builder("stats.client.buffer.size", queue, BlockingQueue::size)
+                .description("Хиты в памяти, ожидающие отправки")
+                .register(meterRegistry);
+        FunctionCounter.builder("stats.client.dropped", dropped, AtomicLong::get)
+                .description("Хиты, отброшенные без сохранения")
+                .register(meterRegistry);
+        if (spool != null) {
+            Gauge.builder("stats.client.spool.backlog", spool, HitSpool::getBacklog)
+                    .description("Недоставленные хиты в очереди на диске")
+                    .register(meterRegistry);
+            Gauge.builder("stats.client.spool.disk.usage", spool, HitSpool::getDiskUsage)
+                    .description("Место на диске, занятое файлами очереди")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            FunctionCounter.builder("stats.client.spool.corrupted", spool, HitSpool::getCorrupted)
+                    .description("Испорченные записи очереди на диске, пропущенные при дочитывании")
+                    .register(meterRegistry);
+        }
+    }
+
+    // Без очереди на диске клиент продолжает работать как раньше: недоставленные хиты теряются
+    private static HitSpool openSpool(Path directory, DataSize fileSize, DataSize maxSize) {
+        try {
+            HitSpool spool = HitSpool.open(directory, fileSize.toBytes(), maxSize.toBytes());
+            log.info("Открыта очередь хитов на диске {}, недоставленных хитов: {}", directory, spool.getBacklog());
+            return spool;
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Очередь хитов на диске {} недоступна, недоставленные хиты будут теряться", directory, e);
+            return null;
+        }
+    }
+
+    private static Duration retryAfter(FeignException e) {
+        Collection<String> values = e.responseHeaders().getOrDefault("Retry-After", List.of());
+        for (String value : values) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(value.trim()));
+            } catch (NumberFormatException ignored) {
+                // Дата в формате HTTP не используется stats-server
+            }
+        }
+        return Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,344 @@
+package ru.practicum.ewm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Локальная очередь хитов, которые не удалось доставить в stats-server. Пачки хитов дописываются в отображенные
+// в память файлы фиксированного размера: [смещение чтения: 4 байта][длина: 4][CRC32 тела: 4][тело]...
+// Нулевая длина - конец данных, поэтому длина пишется после тела. Запись с неверной контрольной суммой
+// (недописанная при сбое или испорченная на диске) копируется в каталог quarantine и пропускается. Тело - число хитов, ключ идемпотентности пачки и сами хиты:
+// пачка доставляется целиком с тем же ключом, с которым ее отправляли до сохранения, поэтому stats-server
+// не запишет дважды пачку, которую успел принять перед таймаутом. Файл удаляется, когда все его пачки доставлены.
+// Отображенные страницы переживают падение процесса, на диск они сбрасываются при закрытии
+@Slf4j
+final class HitSpool implements Closeable {
+
+    private static final String FILE_PREFIX = "spool-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final int HEADER = 4;
+    private static final int FRAME = 8; // Длина и контрольная сумма перед телом записи
+    private static final String QUARANTINE = "quarantine";
+
+    private final Path directory;
+    private final int fileSize;
+    private final int maxFiles;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Deque<SpoolFile> files = new ArrayDeque<>();
+
+    private long sequence;
+    private long backlog; // Недоставленных хитов во всех файлах
+    private long corrupted; // Пропущенных испорченных записей
+
+    private HitSpool(Path directory, int fileSize, int maxFiles, FileChannel lockChannel, FileLock lock) {
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.maxFiles = maxFiles;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    // Каталог блокируется, чтобы два процесса не дописывали и не доставляли одни и те же файлы
+    static HitSpool open(Path directory, long fileSize, long maxSize) throws IOException {
+        if (fileSize > Integer.MAX_VALUE || fileSize <= HEADER + FRAME) {
+            throw new IllegalArgumentException("Размер файла очереди должен быть от 13 байт до 2 ГБ");
+        }
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve("spool.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Каталог " + directory + " уже используется другим процессом");
+        }
+
+        HitSpool spool = new HitSpool(directory, (int) fileSize, (int) Math.max(1, maxSize / fileSize), lockChannel, lock);
+        List<Path> existing;
+        try (Stream<Path> list = Files.list(directory)) {
+            existing = list.filter(file -> file.getFileName().toString().startsWith(FILE_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : existing) {
+            SpoolFile spoolFile = SpoolFile.open(file, spool.fileSize);
+            String name = file.getFileName().toString();
+            spool.sequence = Math.max(spool.sequence,
+                    Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+            if (spoolFile.pending() == 0) {
+                Files.delete(file);
+                continue;
+            }
+            spool.files.addLast(spoolFile);
+            spool.backlog += spoolFile.pending();
+        }
+        return spool;
+    }
+
+    // Возвращает число сохраненных хитов: пачка не сохраняется, если не помещается в лимит диска.
+    // Пачка больше файла делится пополам с производными ключами: защиту от повтора она теряет, но не хиты
+    synchronized int append(String key, List<EndpointHitInputDto> hits) throws IOException {
+        byte[] record = encode(key, hits);
+        if (HEADER + FRAME + record.length > fileSize) {
+            if (hits.size() == 1) {
+                return 0;
+            }
+            int half = hits.size() / 2;
+            return append(key + ".1", hits.subList(0, half)) + append(key + ".2", hits.subList(half, hits.size()));
+        }
+        SpoolFile tail = files.peekLast();
+        if (tail == null || !tail.append(record, hits.size())) {
+            if (files.size() >= maxFiles) {
+                return 0;
+            }
+            tail = SpoolFile.open(directory.resolve(String.format("%s%016d%s", FILE_PREFIX, ++sequence, FILE_SUFFIX)), fileSize);
+            files.addLast(tail);
+            tail.append(record, hits.size());
+        }
+        backlog += hits.size();
+        return hits.size();
+    }
+
+    // Читает первую пачку очереди и передает ее sender вместе с ключом; если тот подтвердил доставку,
+    // пачка удаляется из очереди. Вызывается одним потоком: чтение и отправка идут без блокировки очереди
+    boolean drain(BiPredicate<String, List<EndpointHitInputDto>> sender) throws IOException {
+        SpoolFile head;
+        SpoolBatch batch;
+        synchronized (this) {
+            head = files.peekFirst();
+            // Доставленный файл, в конец которого не поместилась следующая пачка, больше не дописывается
+            while (head != null && head.pending() == 0 && files.size() > 1) {
+                files.removeFirst();
+                Files.deleteIfExists(head.file);
+                head = files.peekFirst();
+            }
+            if (head == null) {
+                return false;
+            }
+            batch = head.read();
+            if (batch != null && batch.hits() == null) {
+                skip(head, batch);
+                return true;
+            }
+        }
+        if (batch == null || !sender.test(batch.key(), batch.hits())) {
+            return false;
+        }
+
+        synchronized (this) {
+            acknowledge(head, batch.end(), batch.hits().size());
+        }
+        return true;
+    }
+
+    private void acknowledge(SpoolFile head, int end, int delivered) throws IOException {
+        backlog -= head.acknowledge(end, delivered);
+        // В последний файл продолжается запись, он удаляется, только когда заполнен
+        if (head.pending() == 0 && (files.size() > 1 || head.isFull())) {
+            files.removeFirst();
+            Files.deleteIfExists(head.file);
+        }
+    }
+
+    // Испорченная запись не должна останавливать очередь: она сохраняется для разбора и пропускается
+    private void skip(SpoolFile head, SpoolBatch batch) throws IOException {
+        corrupted++;
+        Path quarantine = directory.resolve(QUARANTINE);
+        Files.createDirectories(quarantine);
+        Path copy = quarantine.resolve(head.file.getFileName() + "-" + batch.start() + ".bad");
+        byte[] bytes = new byte[batch.end() - batch.start()];
+        head.buffer.get(batch.start(), bytes);
+        Files.write(copy, bytes);
+        acknowledge(head, batch.end(), 0);
+        log.warn("Испорченная запись очереди хитов {} со смещением {} пропущена и сохранена в {}",
+                head.file.getFileName(), batch.start(), copy);
+    }
+
+    synchronized long getCorrupted() {
+        return corrupted;
+    }
+
+    synchronized long getBacklog() {
+        return backlog;
+    }
+
+    synchronized long getDiskUsage() {
+        return (long) files.size() * fileSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (SpoolFile file : files) {
+            file.buffer.force();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    private static byte[] encode(String key, List<EndpointHitInputDto> hits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 96 * hits.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(hits.size());
+            out.writeUTF(key);
+            for (EndpointHitInputDto hit : hits) {
+                out.writeUTF(hit.getApp());
+                out.writeUTF(hit.getUri());
+                out.writeUTF(hit.getIp());
+                out.writeLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(hit.getTimestamp().getNano());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SpoolBatch decode(ByteBuffer record, int start, int end) throws IOException {
+        byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            String key = in.readUTF();
+            List<EndpointHitInputDto> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                EndpointHitInputDto hit = new EndpointHitInputDto();
+                hit.setApp(in.readUTF());
+                hit.setUri(in.readUTF());
+                hit.setIp(in.readUTF());
+                hit.setTimestamp(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+                hits.add(hit);
+            }
+            return new SpoolBatch(key, hits, start, end);
+        }
+    }
+
+    // hits = null - запись испорчена; start и end - границы записи в файле
+    private record SpoolBatch(String key, List<EndpointHitInputDto> hits, int start, int end) {
+    }
+
+    private static int checksum(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static final class SpoolFile {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        private int readOffset; // Начало первого недоставленного хита
+        private int writeOffset; // Конец записанных данных
+        private int pending; // Недоставленных хитов
+
+        private SpoolFile(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private static SpoolFile open(Path file, int size) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            }
+
+            // Сохраненное смещение чтения выравнивается на начало записи: испорченный заголовок файла
+            // не должен заставить читать с середины записи
+            SpoolFile spoolFile = new SpoolFile(file, buffer);
+            int stored = Math.max(HEADER, buffer.getInt(0));
+            spoolFile.readOffset = -1;
+            int offset = HEADER;
+            while (offset + FRAME <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.capacity() - offset - FRAME) {
+                    break;
+                }
+                if (offset >= stored) {
+                    if (spoolFile.readOffset < 0) {
+                        spoolFile.readOffset = offset;
+                    }
+                    if (buffer.getInt(offset + 4) == checksum(buffer.slice(offset + FRAME, length))) {
+                        spoolFile.pending += buffer.getInt(offset + FRAME); // Тело начинается с числа хитов
+                    }
+                }
+                offset += FRAME + length;
+            }
+            spoolFile.writeOffset = offset;
+            if (spoolFile.readOffset < 0) {
+                spoolFile.readOffset = offset;
+            }
+            return spoolFile;
+        }
+
+        private boolean append(byte[] record, int hits) {
+            if (writeOffset + FRAME + record.length > buffer.capacity()) {
+                return false;
+            }
+            buffer.put(writeOffset + FRAME, record);
+            buffer.putInt(writeOffset + 4, checksum(ByteBuffer.wrap(record)));
+            buffer.putInt(writeOffset, record.length);
+            writeOffset += FRAME + record.length;
+            pending += hits;
+            return true;
+        }
+
+        // null - в файле не осталось недоставленных пачек
+        private SpoolBatch read() {
+            if (readOffset >= writeOffset) {
+                return null;
+            }
+            int length = buffer.getInt(readOffset);
+            if (length <= 0 || length > writeOffset - readOffset - FRAME) {
+                // Длина испорчена уже после открытия файла: остаток файла пропускается целиком
+                return new SpoolBatch(null, null, readOffset, writeOffset);
+            }
+            int end = readOffset + FRAME + length;
+            ByteBuffer body = buffer.slice(readOffset + FRAME, length);
+            if (buffer.getInt(readOffset + 4) != checksum(body.duplicate())) {
+                return new SpoolBatch(null, null, readOffset, end);
+            }
+            try {
+                return decode(body, readOffset, end);
+            } catch (IOException | RuntimeException e) {
+                return new SpoolBatch(null, null, readOffset, end);
+            }
+        }
+
+        // Возвращает, на сколько уменьшилось число недоставленных хитов. Когда прочитано все записанное,
+        // счетчик обнуляется: в нем могли остаться хиты записи, испорченной уже после открытия файла
+        private int acknowledge(int offset, int delivered) {
+            readOffset = offset;
+            buffer.putInt(0, offset);
+            int removed = offset >= writeOffset ? pending : delivered;
+            pending -= removed;
+            return removed;
+        }
+
+        private int pending() {
+            return pending;
+        }
+
+        private boolean isFull() {
+            return writeOffset + FRAME >= buffer.capacity();
+        }
+    }
+}
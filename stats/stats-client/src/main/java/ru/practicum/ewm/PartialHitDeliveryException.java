@@ -0,0 +1,24 @@
+package ru.practicum.ewm;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// Пачка хитов разошлась по нескольким узлам stats-server, и часть узлов ее не приняла.
+// Повторять нужно только undelivered: остальные хиты уже записаны. Каждая недоставленная часть
+// повторяется со своим ключом из parts - тем, с которым ее отправляли узлу (null - пачка была без ключа)
+@Getter
+public class PartialHitDeliveryException extends RuntimeException {
+
+    private final List<Part> parts;
+    private final List<EndpointHitInputDto> undelivered;
+
+    public PartialHitDeliveryException(List<Part> parts, Throwable cause) {
+        super("Не доставлено хитов: " + parts.stream().mapToInt(part -> part.hits().size()).sum(), cause);
+        this.parts = parts;
+        this.undelivered = parts.stream().flatMap(part -> part.hits().stream()).toList();
+    }
+
+    public record Part(String key, List<EndpointHitInputDto> hits) {
+    }
+}
@@ -0,0 +1,526 @@
+package ru.practicum.ewm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.openfeign.FeignClientBuilder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Распределяет uri между экземплярами stats-server из Eureka по кольцу консистентного хеширования.
+// Хиты и запросы по одному uri уходят узлу-владельцу, поэтому его счетчики, топ, популярность и фильтр повторов
+// видят все хиты своих uri. Запросы по нескольким uri расходятся по владельцам параллельно, ответы склеиваются.
+// Кольцо перестраивается при каждом обновлении реестра Eureka, если состав узлов изменился;
+// пока реестр пуст или распределение выключено, запросы идут через балансировщик, как раньше.
+// Списки длиннее stats.client.query.post-threshold уходят в теле POST вместо параметров GET
+@Component
+@Primary
+@Slf4j
+public class ShardedStatsClient implements StatsClient {
+
+    private static final Comparator<TrendingOutputDto> BY_SCORE =
+            Comparator.comparingDouble(TrendingOutputDto::getScore).reversed();
+
+    private final StatsClient loadBalanced;
+    private final DiscoveryClient discoveryClient;
+    private final Function<String, StatsClient> nodeFactory; // Клиент узла по его адресу
+    private final boolean enabled;
+    private final String serviceId;
+    private final int virtualNodes;
+    private final boolean sharedStorage;
+    private final int postThreshold;
+    private final Map<String, StatsClient> nodeClients = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Counter rebalances;
+    private volatile HitShardRing ring; // null, пока реестр не прочитан
+
+    public ShardedStatsClient(@Qualifier("loadBalancedStatsClient") StatsClient loadBalanced,
+                              DiscoveryClient discoveryClient,
+                              ApplicationContext applicationContext,
+                              ObjectProvider<MeterRegistry> meterRegistry,
+                              @Value("${stats.client.sharding.enabled:true}") boolean enabled,
+                              @Value("${stats.client.sharding.service-id:stats-server}") String serviceId,
+                              @Value("${stats.client.sharding.virtual-nodes:160}") int virtualNodes,
+                              @Value("${stats.client.sharding.shared-storage:true}") boolean sharedStorage,
+                              @Value("${stats.client.query.post-threshold:100}") int postThreshold) {
+        this(loadBalanced, discoveryClient, feignNodes(new FeignClientBuilder(applicationContext), serviceId),
+                meterRegistry, enabled, serviceId, virtualNodes, sharedStorage, postThreshold);
+    }
+
+    ShardedStatsClient(StatsClient loadBalanced,
+                       DiscoveryClient discoveryClient,
+                       Function<String, StatsClient> nodeFactory,
+                       ObjectProvider<MeterRegistry> meterRegistry,
+                       boolean enabled,
+                       String serviceId,
+                       int virtualNodes,
+                       boolean sharedStorage,
+                       int postThreshold) {
+        this.loadBalanced = loadBalanced;
+        this.discoveryClient = discoveryClient;
+        this.nodeFactory = nodeFactory;
+        this.enabled = enabled;
+        this.serviceId = serviceId;
+        this.virtualNodes = virtualNodes;
+        this.sharedStorage = sharedStorage;
+        this.postThreshold = postThreshold;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.rebalances = registry == null ? null : Counter.builder("stats.client.shard.rebalances")
+                .description("Перестроения кольца узлов stats-server")
+                .register(registry);
+        if (registry != null) {
+            Gauge.builder("stats.client.shard.nodes", this, client -> client.ring == null ? 0 : client.ring.getNodes().size())
+                    .description("Узлы stats-server в кольце")
+                    .register(registry);
+        }
+    }
+
+    // Eureka публикует событие после каждого обновления локальной копии реестра
+    @EventListener(HeartbeatEvent.class)
+    public void onRegistryRefresh() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void addHit(EndpointHitInputDto hitDto) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            loadBalanced.addHit(hitDto);
+            return;
+        }
+        node(current.owner(hitDto.getUri())).addHit(hitDto);
+    }
+
+    @Override
+    public void addHits(List<EndpointHitInputDto> hitDtos) {
+        deliver(null, hitDtos);
+    }
+
+    @Override
+    public void addHits(String idempotencyKey, List<EndpointHitInputDto> hitDtos) {
+        deliver(idempotencyKey, hitDtos);
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        return findStats(new StatsRequestParams(start, end, uris, unique, false, null, null, false));
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                             String after, int limit) {
+        return findStats(new StatsRequestParams(start, end, uris, unique, false, after, limit, false));
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> queryStats(StatsRequestParams params) {
+        return findStats(params);
+    }
+
+    @Override
+    public List<StatsSeriesOutputDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                String step, Boolean unique) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return loadBalanced.getSeries(start, end, uris, step, unique);
+        }
+        List<List<StatsSeriesOutputDto>> partials = scatter(route(current, uris, sharedStorage),
+                (client, part) -> client.getSeries(start, end, part, step, unique));
+
+        // Ряды узлов построены по одной сетке интервалов и складываются поточечно
+        Map<String, StatsSeriesOutputDto> merged = new LinkedHashMap<>();
+        for (List<StatsSeriesOutputDto> partial : partials) {
+            for (StatsSeriesOutputDto series : partial) {
+                StatsSeriesOutputDto known = merged.putIfAbsent(series.getApp() + "\n" + series.getUri(), series);
+                if (known != null && !sharedStorage) {
+                    for (int i = 0; i < known.getPoints().size(); i++) {
+                        SeriesPointDto point = known.getPoints().get(i);
+                        point.setHits(point.getHits() + series.getPoints().get(i).getHits());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    @Override
+    public List<HitTotalsOutputDto> getTotals(List<String> uris) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return loadBalanced.getTotals(uris);
+        }
+        return concat(scatter(route(current, uris, false), (client, part) -> client.getTotals(part)));
+    }
+
+    // Популярность считается в памяти каждого узла только по его хитам, поэтому топ без uri собирается
+    // со всех узлов независимо от того, общее ли у них хранилище
+    @Override
+    public List<TrendingOutputDto> getTrending(String app, List<String> uris, Integer k) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return loadBalanced.getTrending(app, uris, k);
+        }
+        List<List<TrendingOutputDto>> partials = scatter(route(current, uris, false),
+                (client, part) -> client.getTrending(app, part, k));
+        if (uris != null && !uris.isEmpty()) {
+            return concat(partials);
+        }
+
+        Map<String, TrendingOutputDto> merged = new LinkedHashMap<>();
+        int size = 0;
+        for (List<TrendingOutputDto> partial : partials) {
+            size = Math.max(size, partial.size()); // Без k каждый узел отдает топ размера по умолчанию
+            for (TrendingOutputDto score : partial) {
+                merged.merge(score.getApp() + "\n" + score.getUri(), score, (known, other) -> {
+                    known.setScore(known.getScore() + other.getScore());
+                    return known;
+                });
+            }
+        }
+        return merged.values().stream()
+                .sorted(BY_SCORE)
+                .limit(k != null ? k : size)
+                .toList();
+    }
+
+    // Топ окна ведет в памяти каждый узел по своим хитам, поэтому он собирается со всех узлов.
+    // При общем хранилище узлы после рестарта прогревают окна из общих агрегатов и видят одни и те же хиты:
+    // тогда из совпадающих строк берется большая, иначе строки разных узлов - части одного счетчика
+    @Override
+    public List<ViewStatsOutputDto> getTop(String app, String window, Integer k) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return loadBalanced.getTop(app, window, k);
+        }
+        Map<String, Object> everyNode = new LinkedHashMap<>();
+        current.getNodes().forEach(node -> everyNode.put(node, null));
+        List<List<ViewStatsOutputDto>> partials = scatter(everyNode, (client, part) -> client.getTop(app, window, k));
+
+        Map<String, ViewStatsOutputDto> merged = new LinkedHashMap<>();
+        int size = 0;
+        for (List<ViewStatsOutputDto> partial : partials) {
+            size = Math.max(size, partial.size()); // Без k каждый узел отдает топ размера по умолчанию
+            for (ViewStatsOutputDto stat : partial) {
+                merged.merge(stat.getApp() + "\n" + stat.getUri(), stat, (known, other) -> {
+                    known.setHits(sharedStorage ? Math.max(known.getHits(), other.getHits()) : known.getHits() + other.getHits());
+                    return known;
+                });
+            }
+        }
+        return merged.values().stream()
+                .sorted(StatsCursor.ORDER)
+                .limit(k != null ? k : size)
+                .toList();
+    }
+
+    @Override
+    public List<ResourceStatsOutputDto> getResourceStats(String type, List<Long> ids, LocalDateTime start,
+                                                         LocalDateTime end, Boolean unique) {
+        return findResourceStats(new ResourceStatsRequestParams(type, ids, start, end, unique, false));
+    }
+
+    @Override
+    public List<ResourceStatsOutputDto> queryResourceStats(ResourceStatsRequestParams params) {
+        return findResourceStats(params);
+    }
+
+    // Узел, которому адресовано уведомление, указан в нем самом
+    @Override
+    public void rebalance(ShardRebalanceInputDto rebalance) {
+        node(rebalance.getSelf()).rebalance(rebalance);
+    }
+
+    // Пачка делится по владельцам; если часть узлов ее не приняла, PartialHitDeliveryException
+    // содержит только недоставленные части с ключами, под которыми они ушли, чтобы повтор не записал остальные дважды.
+    // Части пачки получают ключ вида key@хеш-адреса-узла: при повторе тому же узлу он узнает свою часть
+    private void deliver(String key, List<EndpointHitInputDto> hitDtos) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            send(loadBalanced, key, hitDtos);
+            return;
+        }
+        Map<String, List<EndpointHitInputDto>> byNode = hitDtos.stream()
+                .collect(Collectors.groupingBy(hit -> current.owner(hit.getUri()), LinkedHashMap::new, Collectors.toList()));
+        if (byNode.size() == 1) {
+            Map.Entry<String, List<EndpointHitInputDto>> only = byNode.entrySet().iterator().next();
+            send(node(only.getKey()), partKey(key, only.getKey()), only.getValue());
+            return;
+        }
+
+        Map<String, Future<?>> sent = new LinkedHashMap<>();
+        byNode.forEach((url, hits) -> sent.put(url, executor.submit(() -> send(node(url), partKey(key, url), hits))));
+        List<PartialHitDeliveryException.Part> undelivered = new ArrayList<>();
+        RuntimeException failure = null;
+        for (Map.Entry<String, Future<?>> entry : sent.entrySet()) {
+            try {
+                await(entry.getValue());
+            } catch (RuntimeException e) {
+                undelivered.add(new PartialHitDeliveryException.Part(partKey(key, entry.getKey()), byNode.get(entry.getKey())));
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw undelivered.size() == byNode.size() ? failure : new PartialHitDeliveryException(undelivered, failure);
+        }
+    }
+
+    private static void send(StatsClient client, String key, List<EndpointHitInputDto> hits) {
+        if (key == null) {
+            client.addHits(hits);
+        } else {
+            client.addHits(key, hits);
+        }
+    }
+
+    // Ключ части, уже адресованный этому узлу, не меняется: повтор недоставленной части после перестроения
+    // кольца узнает прежний владелец, а новый владелец получит ключ, которого еще не видел
+    static String partKey(String key, String url) {
+        if (key == null) {
+            return null;
+        }
+        String suffix = "@" + Integer.toHexString(url.hashCode());
+        return key.endsWith(suffix) ? key : key + suffix;
+    }
+
+    // Каждый узел отдает до limit строк после курсора в общем порядке, поэтому первые limit строк
+    // объединения - это и есть следующая страница. Запрос без uri или с шаблоном при общем хранилище отвечает
+    // один узел, а его кэш знает только о своих пачках - такой запрос идет мимо кэша
+    private List<ViewStatsOutputDto> findStats(StatsRequestParams params) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return sendStats(loadBalanced, params);
+        }
+        boolean fresh = sharedStorage && (params.getUris() == null || params.getUris().stream().anyMatch(ShardedStatsClient::isPattern));
+        return mergeStats(scatter(route(current, params.getUris(), sharedStorage),
+                        (client, part) -> sendStats(client, new StatsRequestParams(params.getStart(), params.getEnd(), part,
+                                params.getUnique(), params.getExact(), params.getAfter(), params.getLimit(), fresh))),
+                params.getLimit() != null ? params.getLimit() : Integer.MAX_VALUE);
+    }
+
+    private List<ResourceStatsOutputDto> findResourceStats(ResourceStatsRequestParams params) {
+        HitShardRing current = activeRing();
+        if (current == null) {
+            return sendResourceStats(loadBalanced, params);
+        }
+        // Ресурс хранится под uri /{type}/{id}, по нему и определяется владелец
+        Map<String, List<Long>> byNode = params.getIds().stream()
+                .collect(Collectors.groupingBy(id -> current.owner("/" + params.getType() + "/" + id),
+                        LinkedHashMap::new, Collectors.toList()));
+        return concat(scatter(byNode, (client, part) -> sendResourceStats(client, new ResourceStatsRequestParams(
+                params.getType(), part, params.getStart(), params.getEnd(), params.getUnique(), params.getExact()))));
+    }
+
+    // Длинный список uri уходит в теле POST /stats/query: в строке GET он упирается в предел длины URL.
+    // Точный подсчет, чтение мимо кэша и курсор без limit передаются только в теле
+    private List<ViewStatsOutputDto> sendStats(StatsClient client, StatsRequestParams params) {
+        if ((params.getUris() != null && params.getUris().size() > postThreshold)
+                || Boolean.TRUE.equals(params.getExact())
+                || Boolean.TRUE.equals(params.getFresh())
+                || (params.getAfter() != null && params.getLimit() == null)) {
+            return client.queryStats(params);
+        }
+        if (params.getLimit() == null) {
+            return client.getStats(params.getStart(), params.getEnd(), params.getUris(), params.getUnique());
+        }
+        return client.getStats(params.getStart(), params.getEnd(), params.getUris(), params.getUnique(),
+                params.getAfter(), params.getLimit());
+    }
+
+    private List<ResourceStatsOutputDto> sendResourceStats(StatsClient client, ResourceStatsRequestParams params) {
+        if (params.getIds().size() > postThreshold || Boolean.TRUE.equals(params.getExact())) {
+            return client.queryResourceStats(params);
+        }
+        return client.getResourceStats(params.getType(), params.getIds(), params.getStart(), params.getEnd(),
+                params.getUnique());
+    }
+
+    private HitShardRing activeRing() {
+        if (!enabled) {
+            return null;
+        }
+        HitShardRing current = ring;
+        if (current == null) {
+            current = refresh();
+        }
+        return current.isEmpty() ? null : current;
+    }
+
+    private synchronized HitShardRing refresh() {
+        Set<String> nodes = discoveryClient.getInstances(serviceId).stream()
+                .map(instance -> instance.getUri().toString())
+                .collect(Collectors.toSet());
+        HitShardRing previous = ring;
+        if (previous != null && previous.getNodes().equals(nodes)) {
+            return previous;
+        }
+
+        HitShardRing next = new HitShardRing(nodes, virtualNodes);
+        nodeClients.keySet().retainAll(nodes);
+        ring = next;
+        if (previous != null) {
+            if (rebalances != null) {
+                rebalances.increment();
+            }
+            log.info("Состав узлов {} изменился: {} -> {}, сменили владельца {}% uri", serviceId,
+                    previous.getNodes(), nodes, String.format("%.1f", next.movedShare(previous) * 100));
+            if (sharedStorage) {
+                announce(previous, next);
+            }
+        } else {
+            log.info("Кольцо узлов {}: {}", serviceId, nodes);
+        }
+        return next;
+    }
+
+    // При общем хранилище узлы пересобирают из него счетчики перешедших к ним uri и сбрасывают их кэш.
+    // Уведомляются и ушедшие из кольца узлы, если они еще живы; ошибки только логируются
+    private void announce(HitShardRing previous, HitShardRing next) {
+        Set<String> notified = new TreeSet<>(previous.getNodes());
+        notified.addAll(next.getNodes());
+        for (String url : notified) {
+            executor.submit(() -> {
+                try {
+                    StatsClient client = next.getNodes().contains(url) ? node(url) : nodeFactory.apply(url);
+                    client.rebalance(new ShardRebalanceInputDto(url, previous.getNodes(), next.getNodes(), virtualNodes));
+                } catch (RuntimeException e) {
+                    log.warn("Узел {} не принял новый состав кольца: {}", url, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private StatsClient node(String url) {
+        return nodeClients.computeIfAbsent(url, nodeFactory);
+    }
+
+    // Клиент с фиксированным адресом: балансировщик не участвует, настройки клиента stats-server те же
+    private static Function<String, StatsClient> feignNodes(FeignClientBuilder builder, String serviceId) {
+        return url -> builder.forType(StatsClient.class, serviceId)
+                .url(url)
+                .build();
+    }
+
+    // Раскладывает uri по узлам-владельцам. Шаблон (* и **) или пустой список могут затронуть uri любого узла:
+    // при общем хранилище такой запрос отвечает целиком один узел, иначе его получают все узлы
+    private Map<String, List<String>> route(HitShardRing current, List<String> uris, boolean shared) {
+        Map<String, List<String>> byNode = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            if (shared) {
+                byNode.put(current.owner(""), null);
+            } else {
+                current.getNodes().forEach(node -> byNode.put(node, null));
+            }
+            return byNode;
+        }
+        for (String uri : uris) {
+            if (!isPattern(uri) || shared) {
+                byNode.computeIfAbsent(current.owner(uri), node -> new ArrayList<>()).add(uri);
+            } else {
+                current.getNodes().forEach(node -> byNode.computeIfAbsent(node, key -> new ArrayList<>()).add(uri));
+            }
+        }
+        return byNode;
+    }
+
+    private static boolean isPattern(String uri) {
+        return uri.indexOf('*') >= 0;
+    }
+
+    // Ответы возвращаются в порядке узлов; единственный узел опрашивается в вызывающем потоке
+    private <K, R> List<R> scatter(Map<String, K> byNode, PartQuery<K, R> query) {
+        if (byNode.size() == 1) {
+            Map.Entry<String, K> only = byNode.entrySet().iterator().next();
+            return List.of(query.apply(node(only.getKey()), only.getValue()));
+        }
+
+        List<Future<R>> partials = new ArrayList<>(byNode.size());
+        byNode.forEach((url, part) -> partials.add(executor.submit(() -> query.apply(node(url), part))));
+        List<R> results = new ArrayList<>(partials.size());
+        try {
+            for (Future<R> partial : partials) {
+                results.add(await(partial));
+            }
+        } catch (RuntimeException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            throw e;
+        }
+        return results;
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запрос к stats-server прерван", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка запроса к stats-server", e.getCause());
+        }
+    }
+
+    // Строки одного (app, uri) от разных узлов бывают только у шаблонов или после перестроения кольца:
+    // при общем хранилище они совпадают, иначе это части счетчика, записанные разными владельцами
+    private List<ViewStatsOutputDto> mergeStats(List<List<ViewStatsOutputDto>> partials, int limit) {
+        if (partials.size() == 1) {
+            return partials.getFirst();
+        }
+        Map<String, ViewStatsOutputDto> merged = new LinkedHashMap<>();
+        for (List<ViewStatsOutputDto> partial : partials) {
+            for (ViewStatsOutputDto stat : partial) {
+                ViewStatsOutputDto known = merged.putIfAbsent(stat.getApp() + "\n" + stat.getUri(), stat);
+                if (known != null && !sharedStorage) {
+                    known.setHits(known.getHits() + stat.getHits());
+                }
+            }
+        }
+        return merged.values().stream()
+                .sorted(StatsCursor.ORDER)
+                .limit(limit)
+                .toList();
+    }
+
+    private static <T> List<T> concat(List<List<T>> partials) {
+        return partials.size() == 1 ? partials.getFirst() : partials.stream().flatMap(List::stream).toList();
+    }
+
+    @FunctionalInterface
+    private interface PartQuery<K, R> {
+        R apply(StatsClient client, K part);
+    }
+}
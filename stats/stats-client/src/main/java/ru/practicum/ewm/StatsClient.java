@@ -6,20 +6,80 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
-@FeignClient(name = "stats-server")
+// Балансируемый клиент; приложение получает его через ShardedStatsClient, который распределяет uri по узлам
+@FeignClient(name = "stats-server", qualifiers = "loadBalancedStatsClient", primary = false)
 public interface StatsClient {
 
     @PostMapping("/hit")
     void addHit(@RequestBody EndpointHitInputDto hitDto) throws FeignException;
 
+    @PostMapping("/hits")
+    void addHits(@RequestBody List<EndpointHitInputDto> hitDtos) throws FeignException;
+
+    // Повтор пачки с тем же ключом (например, после таймаута чтения) не запишет уже принятые хиты второй раз
+    @PostMapping("/hits")
+    void addHits(@RequestHeader("Idempotency-Key") String idempotencyKey,
+                 @RequestBody List<EndpointHitInputDto> hitDtos) throws FeignException;
+
     @GetMapping("/stats")
     List<ViewStatsOutputDto> getStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                       @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
                                       @RequestParam(required = false) List<String> uris,
                                       @RequestParam(required = false) Boolean unique) throws FeignException;
+
+    // Постраничное чтение: after - StatsCursor.encode(последняя строка предыдущей страницы)
+    @GetMapping("/stats")
+    List<ViewStatsOutputDto> getStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                      @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                      @RequestParam(required = false) List<String> uris,
+                                      @RequestParam(required = false) Boolean unique,
+                                      @RequestParam(required = false) String after,
+                                      @RequestParam int limit) throws FeignException;
+
+    // То же, что GET /stats, со списком uri в теле запроса; ShardedStatsClient переходит на него для длинных списков
+    @PostMapping("/stats/query")
+    List<ViewStatsOutputDto> queryStats(@RequestBody StatsRequestParams params) throws FeignException;
+
+    // step в формате Duration или Spring (15m, 1h, PT1H), не меньше минуты
+    @GetMapping("/stats/series")
+    List<StatsSeriesOutputDto> getSeries(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                         @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                         @RequestParam(required = false) List<String> uris,
+                                         @RequestParam String step,
+                                         @RequestParam(required = false) Boolean unique) throws FeignException;
+
+    @GetMapping("/stats/totals")
+    List<HitTotalsOutputDto> getTotals(@RequestParam List<String> uris) throws FeignException;
+
+    // k самых посещаемых uri сервиса app за окно 1h, 24h, 7d или all
+    @GetMapping("/stats/top")
+    List<ViewStatsOutputDto> getTop(@RequestParam String app,
+                                    @RequestParam String window,
+                                    @RequestParam Integer k) throws FeignException;
+
+    // Без uris - k самых популярных сейчас uri, с uris - текущая популярность перечисленных uri
+    @GetMapping("/stats/trending")
+    List<TrendingOutputDto> getTrending(@RequestParam(required = false) String app,
+                                        @RequestParam(required = false) List<String> uris,
+                                        @RequestParam(required = false) Integer k) throws FeignException;
+
+    @GetMapping("/stats/resources")
+    List<ResourceStatsOutputDto> getResourceStats(@RequestParam String type,
+                                                  @RequestParam List<Long> ids,
+                                                  @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                  @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                  @RequestParam(required = false) Boolean unique) throws FeignException;
+
+    @PostMapping("/stats/resources/query")
+    List<ResourceStatsOutputDto> queryResourceStats(@RequestBody ResourceStatsRequestParams params) throws FeignException;
+
+    // Сообщает узлу прежний и новый состав кольца; ShardedStatsClient вызывает его при общем хранилище узлов
+    @PostMapping("/admin/shards/rebalance")
+    void rebalance(@RequestBody ShardRebalanceInputDto rebalance) throws FeignException;
 }
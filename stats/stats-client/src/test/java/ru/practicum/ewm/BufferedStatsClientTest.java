@@ -0,0 +1,64 @@
+package ru.practicum.ewm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class BufferedStatsClientTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void undeliveredPartsAreSpooledUnderTheirOwnKeys() throws IOException {
+        StatsClient statsClient = mock(StatsClient.class);
+        doThrow(new PartialHitDeliveryException(List.of(
+                new PartialHitDeliveryException.Part("batch@a", List.of(hit("/events/1"))),
+                new PartialHitDeliveryException.Part("batch@b", List.of(hit("/events/2"), hit("/events/3")))),
+                new IllegalStateException("узлы недоступны")))
+                .when(statsClient).addHits(any(), anyList());
+        BufferedStatsClient client = new BufferedStatsClient(statsClient, mock(ObjectProvider.class),
+                100, 100, Duration.ofHours(1), true, directory, DataSize.ofKilobytes(64), DataSize.ofMegabytes(1),
+                Duration.ofHours(1));
+
+        client.record(hit("/events/1"));
+        client.record(hit("/events/2"));
+        client.record(hit("/events/3"));
+        client.record(hit("/events/4"));
+        client.shutdown();
+
+        List<String> spooled = new ArrayList<>();
+        try (HitSpool spool = HitSpool.open(directory, 64 * 1024, 1024 * 1024)) {
+            while (spool.drain((key, batch) -> spooled.add(key + ":" + batch.size()))) {
+                // Очередь разбирается до конца
+            }
+        }
+        assertThat(spooled).containsExactly("batch@a:1", "batch@b:2");
+        assertThat(client.getDroppedCount()).isZero();
+    }
+
+    private static EndpointHitInputDto hit(String uri) {
+        EndpointHitInputDto hit = new EndpointHitInputDto();
+        hit.setApp("ewm-main-service");
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        hit.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0));
+        return hit;
+    }
+}
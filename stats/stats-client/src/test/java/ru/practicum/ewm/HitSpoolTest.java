@@ -0,0 +1,139 @@
+package ru.practicum.ewm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitSpoolTest {
+
+    private static final long FILE_SIZE = 64 * 1024;
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void undeliveredBatchesSurviveRestart() throws IOException {
+        try (HitSpool spool = HitSpool.open(directory, FILE_SIZE, MAX_SIZE)) {
+            assertThat(spool.append("first", hits("/events/1", 3))).isEqualTo(3);
+            assertThat(spool.append("second", hits("/events/2", 2))).isEqualTo(2);
+            assertThat(spool.append("third", hits("/events/3", 4))).isEqualTo(4);
+            assertThat(spool.drain((key, batch) -> true)).isTrue();
+            assertThat(spool.getBacklog()).isEqualTo(6);
+        }
+
+        List<String> delivered = new ArrayList<>();
+        try (HitSpool spool = HitSpool.open(directory, FILE_SIZE, MAX_SIZE)) {
+            assertThat(spool.getBacklog()).isEqualTo(6);
+            while (spool.drain((key, batch) -> delivered.add(key + ":" + batch.size() + ":" + batch.getFirst().getUri()))) {
+                // Очередь разбирается до конца
+            }
+            assertThat(spool.getBacklog()).isZero();
+        }
+        assertThat(delivered).containsExactly("second:2:/events/2", "third:4:/events/3");
+    }
+
+    @Test
+    void rejectedDeliveryKeepsBatch() throws IOException {
+        try (HitSpool spool = HitSpool.open(directory, FILE_SIZE, MAX_SIZE)) {
+            spool.append("only", hits("/events/1", 2));
+
+            assertThat(spool.drain((key, batch) -> false)).isFalse();
+            assertThat(spool.getBacklog()).isEqualTo(2);
+
+            List<String> keys = new ArrayList<>();
+            assertThat(spool.drain((key, batch) -> keys.add(key))).isTrue();
+            assertThat(keys).containsExactly("only");
+        }
+    }
+
+    // Испорченная на диске запись не останавливает очередь: она пропускается и копируется в quarantine
+    @Test
+    void corruptRecordIsSkippedAfterRestart() throws IOException {
+        try (HitSpool spool = HitSpool.open(directory, FILE_SIZE, MAX_SIZE)) {
+            spool.append("first", hits("/events/1", 1));
+            spool.append("second", hits("/events/2", 5));
+            spool.append("third", hits("/events/3", 2));
+        }
+        Path file = spoolFiles().getFirst();
+        corruptSecondRecord(file);
+
+        List<String> delivered = new ArrayList<>();
+        try (HitSpool spool = HitSpool.open(directory, FILE_SIZE, MAX_SIZE)) {
+            assertThat(spool.getBacklog()).isEqualTo(3); // Хиты испорченной записи не считаются
+            while (spool.drain((key, batch) -> delivered.add(key))) {
+                // Очередь разбирается до конца
+            }
+            assertThat(spool.getCorrupted()).isEqualTo(1);
+            assertThat(spool.getBacklog()).isZero();
+        }
+        assertThat(delivered).containsExactly("first", "third");
+        try (Stream<Path> quarantined = Files.list(directory.resolve("quarantine"))) {
+            assertThat(quarantined).hasSize(1);
+        }
+    }
+
+    @Test
+    void batchLargerThanFileIsSplitAndOverflowIsRefused() throws IOException {
+        try (HitSpool spool = HitSpool.open(directory, 4 * 1024, 8 * 1024)) {
+            List<String> keys = new ArrayList<>();
+
+            assertThat(spool.append("big", hits("/events/1", 80))).isEqualTo(80);
+            while (spool.drain((key, batch) -> keys.add(key))) {
+                // Очередь разбирается до конца
+            }
+            assertThat(keys).hasSizeGreaterThan(1).allMatch(key -> key.startsWith("big."));
+
+            int saved = 0;
+            for (int i = 0; i < 1_000; i++) {
+                saved += spool.append("batch-" + i, hits("/events/" + i, 10));
+            }
+            assertThat(spool.getBacklog()).isEqualTo(saved).isLessThan(10_000);
+        }
+    }
+
+    // Формат файла: [смещение чтения: 4][длина: 4][CRC32: 4][тело]...; портится первый байт тела второй записи
+    private static void corruptSecondRecord(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 4);
+            int second = 4 + 8 + length.flip().getInt();
+            ByteBuffer body = ByteBuffer.allocate(1);
+            channel.read(body, second + 8);
+            body.put(0, (byte) (body.get(0) ^ 0x5a));
+            channel.write(body.rewind(), second + 8);
+        }
+    }
+
+    private List<Path> spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("spool-")).sorted().toList();
+        }
+    }
+
+    private static List<EndpointHitInputDto> hits(String uri, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    EndpointHitInputDto hit = new EndpointHitInputDto();
+                    hit.setApp("ewm-main-service");
+                    hit.setUri(uri);
+                    hit.setIp("10.0.0." + i);
+                    hit.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0, i % 60));
+                    return hit;
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,230 @@
+package ru.practicum.ewm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShardedStatsClientTest {
+
+    private static final String FIRST = "http://stats-1:9090";
+    private static final String SECOND = "http://stats-2:9090";
+    private static final int VIRTUAL_NODES = 160;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    private final StatsClient loadBalanced = mock(StatsClient.class);
+    private final DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+    private final Map<String, StatsClient> nodes = new HashMap<>();
+    private final HitShardRing ring = new HitShardRing(List.of(FIRST, SECOND), VIRTUAL_NODES);
+    private ShardedStatsClient client;
+
+    @BeforeEach
+    void setUp() {
+        nodes.put(FIRST, mock(StatsClient.class));
+        nodes.put(SECOND, mock(StatsClient.class));
+        List<ServiceInstance> instances = List.of(
+                new DefaultServiceInstance("stats-1", "stats-server", "stats-1", 9090, false),
+                new DefaultServiceInstance("stats-2", "stats-server", "stats-2", 9090, false));
+        when(discoveryClient.getInstances("stats-server")).thenReturn(instances);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void hitsGoToTheirOwnersUnderPartKeys() {
+        client = client(false);
+        String first = uriOwnedBy(FIRST);
+        String second = uriOwnedBy(SECOND);
+        List<EndpointHitInputDto> batch = List.of(hit(first), hit(second), hit(first));
+
+        client.addHits("batch", batch);
+
+        verify(nodes.get(FIRST)).addHits(ShardedStatsClient.partKey("batch", FIRST), List.of(batch.get(0), batch.get(2)));
+        verify(nodes.get(SECOND)).addHits(ShardedStatsClient.partKey("batch", SECOND), List.of(batch.get(1)));
+        verify(loadBalanced, never()).addHits(any(), anyList());
+    }
+
+    @Test
+    void partialFailureReportsOnlyUndeliveredPartWithItsKey() {
+        client = client(false);
+        String first = uriOwnedBy(FIRST);
+        String second = uriOwnedBy(SECOND);
+        List<EndpointHitInputDto> batch = List.of(hit(first), hit(second));
+        doThrow(new IllegalStateException("stats-2 недоступен"))
+                .when(nodes.get(SECOND)).addHits(any(), anyList());
+
+        assertThatThrownBy(() -> client.addHits("batch", batch))
+                .isInstanceOfSatisfying(PartialHitDeliveryException.class, e -> {
+                    assertThat(e.getUndelivered()).containsExactly(batch.get(1));
+                    assertThat(e.getParts()).singleElement().satisfies(part -> {
+                        assertThat(part.key()).isEqualTo(ShardedStatsClient.partKey("batch", SECOND));
+                        assertThat(part.hits()).containsExactly(batch.get(1));
+                    });
+                });
+    }
+
+    @Test
+    void failureOfEveryNodeIsRethrownAsIs() {
+        client = client(false);
+        IllegalStateException failure = new IllegalStateException("узлы недоступны");
+        doThrow(failure).when(nodes.get(FIRST)).addHits(any(), anyList());
+        doThrow(failure).when(nodes.get(SECOND)).addHits(any(), anyList());
+
+        assertThatThrownBy(() -> client.addHits("batch", List.of(hit(uriOwnedBy(FIRST)), hit(uriOwnedBy(SECOND)))))
+                .isSameAs(failure);
+    }
+
+    @Test
+    void partKeyIsStableForItsNode() {
+        String part = ShardedStatsClient.partKey("batch", FIRST);
+
+        assertThat(part).startsWith("batch@");
+        assertThat(ShardedStatsClient.partKey(part, FIRST)).isEqualTo(part);
+        assertThat(ShardedStatsClient.partKey(part, SECOND)).isNotEqualTo(part).startsWith(part + "@");
+        assertThat(ShardedStatsClient.partKey(null, FIRST)).isNull();
+    }
+
+    @Test
+    void statsOfOwnedUrisAreMergedInCommonOrder() {
+        client = client(false);
+        String first = uriOwnedBy(FIRST);
+        String second = uriOwnedBy(SECOND);
+        when(nodes.get(FIRST).getStats(START, END, List.of(first), false))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", first, 3)));
+        when(nodes.get(SECOND).getStats(START, END, List.of(second), false))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", second, 7)));
+
+        List<ViewStatsOutputDto> stats = client.getStats(START, END, List.of(first, second), false);
+
+        assertThat(stats).extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactly(tuple(second, 7L), tuple(first, 3L));
+    }
+
+    @Test
+    void patternRowsFromSeparateStoragesAreSummed() {
+        client = client(false);
+        when(nodes.get(FIRST).getStats(START, END, List.of("/events/*"), false))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 2)));
+        when(nodes.get(SECOND).getStats(START, END, List.of("/events/*"), false))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 5)));
+
+        List<ViewStatsOutputDto> stats = client.getStats(START, END, List.of("/events/*"), false);
+
+        assertThat(stats).singleElement().extracting(ViewStatsOutputDto::getHits).isEqualTo(7L);
+    }
+
+    @Test
+    void patternWithSharedStorageIsAnsweredByOneNodeBypassingCache() {
+        client = client(true);
+        String owner = ring.owner("/events/*");
+        when(nodes.get(owner).queryStats(any()))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 4)));
+
+        List<ViewStatsOutputDto> stats = client.getStats(START, END, List.of("/events/*"), false);
+
+        assertThat(stats).singleElement().extracting(ViewStatsOutputDto::getHits).isEqualTo(4L);
+        verify(nodes.get(owner)).queryStats(argThat(params -> Boolean.TRUE.equals(params.getFresh())));
+        verify(nodes.get(owner.equals(FIRST) ? SECOND : FIRST), never()).queryStats(any());
+    }
+
+    @Test
+    void topOfSharedStorageTakesLargestRowAndSeparateStorageSumsThem() {
+        // Строки склеиваются на месте, поэтому каждый клиент получает свои ответы
+        client = client(true);
+        when(nodes.get(FIRST).getTop("ewm-main-service", "24h", 10))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 4)));
+        when(nodes.get(SECOND).getTop("ewm-main-service", "24h", 10))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 6)));
+        assertThat(client.getTop("ewm-main-service", "24h", 10)).singleElement()
+                .extracting(ViewStatsOutputDto::getHits).isEqualTo(6L);
+        client.shutdown();
+
+        client = client(false);
+        when(nodes.get(FIRST).getTop("ewm-main-service", "24h", 10))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 4)));
+        when(nodes.get(SECOND).getTop("ewm-main-service", "24h", 10))
+                .thenReturn(List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", 6)));
+        assertThat(client.getTop("ewm-main-service", "24h", 10)).singleElement()
+                .extracting(ViewStatsOutputDto::getHits).isEqualTo(10L);
+    }
+
+    @Test
+    void exactResourceStatsGoInRequestBody() {
+        client = client(false);
+        String owner = ring.owner("/events/1");
+        when(nodes.get(owner).queryResourceStats(any()))
+                .thenReturn(List.of(new ResourceStatsOutputDto("ewm-main-service", "events", 1L, 3)));
+
+        List<ResourceStatsOutputDto> stats = client.queryResourceStats(
+                new ResourceStatsRequestParams("events", List.of(1L), null, null, true, true));
+
+        assertThat(stats).singleElement().extracting(ResourceStatsOutputDto::getHits).isEqualTo(3L);
+        verify(nodes.get(owner)).queryResourceStats(argThat(params -> Boolean.TRUE.equals(params.getExact())));
+        verify(nodes.get(owner), never()).getResourceStats(any(), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void emptyRegistryFallsBackToLoadBalancer() {
+        when(discoveryClient.getInstances("stats-server")).thenReturn(List.of());
+        client = client(false);
+        List<EndpointHitInputDto> batch = List.of(hit("/events/1"));
+
+        client.addHits("batch", batch);
+
+        verify(loadBalanced).addHits("batch", batch);
+        verify(nodes.get(FIRST), never()).addHits(any(), anyList());
+        verify(nodes.get(SECOND), never()).addHits(any(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ShardedStatsClient client(boolean sharedStorage) {
+        ObjectProvider<MeterRegistry> meterRegistry = mock(ObjectProvider.class);
+        return new ShardedStatsClient(loadBalanced, discoveryClient, nodes::get, meterRegistry,
+                true, "stats-server", VIRTUAL_NODES, sharedStorage, 100);
+    }
+
+    private String uriOwnedBy(String node) {
+        return IntStream.range(1, 1000)
+                .mapToObj(i -> "/events/" + i)
+                .filter(uri -> ring.owner(uri).equals(node))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static EndpointHitInputDto hit(String uri) {
+        EndpointHitInputDto hit = new EndpointHitInputDto();
+        hit.setApp("ewm-main-service");
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        hit.setTimestamp(START);
+        return hit;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class HitImportOutputDto {
+    private String batchId; // Идентификатор пачки, переданный при загрузке
+    private long hits; // Сколько хитов записано этой пачкой
+    private boolean duplicate; // Пачка уже была загружена раньше, повторная загрузка ничего не изменила
+}
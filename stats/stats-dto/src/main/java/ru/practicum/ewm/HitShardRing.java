@@ -0,0 +1,74 @@
+package ru.practicum.ewm;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Кольцо консистентного хеширования узлов stats-server. Каждый узел занимает virtualNodes точек кольца,
+// uri принадлежит узлу с ближайшей точкой не меньше хеша uri. Когда узел приходит или уходит,
+// владельца меняет только доля uri около 1/N - та, что попадает на точки этого узла. Кольцо неизменяемо.
+// Строится клиентом для маршрутизации и узлами stats-server, чтобы найти перешедшие к ним uri
+public final class HitShardRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public HitShardRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Число виртуальных узлов должно быть не меньше 1");
+        }
+        this.nodes = Set.copyOf(nodes);
+        // Узлы добавляются в одном порядке, чтобы при совпадении хешей точка доставалась одному и тому же узлу
+        for (String node : new TreeSet<>(nodes)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(StatsHash.hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public String owner(String key) {
+        return ownerOf(points, StatsHash.hash(key));
+    }
+
+    // Доля хешей (а значит, и uri), владелец которых отличается в двух кольцах
+    public double movedShare(HitShardRing previous) {
+        if (isEmpty() || previous.isEmpty()) {
+            return isEmpty() && previous.isEmpty() ? 0 : 1;
+        }
+        TreeSet<Long> bounds = new TreeSet<>(points.keySet());
+        bounds.addAll(previous.points.keySet());
+
+        // Дуга (from, to] целиком принадлежит владельцу точки to в каждом из колец
+        double moved = 0;
+        long from = bounds.last();
+        for (long to : bounds) {
+            if (!ownerOf(points, to).equals(ownerOf(previous.points, to))) {
+                moved += arc(from, to);
+            }
+            from = to;
+        }
+        return moved;
+    }
+
+    private static String ownerOf(NavigableMap<Long, String> points, long hash) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash);
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // Длина дуги кольца 2^64 как доля от его длины; при единственной точке дуга - все кольцо
+    private static double arc(long from, long to) {
+        long length = to - from;
+        return length == 0 ? 1 : (length >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class HitTotalsOutputDto {
+    private String app; // Название приложения
+    private String uri; // URI запроса
+    private long hits; // Количество посещений за все время
+    private long uniqueHits; // Оценка количества уникальных посещений (по IP) за все время
+}
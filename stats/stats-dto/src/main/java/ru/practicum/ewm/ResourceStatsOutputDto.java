@@ -0,0 +1,17 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResourceStatsOutputDto {
+    private String app; // Название приложения
+    private String resourceType; // Тип ресурса из URI вида /{resourceType}/{resourceId}, например events
+    private long resourceId; // Идентификатор ресурса
+    private long hits; // Количество посещений
+}
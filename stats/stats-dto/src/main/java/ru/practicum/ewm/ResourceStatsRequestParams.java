@@ -0,0 +1,32 @@
+package ru.practicum.ewm;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Тело POST /stats/resources/query: те же параметры, что у GET /stats/resources
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResourceStatsRequestParams {
+
+    private String type; // Тип ресурса, например events
+
+    private List<Long> ids; // Идентификаторы ресурсов
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start; // Дата начала выборки; без start и end - значения за все время
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end; // Дата окончания выборки
+
+    private Boolean unique = false; // Флаг учета уникальных посещений (по IP)
+
+    private Boolean exact = false; // Точный подсчет уникальных IP по сырым данным вместо оценки по скетчам
+}
@@ -0,0 +1,21 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Set;
+
+// Тело POST /admin/shards/rebalance: клиент сообщает узлу stats-server прежний и новый состав кольца,
+// чтобы узел пересобрал из хранилища состояние uri, которые перешли к нему
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ShardRebalanceInputDto {
+    private String self; // Адрес узла в кольце - так, как его видит клиент
+    private Set<String> previousNodes; // Узлы кольца до перестроения
+    private Set<String> nodes; // Узлы кольца после перестроения
+    private int virtualNodes; // Число точек кольца на узел
+}
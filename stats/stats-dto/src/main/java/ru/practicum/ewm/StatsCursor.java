@@ -0,0 +1,42 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+
+// Курсор постраничного чтения /stats: последняя отданная строка в порядке hits DESC, app, uri.
+// Клиент передает его в параметре after, чтобы получить строки строго после нее
+@Getter
+@AllArgsConstructor
+public class StatsCursor {
+
+    // Порядок строк ответа /stats; названия сравниваются посимвольно, как COLLATE "C" в запросах сервера
+    public static final Comparator<ViewStatsOutputDto> ORDER = Comparator
+            .comparingLong(ViewStatsOutputDto::getHits).reversed()
+            .thenComparing(ViewStatsOutputDto::getApp)
+            .thenComparing(ViewStatsOutputDto::getUri);
+
+    private final long hits;
+    private final String app;
+    private final String uri;
+
+    public static String encode(ViewStatsOutputDto last) {
+        String raw = last.getHits() + "\n" + last.getApp() + "\n" + last.getUri();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static StatsCursor decode(String token) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token);
+        }
+        return new StatsCursor(Long.parseLong(parts[0]), parts[1], parts[2]);
+    }
+
+    public boolean isBefore(ViewStatsOutputDto stat) {
+        return ORDER.compare(new ViewStatsOutputDto(app, uri, hits), stat) < 0;
+    }
+}
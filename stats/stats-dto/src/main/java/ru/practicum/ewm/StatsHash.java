@@ -0,0 +1,26 @@
+package ru.practicum.ewm;
+
+import java.nio.charset.StandardCharsets;
+
+// Общий 64-битный хеш строк: кольцо узлов на клиенте и скетчи на сервере должны хешировать одинаково.
+// FNV-1a с финальным перемешиванием из MurmurHash3: FNV быстрый, но плохо разносит близкие строки,
+// а HyperLogLog и кольцу нужны равномерные старшие биты
+public final class StatsHash {
+
+    private StatsHash() {
+    }
+
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
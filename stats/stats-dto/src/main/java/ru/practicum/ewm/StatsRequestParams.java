@@ -1,14 +1,19 @@
 package ru.practicum.ewm;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+// Тело POST /stats/query: те же параметры, что у GET /stats, но список uri не ограничен длиной строки запроса
 @Getter
 @Setter
+@AllArgsConstructor
+@NoArgsConstructor
 public class StatsRequestParams {
 
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
@@ -20,4 +25,12 @@ public class StatsRequestParams {
     private List<String> uris; // Список URI для фильтрации статистики
 
     private Boolean unique = false; // Флаг учета уникальных посещений (по IP)
+
+    private Boolean exact = false; // Точный подсчет уникальных IP вместо оценки по скетчам
+
+    private String after; // Курсор последней полученной строки (StatsCursor.encode)
+
+    private Integer limit; // Максимальное количество строк; вместе с after - постраничное чтение
+
+    private Boolean fresh = false; // Не отдавать результат из кэша узла: хиты этих uri могли записать другие узлы
 }
@@ -0,0 +1,18 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsSeriesOutputDto {
+    private String app; // Название приложения
+    private String uri; // URI запроса
+    private List<SeriesPointDto> points; // Все интервалы диапазона по порядку, включая пустые
+}
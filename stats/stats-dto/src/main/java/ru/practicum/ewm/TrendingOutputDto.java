@@ -0,0 +1,16 @@
+package ru.practicum.ewm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrendingOutputDto {
+    private String app; // Название приложения
+    private String uri; // URI запроса
+    private double score; // Затухающая популярность: хит весит 1 в момент посещения и вдвое меньше через каждый период полураспада
+}
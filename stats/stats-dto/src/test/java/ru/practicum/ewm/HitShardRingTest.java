@@ -0,0 +1,94 @@
+package ru.practicum.ewm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HitShardRingTest {
+
+    private static final int VIRTUAL_NODES = 160;
+    private static final int URIS = 20_000;
+
+    @Test
+    void ownerDoesNotDependOnNodeOrder() {
+        HitShardRing ring = new HitShardRing(List.of("http://a", "http://b", "http://c"), VIRTUAL_NODES);
+        HitShardRing reordered = new HitShardRing(List.of("http://c", "http://a", "http://b"), VIRTUAL_NODES);
+
+        for (int i = 0; i < URIS; i++) {
+            assertThat(reordered.owner(uri(i))).isEqualTo(ring.owner(uri(i)));
+        }
+    }
+
+    @Test
+    void urisAreSpreadEvenly() {
+        HitShardRing ring = new HitShardRing(List.of("http://a", "http://b", "http://c", "http://d"), VIRTUAL_NODES);
+
+        Map<String, Integer> owned = owners(ring);
+
+        assertThat(owned).hasSize(4);
+        owned.values().forEach(count -> assertThat((double) count).isCloseTo(URIS / 4.0, within(URIS / 4.0 * 0.25)));
+    }
+
+    // Новый узел забирает около 1/N uri, и только себе: uri между старыми узлами не перемещаются
+    @Test
+    void addedNodeTakesOnlyItsShare() {
+        HitShardRing before = new HitShardRing(List.of("http://a", "http://b", "http://c", "http://d"), VIRTUAL_NODES);
+        HitShardRing after = new HitShardRing(List.of("http://a", "http://b", "http://c", "http://d", "http://e"), VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < URIS; i++) {
+            String previous = before.owner(uri(i));
+            String next = after.owner(uri(i));
+            if (!previous.equals(next)) {
+                assertThat(next).isEqualTo("http://e");
+                moved++;
+            }
+        }
+
+        double share = (double) moved / URIS;
+        assertThat(share).isCloseTo(1 / 5.0, within(0.05));
+        assertThat(after.movedShare(before)).isCloseTo(share, within(0.02));
+    }
+
+    @Test
+    void removedNodeHandsOverOnlyItsUris() {
+        HitShardRing before = new HitShardRing(List.of("http://a", "http://b", "http://c"), VIRTUAL_NODES);
+        HitShardRing after = new HitShardRing(List.of("http://a", "http://b"), VIRTUAL_NODES);
+
+        for (int i = 0; i < URIS; i++) {
+            String previous = before.owner(uri(i));
+            if (!previous.equals("http://c")) {
+                assertThat(after.owner(uri(i))).isEqualTo(previous);
+            }
+        }
+    }
+
+    @Test
+    void movedShareOfSameOrEmptyRings() {
+        HitShardRing ring = new HitShardRing(List.of("http://a", "http://b"), VIRTUAL_NODES);
+        HitShardRing empty = new HitShardRing(List.of(), VIRTUAL_NODES);
+
+        assertThat(ring.movedShare(new HitShardRing(List.of("http://b", "http://a"), VIRTUAL_NODES))).isZero();
+        assertThat(ring.movedShare(empty)).isEqualTo(1);
+        assertThat(empty.movedShare(new HitShardRing(List.of(), VIRTUAL_NODES))).isZero();
+        assertThatThrownBy(() -> new HitShardRing(List.of("http://a"), 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Map<String, Integer> owners(HitShardRing ring) {
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < URIS; i++) {
+            owned.merge(ring.owner(uri(i)), 1, Integer::sum);
+        }
+        return owned;
+    }
+
+    private static String uri(int i) {
+        return "/events/" + i;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.ewm.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class ReactiveStatisticServer {
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveStatisticServer.class, args);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.practicum.ewm.reactive.controller;
+
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.reactive.service.ReactiveStatisticService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@Validated
+public class ReactiveStatisticController {
+
+    private final ReactiveStatisticService statisticService;
+
+    @PostMapping("/hit")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Void> addHit(@Valid @RequestBody EndpointHitInputDto endpointHitInputDto) {
+        return statisticService.createEndpointHits(List.of(endpointHitInputDto));
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Void> addHits(@RequestBody List<@Valid EndpointHitInputDto> endpointHitInputDtos) {
+        return statisticService.createEndpointHits(endpointHitInputDtos);
+    }
+
+    @GetMapping("/stats")
+    public Flux<ViewStatsOutputDto> getStats(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                             @RequestParam(required = false) List<String> uris,
+                                             @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                             @RequestParam(required = false, defaultValue = "false") Boolean exact,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Integer limit) {
+        return statisticService.getStats(uris, start, end, unique, exact, after, limit);
+    }
+}
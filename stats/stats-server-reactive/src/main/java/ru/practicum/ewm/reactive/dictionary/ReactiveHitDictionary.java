@@ -0,0 +1,65 @@
+package ru.practicum.ewm.reactive.dictionary;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Кэш словарей app и uri без блокировок: промах добавляет значение одним запросом,
+// который возвращает идентификатор и новой, и уже существующей строки
+@Component
+@RequiredArgsConstructor
+public class ReactiveHitDictionary {
+
+    // Как в stats-server: /{resource_type}/{resource_id} дополнительно раскладывается в колонки ресурса
+    private static final Pattern RESOURCE_URI = Pattern.compile("^/([A-Za-z_-]+)/(\\d{1,18})$");
+
+    private final DatabaseClient databaseClient;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+
+    public Mono<Integer> appId(String app) {
+        Integer id = appIds.get(app);
+        if (id != null) {
+            return Mono.just(id);
+        }
+        return databaseClient.sql("""
+                        WITH inserted AS (
+                            INSERT INTO app_dictionary (name) VALUES (:name) ON CONFLICT (name) DO NOTHING RETURNING id
+                        )
+                        SELECT id FROM inserted UNION ALL SELECT id FROM app_dictionary WHERE name = :name LIMIT 1
+                        """)
+                .bind("name", app)
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .doOnNext(newId -> appIds.put(app, newId));
+    }
+
+    public Mono<Integer> uriId(String uri) {
+        Integer id = uriIds.get(uri);
+        if (id != null) {
+            return Mono.just(id);
+        }
+        Matcher resource = RESOURCE_URI.matcher(uri);
+        boolean isResource = resource.matches();
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("""
+                        WITH inserted AS (
+                            INSERT INTO uri_dictionary (uri, resource_type, resource_id)
+                            VALUES (:uri, :resourceType, :resourceId) ON CONFLICT (uri) DO NOTHING RETURNING id
+                        )
+                        SELECT id FROM inserted UNION ALL SELECT id FROM uri_dictionary WHERE uri = :uri LIMIT 1
+                        """)
+                .bind("uri", uri);
+        spec = isResource
+                ? spec.bind("resourceType", resource.group(1)).bind("resourceId", Long.parseLong(resource.group(2)))
+                : spec.bindNull("resourceType", String.class).bindNull("resourceId", Long.class);
+        return spec.map(row -> row.get("id", Integer.class))
+                .one()
+                .doOnNext(newId -> uriIds.put(uri, newId));
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.reactive.exception;
+
+public class BadRequestException extends RuntimeException {
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
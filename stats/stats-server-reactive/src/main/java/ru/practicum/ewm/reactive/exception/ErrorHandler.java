@@ -0,0 +1,45 @@
+package ru.practicum.ewm.reactive.exception;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
+
+import java.util.List;
+
+// Ответы об ошибках в том же формате, что и у stats-server
+@RestControllerAdvice
+public class ErrorHandler {
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse onWebExchangeBindException(WebExchangeBindException e) {
+        return new ErrorResponse(e.getBindingResult().getFieldErrors().stream()
+                .map(error -> new Violation(error.getField(), error.getDefaultMessage()))
+                .toList());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse onHandlerMethodValidationException(HandlerMethodValidationException e) {
+        return new ErrorResponse(e.getAllErrors().stream()
+                .map(error -> new Violation("VALIDATION ERROR", error.getDefaultMessage()))
+                .toList());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleBadRequestException(BadRequestException e) {
+        return new ErrorResponse(List.of(new Violation("BAD REQUEST ERROR", e.getMessage())));
+    }
+
+    // Некорректный IP или слишком длинные app и uri отвергает сама PostgreSQL
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleDataIntegrityViolationException(DataIntegrityViolationException e) {
+        return new ErrorResponse(List.of(new Violation("BAD REQUEST ERROR", e.getMostSpecificCause().getMessage())));
+    }
+}
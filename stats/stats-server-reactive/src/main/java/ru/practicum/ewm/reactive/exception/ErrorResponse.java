@@ -0,0 +1,12 @@
+package ru.practicum.ewm.reactive.exception;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class ErrorResponse {
+    private final List<Violation> violations;
+}
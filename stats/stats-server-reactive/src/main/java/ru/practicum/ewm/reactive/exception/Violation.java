@@ -0,0 +1,11 @@
+package ru.practicum.ewm.reactive.exception;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class Violation {
+    private final String type;
+    private final String description;
+}
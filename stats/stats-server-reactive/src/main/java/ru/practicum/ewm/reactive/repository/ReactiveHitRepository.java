@@ -0,0 +1,89 @@
+package ru.practicum.ewm.reactive.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.ViewStatsOutputDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class ReactiveHitRepository {
+
+    private final DatabaseClient databaseClient;
+
+    // Вся пачка вставляется одним запросом: массивы колонок разворачиваются через unnest
+    public Mono<Void> saveAll(List<HitRow> hits) {
+        Integer[] appIds = new Integer[hits.size()];
+        Integer[] uriIds = new Integer[hits.size()];
+        String[] ips = new String[hits.size()];
+        LocalDateTime[] timestamps = new LocalDateTime[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            HitRow hit = hits.get(i);
+            appIds[i] = hit.appId();
+            uriIds[i] = hit.uriId();
+            ips[i] = hit.ip();
+            timestamps[i] = hit.timestamp();
+        }
+
+        return databaseClient.sql("""
+                        INSERT INTO endpoint_hit (app_id, uri_id, ip, timestamp)
+                        SELECT * FROM unnest(:appIds::int[], :uriIds::int[], :ips::text[]::inet[], :timestamps::timestamp[])
+                        """)
+                .bind("appIds", appIds)
+                .bind("uriIds", uriIds)
+                .bind("ips", ips)
+                .bind("timestamps", timestamps)
+                .then();
+    }
+
+    // Статистика по сырым хитам в порядке StatsCursor.ORDER; uris и patterns - точные uri и регулярные
+    // выражения шаблонов, null - без фильтра. Строки отдаются по мере чтения
+    public Flux<ViewStatsOutputDto> findStats(List<String> uris,
+                                              List<String> patterns,
+                                              LocalDateTime start,
+                                              LocalDateTime end,
+                                              boolean unique,
+                                              StatsCursor after,
+                                              Integer limit) {
+        StringBuilder sql = new StringBuilder("SELECT a.name AS app, u.uri AS uri, s.hits FROM (")
+                .append("SELECT app_id, uri_id, ").append(unique ? "COUNT(DISTINCT ip)" : "COUNT(*)")
+                .append(" AS hits FROM endpoint_hit WHERE timestamp >= :start AND timestamp <= :end");
+        if (uris != null) {
+            sql.append(" AND uri_id IN (SELECT id FROM uri_dictionary WHERE uri = ANY(:uris) OR uri ~ ANY(:patterns))");
+        }
+        sql.append(" GROUP BY app_id, uri_id) s JOIN app_dictionary a ON a.id = s.app_id JOIN uri_dictionary u ON u.id = s.uri_id");
+        if (after != null) {
+            sql.append(" WHERE s.hits < :afterHits OR (s.hits = :afterHits")
+                    .append(" AND (a.name COLLATE \"C\", u.uri COLLATE \"C\") > (:afterApp, :afterUri))");
+        }
+        sql.append(" ORDER BY s.hits DESC, a.name COLLATE \"C\", u.uri COLLATE \"C\"");
+        if (limit != null) {
+            sql.append(" LIMIT :limit");
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString())
+                .bind("start", start)
+                .bind("end", end);
+        if (uris != null) {
+            spec = spec.bind("uris", uris.toArray(String[]::new)).bind("patterns", patterns.toArray(String[]::new));
+        }
+        if (after != null) {
+            spec = spec.bind("afterHits", after.getHits()).bind("afterApp", after.getApp()).bind("afterUri", after.getUri());
+        }
+        if (limit != null) {
+            spec = spec.bind("limit", limit);
+        }
+        return spec.map(row -> new ViewStatsOutputDto(row.get("app", String.class), row.get("uri", String.class),
+                        row.get("hits", Long.class)))
+                .all();
+    }
+
+    public record HitRow(int appId, int uriId, String ip, LocalDateTime timestamp) {
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.ewm.reactive.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.reactive.dictionary.ReactiveHitDictionary;
+import ru.practicum.ewm.reactive.exception.BadRequestException;
+import ru.practicum.ewm.reactive.repository.ReactiveHitRepository;
+import ru.practicum.ewm.reactive.repository.ReactiveHitRepository.HitRow;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Запись и чтение хитов без блокирующих вызовов: поток запроса не ждет базу, поэтому хватает
+// нескольких потоков event loop вне зависимости от числа одновременных запросов
+@Service
+@RequiredArgsConstructor
+public class ReactiveStatisticService {
+
+    private static final String REGEX_SPECIAL = "\\.^$+?()[]{}|";
+
+    private final ReactiveHitDictionary hitDictionary;
+    private final ReactiveHitRepository hitRepository;
+
+    public Mono<Void> createEndpointHits(List<EndpointHitInputDto> hits) {
+        if (hits.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(hits)
+                .concatMap(hit -> Mono.zip(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                        (appId, uriId) -> new HitRow(appId, uriId, hit.getIp(), hit.getTimestamp())))
+                .collectList()
+                .flatMap(hitRepository::saveAll);
+    }
+
+    // Тот же контракт, что у /stats в stats-server, включая шаблоны uri и постраничное чтение.
+    // Агрегатов и скетчей здесь нет, поэтому exact выполняется при любом значении: счет всегда идет
+    // по сырым хитам, как на пути exact = true в stats-server. При exact = false допустим и точный ответ
+    public Flux<ViewStatsOutputDto> getStats(List<String> uris,
+                                             LocalDateTime start,
+                                             LocalDateTime end,
+                                             boolean unique,
+                                             Boolean exact,
+                                             String after,
+                                             Integer limit) {
+        if (start == null || end == null || start.isAfter(end)) {
+            return Flux.error(new BadRequestException("Даты не должны быть пустыми и start должен предшествовать end"));
+        }
+        if (limit != null && limit <= 0) {
+            return Flux.error(new BadRequestException("limit должен быть положительным"));
+        }
+        if (uris != null && uris.isEmpty()) {
+            return Flux.empty();
+        }
+
+        StatsCursor cursor = null;
+        if (after != null) {
+            try {
+                cursor = StatsCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                return Flux.error(new BadRequestException("Некорректный курсор after: " + after));
+            }
+        }
+
+        List<String> literals = null;
+        List<String> patterns = null;
+        if (uris != null) {
+            literals = new ArrayList<>();
+            patterns = new ArrayList<>();
+            for (String uri : uris) {
+                if (uri.indexOf('*') >= 0) {
+                    patterns.add(toRegex(uri));
+                } else {
+                    literals.add(uri);
+                }
+            }
+        }
+        return hitRepository.findStats(literals, patterns, start, end, unique, cursor, limit);
+    }
+
+    // Шаблон в смысле stats-server: * - любая часть одного сегмента, ** - любое число сегментов, в том числе ноль
+    static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder("^");
+        String[] segments = pattern.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("**".equals(segment)) {
+                regex.append(i == 0 ? ".*" : "(/[^/]*)*");
+                continue;
+            }
+            if (i > 0) {
+                regex.append('/');
+            }
+            for (char c : segment.toCharArray()) {
+                if (c == '*') {
+                    regex.append("[^/]*");
+                } else {
+                    if (REGEX_SPECIAL.indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        return regex.append('$').toString();
+    }
+}
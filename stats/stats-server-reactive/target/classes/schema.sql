@@ -0,0 +1,32 @@
+DROP TABLE if EXISTS endpoint_hit;
+DROP TABLE if EXISTS uri_dictionary;
+DROP TABLE if EXISTS app_dictionary;
+
+
+-- Те же словари и сырые хиты, что и у stats-server, но без секций и агрегатов:
+-- /stats считается по сырым хитам, поэтому уникальные IP всегда точные
+CREATE TABLE IF NOT EXISTS app_dictionary
+(
+    id   INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    name VARCHAR(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uri_dictionary
+(
+    id            INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    uri           VARCHAR(100) NOT NULL UNIQUE,
+    resource_type VARCHAR(50),
+    resource_id   BIGINT
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_hit
+(
+    id        BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    app_id    INT                         NOT NULL,
+    uri_id    INT                         NOT NULL,
+    ip        INET                        NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hit_timestamp_idx ON endpoint_hit (timestamp);
+CREATE INDEX IF NOT EXISTS endpoint_hit_uri_timestamp_idx ON endpoint_hit (uri_id, timestamp);
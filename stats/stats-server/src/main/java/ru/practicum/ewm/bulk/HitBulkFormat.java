@@ -0,0 +1,17 @@
+package ru.practicum.ewm.bulk;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+
+// Формат потока COPY: строки app, uri, ip, timestamp. CSV - с заголовком, binary - двоичный формат PostgreSQL
+// для колонок (varchar, varchar, inet, timestamp), его дает экспорт с format=binary
+@Getter
+@RequiredArgsConstructor
+public enum HitBulkFormat {
+    CSV("(FORMAT csv, HEADER true)", MediaType.parseMediaType("text/csv")),
+    BINARY("(FORMAT binary)", MediaType.APPLICATION_OCTET_STREAM);
+
+    private final String copyOptions; // Параметры команды COPY
+    private final MediaType mediaType; // Тип тела запроса и ответа
+}
@@ -0,0 +1,188 @@
+package ru.practicum.ewm.bulk;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.HitImportOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.exception.BadRequestException;
+import ru.practicum.ewm.ingest.HitWriter;
+import ru.practicum.ewm.ingest.IngestionProperties;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.query.QueryProperties;
+import ru.practicum.ewm.repository.HitBulkRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.rollup.RollupGranularity;
+import ru.practicum.ewm.rollup.RollupKey;
+import ru.practicum.ewm.sketch.HyperLogLog;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Загрузка пачки идет в три шага: поток копируется в hit_import_staging, затем одной транзакцией переносится
+// в endpoint_hit и агрегаты с отметкой в hit_import_batch, после чего хиты передаются in-memory слушателям.
+// Повтор прерванной загрузки с тем же batchId безопасен: пачка с отметкой больше не записывается,
+// а неподтвержденные подготовленные хиты заменяются заново загруженными
+@Service
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class HitBulkService {
+
+    private static final String LEGACY_BATCH_ID = "legacy-endpoint-hit";
+
+    private final HitBulkRepository hitBulkRepository;
+    private final RollupRepository rollupRepository;
+    private final HitDictionary hitDictionary;
+    private final HitWriter hitWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final IngestionProperties ingestionProperties;
+    private final QueryProperties queryProperties;
+
+    public HitImportOutputDto importHits(String batchId, HitBulkFormat format, InputStream body) {
+        if (batchId == null || batchId.isBlank() || batchId.length() > 100) {
+            throw new BadRequestException("batchId должен быть непустой строкой не длиннее 100 символов");
+        }
+        return importBatch(batchId, () -> {
+            try {
+                hitBulkRepository.stage(batchId, format, body);
+            } catch (DataAccessException e) {
+                throw new BadRequestException("Некорректные данные пачки " + batchId + ": "
+                        + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            }
+        });
+    }
+
+    // schema.sql переименовывает несекционированную endpoint_hit со строками app и uri, оставшуюся на томе
+    // от прежних версий, в endpoint_hit_legacy. Ее хиты переносятся как пачка с постоянным batchId: прерванный
+    // перенос повторяется при следующем старте, а уже перенесенный не задваивается. Перенос идет после
+    // восстановления счетчиков, чтобы те получили эти хиты один раз - через слушателей
+    @EventListener(ApplicationReadyEvent.class)
+    public void importLegacyHits() {
+        if (!hitBulkRepository.legacyTableExists()) {
+            return;
+        }
+        HitImportOutputDto result = importBatch(LEGACY_BATCH_ID, () -> hitBulkRepository.stageLegacy(LEGACY_BATCH_ID));
+        hitBulkRepository.dropLegacy();
+        log.info("Хиты прежней таблицы endpoint_hit перенесены: {}", result.getHits());
+    }
+
+    // Проверяется контроллером до начала ответа: после 200 OK ошибку клиенту уже не передать
+    public void validateExport(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new BadRequestException("Даты не должны быть пустыми и start должен предшествовать end");
+        }
+    }
+
+    public long exportHits(LocalDateTime start, LocalDateTime end, HitBulkFormat format, OutputStream out) {
+        validateExport(start, end);
+        return hitBulkRepository.export(start, end, format, out);
+    }
+
+    // stage заменяет подготовленные хиты пачки и выполняется в транзакции под замком пачки
+    private HitImportOutputDto importBatch(String batchId, Runnable stage) {
+        Boolean staged = transactionTemplate.execute(status -> {
+            hitBulkRepository.lockBatch(batchId);
+            if (hitBulkRepository.findImportedHits(batchId).isPresent()) {
+                return false;
+            }
+            stage.run();
+            return true;
+        });
+        if (!Boolean.TRUE.equals(staged)) {
+            return duplicate(batchId);
+        }
+
+        // Словари пополняются своими короткими транзакциями, как и при обычной записи хитов
+        hitBulkRepository.findStagedApps(batchId).forEach(hitDictionary::appId);
+        hitBulkRepository.findStagedUris(batchId).forEach(hitDictionary::uriId);
+
+        // Коммит и публикация идут одним шагом для контрольной точки счетчиков: иначе снимок между ними
+        // учел бы хиты в last_hit_id, но не в счетчиках, и после перезапуска они бы потерялись
+        Long imported = hitWriter.writeThrough(() -> {
+            Long hits = transactionTemplate.execute(status -> {
+                hitBulkRepository.lockBatch(batchId);
+                if (hitBulkRepository.findImportedHits(batchId).isPresent()) {
+                    return null;
+                }
+                long inserted = hitBulkRepository.insertHits(batchId);
+                for (RollupGranularity granularity : RollupGranularity.values()) {
+                    hitBulkRepository.incrementRollup(granularity, batchId);
+                }
+                mergeSketches(batchId);
+                hitBulkRepository.markImported(batchId, inserted);
+                return inserted;
+            });
+            if (hits != null) {
+                publish(batchId);
+            }
+            return hits;
+        });
+        if (imported == null) {
+            return duplicate(batchId);
+        }
+
+        hitBulkRepository.deleteStaged(batchId);
+        log.info("Загружена пачка {}: {} хитов", batchId, imported);
+        return new HitImportOutputDto(batchId, imported, false);
+    }
+
+    // Хиты читаются по возрастанию времени, поэтому в памяти держатся скетчи только текущих часа и суток
+    private void mergeSketches(String batchId) {
+        Map<RollupGranularity, Map<RollupKey, HyperLogLog>> sketches = new HashMap<>();
+        Map<RollupGranularity, LocalDateTime> buckets = new HashMap<>();
+        List<RollupGranularity> sketched = new ArrayList<>();
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            if (granularity.isSketched()) {
+                sketched.add(granularity);
+                sketches.put(granularity, new HashMap<>());
+            }
+        }
+
+        hitBulkRepository.forEachStagedHit(batchId, queryProperties.getFetchSize(), hit -> {
+            for (RollupGranularity granularity : sketched) {
+                LocalDateTime bucket = granularity.truncate(hit.getTimestamp());
+                Map<RollupKey, HyperLogLog> current = sketches.get(granularity);
+                if (!bucket.equals(buckets.put(granularity, bucket)) && !current.isEmpty()) {
+                    rollupRepository.mergeSketches(granularity, current);
+                    current.clear();
+                }
+                current.computeIfAbsent(new RollupKey(hit.getAppId(), hit.getUriId(), bucket), key -> new HyperLogLog())
+                        .add(hit.getIp());
+            }
+        });
+        sketches.forEach(rollupRepository::mergeSketches);
+    }
+
+    // Слушатели получают хиты пачками того же размера, что и при фоновой записи
+    private void publish(String batchId) {
+        int batchSize = ingestionProperties.getBatchSize();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<EndpointHit> batch = new ArrayList<>(batchSize);
+            hitBulkRepository.forEachStagedHit(batchId, queryProperties.getFetchSize(), hit -> {
+                batch.add(hit);
+                if (batch.size() == batchSize) {
+                    hitWriter.publish(List.copyOf(batch));
+                    batch.clear();
+                }
+            });
+            hitWriter.publish(List.copyOf(batch));
+        });
+    }
+
+    private HitImportOutputDto duplicate(String batchId) {
+        log.info("Пачка {} уже загружена, повторная загрузка пропущена", batchId);
+        return new HitImportOutputDto(batchId, hitBulkRepository.findImportedHits(batchId).orElse(0L), true);
+    }
+}
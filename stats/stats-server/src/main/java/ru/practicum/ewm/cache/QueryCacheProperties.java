@@ -0,0 +1,21 @@
+package ru.practicum.ewm.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.query.cache")
+public class QueryCacheProperties {
+
+    private boolean enabled = true;
+
+    private int maxEntries = 10_000; // Больше - вытесняются давно не запрошенные результаты
+
+    private Duration endBucket = Duration.ofMinutes(1); // Запросы с end внутри одного интервала делят результат
+
+    private Duration maxStaleness = Duration.ofSeconds(1); // Сколько результат отдается после прихода новых хитов по его uri
+}
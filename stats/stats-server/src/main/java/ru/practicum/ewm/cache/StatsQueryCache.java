@@ -0,0 +1,194 @@
+package ru.practicum.ewm.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.dictionary.UriTrie;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// LRU-кэш результатов /stats. Каждая записанная пачка хитов продвигает водяной знак (номер пачки)
+// своих uri; результат считается свежим, пока ни один из его uri не получил пачку новее результата.
+// Устаревший результат еще отдается в течение maxStaleness, чтобы горячие uri не пересчитывались на каждый запрос.
+// Водяные знаки uri не копятся без предела: знак не старше самого старого результата в кэше ничего не решает
+// и удаляется, а если старые результаты держат слишком много знаков, вытесняются и они
+@Component
+public class StatsQueryCache implements HitListener {
+
+    private final QueryCacheProperties properties;
+    private final AtomicLong watermark = new AtomicLong();
+    private final Map<String, Long> uriWatermarks = new ConcurrentHashMap<>();
+    private final Map<Key, Entry> entries;
+    private long prunedWatermark; // Знаки не новее него удалены; меняется под блокировкой entries
+
+    private final Counter hits;
+    private final Counter staleHits;
+    private final Counter misses;
+    private final Timer staleness;
+
+    public StatsQueryCache(QueryCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.getMaxEntries();
+            }
+        };
+
+        this.hits = requests(meterRegistry, "hit");
+        this.staleHits = requests(meterRegistry, "stale");
+        this.misses = requests(meterRegistry, "miss");
+        this.staleness = Timer.builder("stats.query.cache.staleness")
+                .description("Возраст отданного устаревшего результата")
+                .register(meterRegistry);
+        Gauge.builder("stats.query.cache.size", this, cache -> cache.size())
+                .description("Количество результатов в кэше")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        long batch = watermark.incrementAndGet();
+        Set<String> uris = new HashSet<>();
+        for (EndpointHit hit : hits) {
+            if (uris.add(hit.getUri())) {
+                uriWatermarks.put(hit.getUri(), batch);
+            }
+        }
+        pruneWatermarks();
+    }
+
+    // Результаты с этими uri устаревают, как после записи пачки: их хиты могли записывать другие узлы
+    public void invalidate(Collection<String> uris) {
+        long batch = watermark.incrementAndGet();
+        uris.forEach(uri -> uriWatermarks.put(uri, batch));
+        pruneWatermarks();
+    }
+
+    public List<ViewStatsOutputDto> get(List<String> uris,
+                                        LocalDateTime start,
+                                        LocalDateTime end,
+                                        boolean unique,
+                                        boolean exact,
+                                        Supplier<List<ViewStatsOutputDto>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+
+        Key key = new Key(uris == null ? null : Set.copyOf(uris), start, roundEnd(end), unique, exact);
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            if (isFresh(key, entry)) {
+                hits.increment();
+                return entry.result();
+            }
+            long age = now - entry.loadedAt();
+            if (age < properties.getMaxStaleness().toNanos()) {
+                staleHits.increment();
+                staleness.record(Duration.ofNanos(age));
+                return entry.result();
+            }
+        }
+
+        misses.increment();
+        // Водяной знак берется до запроса: пачка, записанная во время запроса, сделает результат устаревшим
+        long loadedWatermark = watermark.get();
+        List<ViewStatsOutputDto> result = List.copyOf(loader.get());
+        synchronized (entries) {
+            // Пока шел запрос, знаки его uri могли быть удалены: без них результат выглядел бы свежим
+            if (loadedWatermark >= prunedWatermark) {
+                entries.put(key, new Entry(result, loadedWatermark, now));
+            }
+        }
+        return result;
+    }
+
+    // Запрос по всем uri или по шаблону устаревает от любой пачки, запрос по списку - только от пачек с этими uri
+    private boolean isFresh(Key key, Entry entry) {
+        if (key.uris() == null || key.uris().stream().anyMatch(UriTrie::isPattern)) {
+            return watermark.get() <= entry.watermark();
+        }
+        for (String uri : key.uris()) {
+            if (uriWatermarks.getOrDefault(uri, 0L) > entry.watermark()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Запускается, когда знаков вдвое больше предела кэша, поэтому в среднем обходится дешево.
+    // Оставляются не больше maxEntries самых новых знаков; результаты старше границы вытесняются
+    private void pruneWatermarks() {
+        int limit = properties.getMaxEntries();
+        if (uriWatermarks.size() <= 2 * limit) {
+            return;
+        }
+        synchronized (entries) {
+            if (uriWatermarks.size() <= 2 * limit) {
+                return;
+            }
+            long floor = entries.values().stream().mapToLong(Entry::watermark).min().orElse(watermark.get());
+            long[] marks = uriWatermarks.values().stream().mapToLong(Long::longValue).sorted().toArray();
+            if (marks.length > limit) {
+                floor = Math.max(floor, marks[marks.length - limit - 1]);
+            }
+            long pruned = floor;
+            entries.values().removeIf(entry -> entry.watermark() < pruned);
+            uriWatermarks.values().removeIf(mark -> mark <= pruned);
+            prunedWatermark = Math.max(prunedWatermark, pruned);
+        }
+    }
+
+    int watermarkCount() {
+        return uriWatermarks.size();
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private LocalDateTime roundEnd(LocalDateTime end) {
+        long bucket = properties.getEndBucket().toSeconds();
+        if (bucket <= 0) {
+            return end;
+        }
+        long seconds = Math.floorDiv(end.toEpochSecond(ZoneOffset.UTC), bucket) * bucket;
+        return LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("stats.query.cache.requests")
+                .description("Запросы /stats к кэшу результатов")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Key(Set<String> uris, LocalDateTime start, LocalDateTime end, boolean unique, boolean exact) {
+    }
+
+    private record Entry(List<ViewStatsOutputDto> result, long watermark, long loadedAt) {
+    }
+}
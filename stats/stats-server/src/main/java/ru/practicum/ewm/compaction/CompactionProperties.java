@@ -0,0 +1,17 @@
+package ru.practicum.ewm.compaction;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.ingestion.compaction")
+public class CompactionProperties {
+
+    private boolean enabled = true; // Одинаковые (app, uri, ip) пачки в одном окне пишутся одной строкой endpoint_hit
+
+    private Duration window = Duration.ofSeconds(1); // Окно сжатия - делитель минуты; время хитов хранится с точностью до секунды
+}
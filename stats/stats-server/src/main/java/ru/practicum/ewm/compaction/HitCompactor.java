@@ -0,0 +1,111 @@
+package ru.practicum.ewm.compaction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Сжимает одинаковые хиты (app, uri, ip) пачки внутри окна в одну строку endpoint_hit с hit_count - числом хитов.
+// Боты и частые обновления страницы дают десятки одинаковых хитов в секунду, и каждый был бы отдельной строкой.
+// Строка получает время самого раннего хита окна; при окне в секунду это время всех хитов строки,
+// при окне длиннее хиты строки на границе диапазона запроса относятся к нему по этому времени.
+// Повторы HitDeduplicator в режиме COLLAPSE сжимаются в окне минуты - самого мелкого бакета агрегатов,
+// поэтому строка никогда не пересекает границу между сырыми хитами и агрегатами в плане запроса
+@Component
+@JpaStoreEngine
+public class HitCompactor {
+
+    private static final long REPEAT_WINDOW_SECONDS = 60;
+
+    private final CompactionProperties properties;
+    private final long windowSeconds;
+    private final Counter written;
+    private final Counter merged;
+
+    public HitCompactor(CompactionProperties properties, MeterRegistry meterRegistry) {
+        // Окно должно целиком лежать в одной минуте: строка получает время самого раннего хита окна, и при окне,
+        // не делящем минуту, хиты следующей минуты в сырых данных числились бы в предыдущей, а в агрегатах - в своей
+        long seconds = properties.getWindow().toSeconds();
+        if (seconds < 1 || properties.getWindow().toNanos() % 1_000_000_000L != 0 || REPEAT_WINDOW_SECONDS % seconds != 0) {
+            throw new IllegalStateException("stats.ingestion.compaction.window должно быть делителем минуты "
+                    + "(1s, 2s, 3s, 4s, 5s, 6s, 10s, 12s, 15s, 20s, 30s или 60s): " + properties.getWindow());
+        }
+        this.properties = properties;
+        this.windowSeconds = seconds;
+        this.written = compactionCounter(meterRegistry, "written");
+        this.merged = compactionCounter(meterRegistry, "merged");
+    }
+
+    // Возвращает строки для записи в endpoint_hit; исходные хиты не меняются, их получают слушатели
+    public List<EndpointHit> compact(List<EndpointHit> hits) {
+        return compact(hits, false);
+    }
+
+    // collapseRepeats - повторы (hit.repeat) сжимаются в минутном окне отдельно от первых посещений
+    public List<EndpointHit> compact(List<EndpointHit> hits, boolean collapseRepeats) {
+        if (!properties.isEnabled() && !collapseRepeats) {
+            return hits;
+        }
+
+        Map<CompactionKey, EndpointHit> rows = new HashMap<>();
+        List<EndpointHit> compacted = new ArrayList<>();
+        for (EndpointHit hit : hits) {
+            boolean repeat = collapseRepeats && hit.isRepeat();
+            if (!repeat && !properties.isEnabled()) {
+                compacted.add(hit);
+                continue;
+            }
+            long window = repeat
+                    ? Math.floorDiv(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC), REPEAT_WINDOW_SECONDS)
+                    : window(hit.getTimestamp());
+            CompactionKey key = new CompactionKey(hit.getAppId(), hit.getUriId(), hit.getIp(), window, repeat);
+            EndpointHit row = rows.get(key);
+            if (row == null) {
+                row = copy(hit);
+                rows.put(key, row);
+                compacted.add(row);
+            } else {
+                row.setHitCount(row.getHitCount() + hit.getHitCount());
+                if (hit.getTimestamp().isBefore(row.getTimestamp())) {
+                    row.setTimestamp(hit.getTimestamp());
+                }
+            }
+        }
+
+        written.increment(compacted.size());
+        merged.increment(hits.size() - compacted.size());
+        return compacted;
+    }
+
+    private long window(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), windowSeconds);
+    }
+
+    private static EndpointHit copy(EndpointHit hit) {
+        EndpointHit row = new EndpointHit();
+        row.setAppId(hit.getAppId());
+        row.setUriId(hit.getUriId());
+        row.setIp(hit.getIp());
+        row.setTimestamp(hit.getTimestamp());
+        row.setHitCount(hit.getHitCount());
+        return row;
+    }
+
+    private static Counter compactionCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("stats.ingestion.compaction")
+                .description("Хиты, записанные в endpoint_hit отдельной строкой или добавленные к счетчику строки")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record CompactionKey(int appId, int uriId, String ip, long window, boolean repeat) {
+    }
+}
@@ -0,0 +1,53 @@
+package ru.practicum.ewm.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.ewm.HitImportOutputDto;
+import ru.practicum.ewm.bulk.HitBulkFormat;
+import ru.practicum.ewm.bulk.HitBulkService;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+
+// Служебные эндпоинты массовой загрузки и выгрузки хитов: тело читается и пишется потоком прямо в COPY
+@RestController
+@RequestMapping("/admin/hits")
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class HitBulkController {
+
+    private final HitBulkService hitBulkService;
+
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/octet-stream"})
+    public HitImportOutputDto importHits(@RequestParam String batchId,
+                                         @RequestHeader("Content-Type") String contentType,
+                                         InputStream body) {
+        HitBulkFormat format = contentType.startsWith("text/csv") ? HitBulkFormat.CSV : HitBulkFormat.BINARY;
+        log.info("Поступил запрос Post /admin/hits/import: batchId = {}, format = {}", batchId, format);
+        return hitBulkService.importHits(batchId, format, body);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportHits(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                            @RequestParam(required = false, defaultValue = "CSV") HitBulkFormat format) {
+        log.info("Поступил запрос Get /admin/hits/export с параметрами: start = {}, end = {}, format = {}", start, end, format);
+        hitBulkService.validateExport(start, end);
+        StreamingResponseBody body = outputStream -> {
+            long rows = hitBulkService.exportHits(start, end, format, outputStream);
+            log.info("Сформирован ответ Get /admin/hits/export: {} хитов", rows);
+        };
+        return ResponseEntity.ok().contentType(format.getMediaType()).body(body);
+    }
+}
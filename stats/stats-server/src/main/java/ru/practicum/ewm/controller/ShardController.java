@@ -0,0 +1,30 @@
+package ru.practicum.ewm.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.ewm.ShardRebalanceInputDto;
+import ru.practicum.ewm.shard.ShardRebalancer;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+// Служебный эндпоинт распределения uri между узлами: его вызывает клиент после перестроения кольца.
+// Нужен только узлам с общим хранилищем (движок jpa): у движка segment данные каждого узла свои
+@RestController
+@RequestMapping("/admin/shards")
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class ShardController {
+
+    private final ShardRebalancer shardRebalancer;
+
+    @PostMapping("/rebalance")
+    public void rebalance(@RequestBody ShardRebalanceInputDto rebalance) {
+        log.info("Поступил запрос Post /admin/shards/rebalance: self = {}, previousNodes = {}, nodes = {}",
+                rebalance.getSelf(), rebalance.getPreviousNodes(), rebalance.getNodes());
+        shardRebalancer.rebalance(rebalance);
+    }
+}
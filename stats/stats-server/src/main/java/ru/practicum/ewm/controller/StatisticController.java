@@ -1,16 +1,36 @@
 package ru.practicum.ewm.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.HitTotalsOutputDto;
+import ru.practicum.ewm.ResourceStatsOutputDto;
+import ru.practicum.ewm.ResourceStatsRequestParams;
+import ru.practicum.ewm.StatsRequestParams;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.TrendingOutputDto;
+import ru.practicum.ewm.exception.BadRequestException;
+import ru.practicum.ewm.exception.TooManyRequestsException;
+import ru.practicum.ewm.metrics.StatsMetrics;
 import ru.practicum.ewm.service.StatisticServiceImpl;
+import ru.practicum.ewm.service.StatsStream;
 import ru.practicum.ewm.ViewStatsOutputDto;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -19,26 +39,187 @@ import java.util.List;
 @Slf4j
 public class StatisticController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final StatisticServiceImpl statisticServiceImpl;
+    private final ObjectMapper objectMapper;
+    private final StatsMetrics statsMetrics;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
     public void addHit(@Validated @RequestBody EndpointHitInputDto endpointHitInputDto) {
-        log.info("Поступил запрос Post /hit на создание EndpointHit с телом: {}", endpointHitInputDto);
-        statisticServiceImpl.createEndpointHit(endpointHitInputDto);
-        log.info("Обработан запрос Post /hit на создание EndpointHit с телом: {}", endpointHitInputDto);
+        ingest("hit", 1, () -> statisticServiceImpl.createEndpointHit(endpointHitInputDto));
+        if (log.isDebugEnabled() && statsMetrics.sampleHitLog()) {
+            log.debug("Обработан запрос Post /hit на создание EndpointHit с телом: {}", endpointHitInputDto);
+        }
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void addHits(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                        @RequestBody List<@Valid EndpointHitInputDto> endpointHitInputDtos) {
+        ingest("hits", endpointHitInputDtos.size(),
+                () -> statisticServiceImpl.createEndpointHits(endpointHitInputDtos, idempotencyKey));
+        if (log.isDebugEnabled() && statsMetrics.sampleHitLog()) {
+            log.debug("Обработан запрос Post /hits на создание {} EndpointHit", endpointHitInputDtos.size());
+        }
     }
 
-    @GetMapping("/stats")
-    public List<ViewStatsOutputDto> getStats(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getStats(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                              @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
                                              @RequestParam(required = false) List<String> uris,
-                                             @RequestParam(required = false, defaultValue = "false") Boolean unique) {
+                                             @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                             @RequestParam(required = false, defaultValue = "false") Boolean exact,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Integer limit) throws IOException {
+
+        log.info("Поступил запрос Get /stats на получение List<ViewStatsOutputDto> с параметрами: start = {}, end = {}, uris = {}, unique = {}, exact = {}, after = {}, limit = {}", start, end, uris, unique, exact, after, limit);
+        return stats("stats", uris, start, end, unique, exact, after, limit, false);
+    }
+
+    // То же, что GET /stats, но uri передаются в теле: тысячи /events/{id} не помещаются в строку запроса
+    @PostMapping(value = "/stats/query", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> queryStats(@RequestBody StatsRequestParams params) throws IOException {
+        log.info("Поступил запрос Post /stats/query с параметрами: start = {}, end = {}, uris: {} шт., unique = {}, exact = {}, after = {}, limit = {}, fresh = {}",
+                params.getStart(), params.getEnd(), params.getUris() == null ? "все" : params.getUris().size(),
+                params.getUnique(), params.getExact(), params.getAfter(), params.getLimit(), params.getFresh());
+        return stats("query", params.getUris(), params.getStart(), params.getEnd(), Boolean.TRUE.equals(params.getUnique()),
+                Boolean.TRUE.equals(params.getExact()), params.getAfter(), params.getLimit(), Boolean.TRUE.equals(params.getFresh()));
+    }
+
+    // Потоковая выдача в формате NDJSON: каждая строка статистики пишется в ответ по мере чтения курсора БД
+    @GetMapping(value = "/stats/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                                             @RequestParam(required = false, defaultValue = "false") Boolean exact,
+                                                             @RequestParam(required = false) String after,
+                                                             @RequestParam(required = false) Integer limit) {
+        log.info("Поступил запрос Get /stats/stream с параметрами: start = {}, end = {}, uris = {}, unique = {}, exact = {}, after = {}, limit = {}", start, end, uris, unique, exact, after, limit);
+
+        // Параметры проверяются до ответа: после отправки заголовков 200 ошибку уже не вернуть
+        StatsStream stream = statisticServiceImpl.prepareStream(uris, start, end, unique, exact, after, limit);
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream);
+            long[] rows = {0};
+            long[] serialization = {0}; // Включает запись в буфер ответа
+            long started = System.nanoTime();
+            stream.writeTo(stat -> {
+                long serializing = System.nanoTime();
+                try {
+                    out.write(objectMapper.writeValueAsBytes(stat));
+                    out.write('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                serialization[0] += System.nanoTime() - serializing;
+            });
+            out.flush();
+            long total = System.nanoTime() - started;
+            statsMetrics.recordQuery("stream", unique, uris, total - serialization[0], serialization[0], rows[0]);
+            log.info("Сформирован ответ Get /stats/stream: {} строк", rows[0]);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @GetMapping("/stats/series")
+    public List<StatsSeriesOutputDto> getSeries(@RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                @RequestParam(required = false) List<String> uris,
+                                                @RequestParam String step,
+                                                @RequestParam(required = false, defaultValue = "false") Boolean unique) {
+        log.info("Поступил запрос Get /stats/series с параметрами: start = {}, end = {}, uris = {}, step = {}, unique = {}", start, end, uris, step, unique);
+        List<StatsSeriesOutputDto> series = statisticServiceImpl.getSeries(uris, start, end, step, unique);
+        log.info("Сформирован ответ Get /stats/series: {} рядов", series.size());
+        return series;
+    }
+
+    @GetMapping("/stats/totals")
+    public List<HitTotalsOutputDto> getTotals(@RequestParam List<String> uris) {
+        log.info("Поступил запрос Get /stats/totals на получение счетчиков для uris = {}", uris);
+        return statisticServiceImpl.getTotals(uris);
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStatsOutputDto> getTop(@RequestParam String app,
+                                           @RequestParam(required = false, defaultValue = "24h") String window,
+                                           @RequestParam(required = false, defaultValue = "10") Integer k) {
+        log.info("Поступил запрос Get /stats/top с параметрами: app = {}, window = {}, k = {}", app, window, k);
+        return statisticServiceImpl.getTop(app, window, k);
+    }
+
+    @GetMapping("/stats/trending")
+    public List<TrendingOutputDto> getTrending(@RequestParam(required = false) String app,
+                                               @RequestParam(required = false) List<String> uris,
+                                               @RequestParam(required = false, defaultValue = "10") Integer k) {
+        log.info("Поступил запрос Get /stats/trending с параметрами: app = {}, uris = {}, k = {}", app, uris, k);
+        return statisticServiceImpl.getTrending(app, uris, k);
+    }
+
+    @GetMapping("/stats/resources")
+    public List<ResourceStatsOutputDto> getResourceStats(@RequestParam String type,
+                                                         @RequestParam List<Long> ids,
+                                                         @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                         @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                         @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                                         @RequestParam(required = false, defaultValue = "false") Boolean exact) {
+        log.info("Поступил запрос Get /stats/resources с параметрами: type = {}, ids = {}, start = {}, end = {}, unique = {}, exact = {}", type, ids, start, end, unique, exact);
+        return statisticServiceImpl.getResourceStats(type, ids, start, end, unique, exact);
+    }
+
+    @PostMapping("/stats/resources/query")
+    public List<ResourceStatsOutputDto> queryResourceStats(@RequestBody ResourceStatsRequestParams params) {
+        log.info("Поступил запрос Post /stats/resources/query с параметрами: type = {}, ids: {} шт., start = {}, end = {}, unique = {}, exact = {}",
+                params.getType(), params.getIds() == null ? 0 : params.getIds().size(), params.getStart(), params.getEnd(),
+                params.getUnique(), params.getExact());
+        if (params.getType() == null || params.getIds() == null) {
+            throw new BadRequestException("type и ids обязательны");
+        }
+        return statisticServiceImpl.getResourceStats(params.getType(), params.getIds(), params.getStart(), params.getEnd(),
+                Boolean.TRUE.equals(params.getUnique()), Boolean.TRUE.equals(params.getExact()));
+    }
+
+    // Время записи учитывается и для отказов: 429 при перегрузке - как раз то, что нужно видеть на графиках
+    private void ingest(String endpoint, int hits, Runnable action) {
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            action.run();
+            outcome = "accepted";
+        } catch (TooManyRequestsException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            statsMetrics.recordIngestion(endpoint, outcome, hits, System.nanoTime() - started);
+        }
+    }
 
-        log.info("Поступил запрос Get /stats на получение List<ViewStatsOutputDto> с параметрами: start = {}, end = {}, uris = {}, unique = {}", start, end, uris, unique);
-        List<ViewStatsOutputDto> response = statisticServiceImpl.getStats(uris, start, end, unique);
-        log.info("Сформирован ответ Get /stats с телом: {}", response);
+    // Ответ сериализуется здесь же, чтобы время сериализации измерялось отдельно от времени запроса к хранилищу
+    private ResponseEntity<byte[]> stats(String endpoint,
+                                         List<String> uris,
+                                         LocalDateTime start,
+                                         LocalDateTime end,
+                                         boolean unique,
+                                         boolean exact,
+                                         String after,
+                                         Integer limit,
+                                         boolean fresh) throws IOException {
+        long started = System.nanoTime();
+        List<ViewStatsOutputDto> response;
+        if (after == null && limit == null) {
+            response = statisticServiceImpl.getStats(uris, start, end, unique, exact, fresh);
+        } else {
+            response = new ArrayList<>();
+            statisticServiceImpl.streamStats(uris, start, end, unique, exact, after, limit, response::add);
+        }
+        long fetched = System.nanoTime();
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        statsMetrics.recordQuery(endpoint, unique, uris, fetched - started, System.nanoTime() - fetched, response.size());
+        log.info("Сформирован ответ на запрос /stats ({}): {} строк", endpoint, response.size());
 
-        return response;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
@@ -0,0 +1,18 @@
+package ru.practicum.ewm.counter;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.counters")
+public class CounterProperties {
+
+    private int sketchPrecision = 10; // Точность скетча уникальных IP на один uri (1 КБ, ошибка ~3%)
+
+    private int replayFetchSize = 10_000; // Размер выборки при дочитывании хитов после контрольной точки
+
+    // Хранилище делят несколько узлов: контрольная точка не пишется, счетчики при старте собираются из агрегатов
+    private boolean sharedStorage = false;
+}
@@ -0,0 +1,4 @@
+package ru.practicum.ewm.counter;
+
+public record CounterSnapshot(String app, String uri, long hits, byte[] ipSketch) {
+}
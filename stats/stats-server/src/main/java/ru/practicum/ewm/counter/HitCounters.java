@@ -0,0 +1,121 @@
+package ru.practicum.ewm.counter;
+
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.HitTotalsOutputDto;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.sketch.HyperLogLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчики хитов за все время по каждому (app, uri), хранятся в памяти и отвечают без обращения к БД
+@Component
+public class HitCounters implements HitListener {
+
+    private final Map<String, Map<String, UriCounter>> countersByUri = new ConcurrentHashMap<>();
+    private final int sketchPrecision;
+
+    public HitCounters(CounterProperties properties) {
+        this.sketchPrecision = properties.getSketchPrecision();
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        for (EndpointHit hit : hits) {
+            counter(hit.getApp(), hit.getUri()).record(hit.getIp());
+        }
+    }
+
+    public List<HitTotalsOutputDto> getTotals(List<String> uris) {
+        List<HitTotalsOutputDto> totals = new ArrayList<>();
+        for (String uri : uris) {
+            Map<String, UriCounter> byApp = countersByUri.get(uri);
+            if (byApp == null) {
+                continue;
+            }
+            byApp.forEach((app, counter) ->
+                    totals.add(new HitTotalsOutputDto(app, uri, counter.hits(), counter.uniqueHits())));
+        }
+        return totals;
+    }
+
+    public List<CounterSnapshot> snapshot() {
+        List<CounterSnapshot> snapshot = new ArrayList<>();
+        countersByUri.forEach((uri, byApp) -> byApp.forEach((app, counter) ->
+                snapshot.add(new CounterSnapshot(app, uri, counter.hits(), counter.sketchBytes()))));
+        return snapshot;
+    }
+
+    public void restore(CounterSnapshot snapshot) {
+        counter(snapshot.app(), snapshot.uri()).restore(snapshot.hits(), HyperLogLog.fromBytes(snapshot.ipSketch()));
+    }
+
+    // Счетчики uri заменяются собранными из хранилища, когда uri переходит к этому узлу после перестроения кольца.
+    // Скетч агрегатов точнее скетча счетчика и приводится к его точности без потерь
+    public void replace(String uri, List<CounterSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            countersByUri.remove(uri);
+            return;
+        }
+        Map<String, UriCounter> byApp = new ConcurrentHashMap<>();
+        for (CounterSnapshot snapshot : snapshots) {
+            HyperLogLog ips = snapshot.ipSketch() == null
+                    ? new HyperLogLog(sketchPrecision)
+                    : HyperLogLog.fromBytes(snapshot.ipSketch());
+            UriCounter counter = new UriCounter(ips.getPrecision() > sketchPrecision ? ips.reduce(sketchPrecision) : ips);
+            counter.hits.add(snapshot.hits());
+            byApp.put(snapshot.app(), counter);
+        }
+        countersByUri.put(uri, byApp);
+    }
+
+    // uri перешел к другому узлу: его хиты сюда больше не приходят, и счетчик только устаревал бы
+    public void forget(String uri) {
+        countersByUri.remove(uri);
+    }
+
+    private UriCounter counter(String app, String uri) {
+        return countersByUri.computeIfAbsent(uri, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(app, key -> new UriCounter(new HyperLogLog(sketchPrecision)));
+    }
+
+    // Общее число хитов считается без блокировок через LongAdder, скетч защищен монитором своего счетчика
+    private static final class UriCounter {
+        private final LongAdder hits = new LongAdder();
+        private final HyperLogLog uniqueIps;
+
+        private UriCounter(HyperLogLog uniqueIps) {
+            this.uniqueIps = uniqueIps;
+        }
+
+        private void record(String ip) {
+            hits.increment();
+            synchronized (this) {
+                uniqueIps.add(ip);
+            }
+        }
+
+        private void restore(long storedHits, HyperLogLog storedIps) {
+            hits.add(storedHits);
+            synchronized (this) {
+                uniqueIps.merge(storedIps);
+            }
+        }
+
+        private long hits() {
+            return hits.sum();
+        }
+
+        private synchronized long uniqueHits() {
+            return uniqueIps.estimate();
+        }
+
+        private synchronized byte[] sketchBytes() {
+            return uniqueIps.toBytes();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.practicum.ewm.counter;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.ingest.HitWriter;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.repository.CounterCheckpointRepository;
+import ru.practicum.ewm.repository.EndpointHitJdbcRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Восстанавливает счетчики при старте (контрольная точка + хиты после нее) и периодически сохраняет их снимок.
+// Если хранилище делят несколько узлов, контрольная точка в нем одна на всех и узлы затирали бы снимки друг друга:
+// тогда она не пишется, а счетчики при старте собираются из дневных агрегатов
+@Component
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class HitCountersCheckpointer {
+
+    private final HitCounters hitCounters;
+    private final HitWriter hitWriter;
+    private final HitDictionary hitDictionary;
+    private final CounterCheckpointRepository counterCheckpointRepository;
+    private final EndpointHitJdbcRepository endpointHitJdbcRepository;
+    private final RollupRepository rollupRepository;
+    private final CounterProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void rebuild() {
+        if (properties.isSharedStorage()) {
+            int restored = hitWriter.quiesce(() -> replaceFromRollups(null));
+            log.info("Счетчики хитов собраны по агрегатам общего хранилища для {} uri", restored);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> restore());
+    }
+
+    private void restore() {
+        long lastHitId = counterCheckpointRepository.findLastHitId();
+        counterCheckpointRepository.findAll().forEach(hitCounters::restore);
+
+        int batchSize = properties.getReplayFetchSize();
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        long replayed = endpointHitJdbcRepository.forEachHitAfter(lastHitId, batchSize, hit -> {
+            hit.setApp(hitDictionary.appName(hit.getAppId()));
+            hit.setUri(hitDictionary.uri(hit.getUriId()).uri());
+            // Сжатая строка повторяется в пачке столько раз, сколько хитов она представляет
+            for (int i = 0; i < hit.getHitCount(); i++) {
+                batch.add(hit);
+            }
+            if (batch.size() >= batchSize) {
+                hitCounters.onHits(batch);
+                batch.clear();
+            }
+        });
+        hitCounters.onHits(batch);
+
+        log.info("Счетчики хитов восстановлены: контрольная точка на id = {}, дочитано хитов {}", lastHitId, replayed);
+    }
+
+    // Пересобирает счетчики uri по дневным агрегатам, когда uri переходят к этому узлу после перестроения кольца:
+    // до этого их хиты записывал другой узел общего хранилища. Запись хитов на это время приостанавливается,
+    // чтобы пачка не попала и в агрегаты, и в счетчики дважды
+    public void rebuild(List<UriEntry> uris) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        List<Integer> uriIds = uris.stream().map(UriEntry::id).toList();
+        hitWriter.quiesce(() -> {
+            Map<Integer, List<CounterSnapshot>> byUri = rollupTotals(uriIds);
+            uris.forEach(entry -> hitCounters.replace(entry.uri(), byUri.getOrDefault(entry.id(), List.of())));
+            return null;
+        });
+        log.info("Счетчики хитов пересобраны по агрегатам для {} uri", uris.size());
+    }
+
+    // uriIds = null - все uri, у которых есть агрегаты; возвращает число uri
+    private int replaceFromRollups(List<Integer> uriIds) {
+        Map<Integer, List<CounterSnapshot>> byUri = rollupTotals(uriIds);
+        byUri.forEach((uriId, snapshots) -> hitCounters.replace(hitDictionary.uri(uriId).uri(), snapshots));
+        return byUri.size();
+    }
+
+    private Map<Integer, List<CounterSnapshot>> rollupTotals(List<Integer> uriIds) {
+        Map<Integer, List<CounterSnapshot>> byUri = new HashMap<>();
+        rollupRepository.forEachTotal(uriIds, (total, sketch) -> byUri
+                .computeIfAbsent(total.uriId(), id -> new ArrayList<>())
+                .add(new CounterSnapshot(hitDictionary.appName(total.appId()), hitDictionary.uri(total.uriId()).uri(),
+                        total.hits(), sketch == null ? null : sketch.toBytes())));
+        return byUri;
+    }
+
+    @Scheduled(initialDelayString = "${stats.counters.checkpoint-interval:PT5M}",
+            fixedDelayString = "${stats.counters.checkpoint-interval:PT5M}")
+    @Transactional
+    public void checkpoint() {
+        if (properties.isSharedStorage()) {
+            return;
+        }
+        // Снимок и максимальный id берутся, пока ни одна пачка не записана в БД без учета в счетчиках
+        Checkpoint checkpoint = hitWriter.quiesce(() ->
+                new Checkpoint(endpointHitJdbcRepository.findMaxId(), hitCounters.snapshot()));
+
+        counterCheckpointRepository.replace(checkpoint.lastHitId(), checkpoint.counters());
+        log.info("Сохранена контрольная точка счетчиков: {} uri, id = {}", checkpoint.counters().size(), checkpoint.lastHitId());
+    }
+
+    private record Checkpoint(long lastHitId, List<CounterSnapshot> counters) {
+    }
+}
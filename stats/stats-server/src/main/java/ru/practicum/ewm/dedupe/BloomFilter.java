@@ -0,0 +1,52 @@
+package ru.practicum.ewm.dedupe;
+
+// Фильтр Блума с k хешами, полученными двойным хешированием одного 64-битного хеша.
+// Ложноотрицательных ответов не бывает, ложноположительные - с заданной при создании вероятностью
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6)];
+        this.size = (long) bits.length << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+    // Добавляет элемент; true, если его, возможно, уже добавляли
+    boolean put(long hash) {
+        long low = hash & 0xffffffffL;
+        long high = hash >>> 32;
+        boolean present = true;
+        for (int i = 1; i <= hashes; i++) {
+            long index = Math.floorMod(low + i * high, size);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                present = false;
+            }
+        }
+        return present;
+    }
+
+    // true, если элемент, возможно, уже добавляли; фильтр не меняется
+    boolean mightContain(long hash) {
+        long low = hash & 0xffffffffL;
+        long high = hash >>> 32;
+        for (int i = 1; i <= hashes; i++) {
+            long index = Math.floorMod(low + i * high, size);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+}
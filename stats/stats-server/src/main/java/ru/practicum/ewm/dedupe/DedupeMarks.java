@@ -0,0 +1,13 @@
+package ru.practicum.ewm.dedupe;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Первые посещения пачки, помеченной HitDeduplicator.mark: попадают в фильтры через remember после сохранения пачки
+public record DedupeMarks(List<Mark> marks) {
+
+    public static final DedupeMarks EMPTY = new DedupeMarks(List.of());
+
+    record Mark(LocalDateTime window, long hash) {
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.ewm.dedupe;
+
+public enum DedupeMode {
+    OFF, // повторы не отслеживаются
+    FLAG, // повторы помечаются и не увеличивают счетчик уникальных, сырые хиты пишутся все
+    COLLAPSE // как FLAG, но повторы не пишутся в endpoint_hit отдельными строками: они прибавляются к hit_count
+             // одной строки (app, uri, ip) за минуту, поэтому сырые хиты и агрегаты считают их одинаково
+}
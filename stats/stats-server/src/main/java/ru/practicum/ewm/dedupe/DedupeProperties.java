@@ -0,0 +1,22 @@
+package ru.practicum.ewm.dedupe;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.ingestion.dedupe")
+public class DedupeProperties {
+
+    private DedupeMode mode = DedupeMode.OFF; // Отслеживание повторных (app, uri, ip) при записи
+
+    private RollupGranularity window = RollupGranularity.DAY; // Окно повторов; HOUR или DAY - таблица со счетчиком уникальных
+
+    private int retainedWindows = 2; // Сколько последних окон держится в памяти для опоздавших хитов
+
+    private long expectedInsertions = 1_000_000; // Ожидаемое число разных (app, uri, ip) за окно
+
+    private double falsePositiveRate = 0.001; // Доля новых посетителей, ошибочно принятых за повтор
+}
@@ -0,0 +1,132 @@
+package ru.practicum.ewm.dedupe;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.StatsHash;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Помечает повторные хиты (app, uri, ip) внутри окна - часа или суток по времени хита. На каждое окно
+// заводится свой фильтр Блума, фильтры старых окон вытесняются. Фильтры ведутся только для живых окон:
+// текущего по часам сервера и retainedWindows - 1 предыдущих. Хит вне них (опоздавший или с временем
+// из будущего) считается новым и фильтры не меняет: лучше переоценить число уникальных, чем вытеснить
+// фильтр текущего окна. Пачка помечается до записи, а в фильтры попадает только после ее сохранения:
+// иначе повтор пачки после ошибки записи был бы целиком принят за повторы. До сохранения первые посещения
+// пачки числятся ожидающими: параллельная пачка с тем же (app, uri, ip) получит для них повтор, а не второе
+// первое посещение. Если пачка не сохранена, ее отметки снимаются через release
+@Component
+@Slf4j
+public class HitDeduplicator {
+
+    private final DedupeProperties properties;
+    private final TreeMap<LocalDateTime, BloomFilter> filters = new TreeMap<>();
+    private final Set<DedupeMarks.Mark> pending = new HashSet<>(); // Первые посещения еще не сохраненных пачек
+    private final Counter repeats;
+    private final Counter firstVisits;
+
+    public HitDeduplicator(DedupeProperties properties, MeterRegistry meterRegistry) {
+        if (properties.getWindow() == RollupGranularity.MINUTE) {
+            throw new IllegalStateException("stats.ingestion.dedupe.window должно быть HOUR или DAY: "
+                    + "в минутных агрегатах нет счетчика уникальных");
+        }
+        this.properties = properties;
+        this.repeats = dedupeCounter(meterRegistry, "repeat");
+        this.firstVisits = dedupeCounter(meterRegistry, "first");
+    }
+
+    public boolean isEnabled() {
+        return properties.getMode() != DedupeMode.OFF;
+    }
+
+    public boolean isCollapsing() {
+        return properties.getMode() == DedupeMode.COLLAPSE;
+    }
+
+    public RollupGranularity getWindow() {
+        return properties.getWindow();
+    }
+
+    // Выставляет hit.repeat, не меняя фильтры; вызывается при записи пачки до ее сохранения.
+    // Возвращенные отметки передаются в remember, когда пачка сохранена, или в release, если записать ее не удалось
+    public DedupeMarks mark(List<EndpointHit> hits) {
+        return mark(hits, LocalDateTime.now());
+    }
+
+    public synchronized DedupeMarks mark(List<EndpointHit> hits, LocalDateTime now) {
+        if (!isEnabled()) {
+            return DedupeMarks.EMPTY;
+        }
+        LocalDateTime current = properties.getWindow().truncate(now);
+        LocalDateTime oldest = current.minus(properties.getRetainedWindows() - 1L, properties.getWindow().getUnit());
+        Set<DedupeMarks.Mark> seen = new HashSet<>(); // Первые посещения внутри самой пачки
+        List<DedupeMarks.Mark> marks = new ArrayList<>();
+        for (EndpointHit hit : hits) {
+            LocalDateTime window = properties.getWindow().truncate(hit.getTimestamp());
+            boolean repeat = false;
+            if (!window.isBefore(oldest) && !window.isAfter(current)) {
+                DedupeMarks.Mark mark = new DedupeMarks.Mark(window,
+                        StatsHash.hash(hit.getApp() + '\n' + hit.getUri() + '\n' + hit.getIp()));
+                BloomFilter filter = filters.get(window);
+                repeat = (filter != null && filter.mightContain(mark.hash())) || !seen.add(mark) || !pending.add(mark);
+                if (!repeat) {
+                    marks.add(mark);
+                }
+            }
+            hit.setRepeat(repeat);
+            (repeat ? repeats : firstVisits).increment();
+        }
+        return new DedupeMarks(marks);
+    }
+
+    // Запоминает первые посещения сохраненной пачки. Окна, ставшие за это время неживыми, пропускаются
+    public synchronized void remember(DedupeMarks marks) {
+        for (DedupeMarks.Mark mark : marks.marks()) {
+            BloomFilter filter = filter(mark.window());
+            if (filter != null) {
+                filter.put(mark.hash());
+            }
+            pending.remove(mark);
+        }
+    }
+
+    // Снимает отметки несохраненной пачки: при повторе ее хиты снова будут первыми посещениями
+    public synchronized void release(DedupeMarks marks) {
+        marks.marks().forEach(pending::remove);
+    }
+
+    // null - окно старше всех хранимых
+    private BloomFilter filter(LocalDateTime window) {
+        BloomFilter filter = filters.get(window);
+        if (filter != null) {
+            return filter;
+        }
+        if (filters.size() >= properties.getRetainedWindows() && window.isBefore(filters.firstKey())) {
+            return null;
+        }
+        filter = new BloomFilter(properties.getExpectedInsertions(), properties.getFalsePositiveRate());
+        filters.put(window, filter);
+        while (filters.size() > properties.getRetainedWindows()) {
+            Map.Entry<LocalDateTime, BloomFilter> evicted = filters.pollFirstEntry();
+            log.debug("Фильтр повторов за окно {} вытеснен", evicted.getKey());
+        }
+        log.debug("Создан фильтр повторов за окно {}: {} байт", window, filter.sizeInBytes());
+        return filter;
+    }
+
+    private static Counter dedupeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("stats.ingestion.dedupe")
+                .description("Хиты, прошедшие проверку на повтор (app, uri, ip) в окне")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
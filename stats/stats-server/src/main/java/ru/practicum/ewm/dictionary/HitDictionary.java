@@ -0,0 +1,126 @@
+package ru.practicum.ewm.dictionary;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Кэш словарей app и uri: строки хранятся в БД один раз, а хиты и агрегаты ссылаются на них целыми идентификаторами.
+// Новые значения записываются в словарь отдельной транзакцией до записи хитов, поэтому идентификатор в кэше
+// всегда существует в БД. Промахи по идентификаторам (значение создал другой узел) дочитываются из БД
+@Component
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class HitDictionary {
+
+    private final DictionaryRepository dictionaryRepository;
+
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> appNames = new ConcurrentHashMap<>();
+    private final Map<String, UriEntry> urisByValue = new ConcurrentHashMap<>();
+    private final Map<Integer, UriEntry> urisById = new ConcurrentHashMap<>();
+    private final Map<ResourceRef, UriEntry> urisByResource = new ConcurrentHashMap<>();
+    private final UriTrie uriTrie = new UriTrie();
+
+    @PostConstruct
+    public void load() {
+        dictionaryRepository.findAllApps().forEach(this::registerApp);
+        dictionaryRepository.findAllUris().forEach(this::registerUri);
+        log.info("Загружены словари: {} app, {} uri", appIds.size(), urisById.size());
+    }
+
+    public int appId(String app) {
+        Integer id = appIds.get(app);
+        if (id != null) {
+            return id;
+        }
+        int created = dictionaryRepository.saveApp(app);
+        registerApp(app, created);
+        return created;
+    }
+
+    public int uriId(String uri) {
+        UriEntry entry = urisByValue.get(uri);
+        if (entry != null) {
+            return entry.id();
+        }
+        UriEntry created = dictionaryRepository.saveUri(uri, ResourceRef.parse(uri).orElse(null));
+        registerUri(created);
+        return created.id();
+    }
+
+    public String appName(int id) {
+        String name = appNames.get(id);
+        if (name == null) {
+            name = dictionaryRepository.findAppName(id);
+            registerApp(name, id);
+        }
+        return name;
+    }
+
+    public UriEntry uri(int id) {
+        UriEntry entry = urisById.get(id);
+        if (entry == null) {
+            entry = dictionaryRepository.findUri(id);
+            registerUri(entry);
+        }
+        return entry;
+    }
+
+    // Идентификаторы известных uri; неизвестные пропускаются, по ним хитов заведомо нет.
+    // Шаблоны (UriTrie) раскрываются по кэшу: uri, созданные другим узлом и еще не прочитанные здесь, не попадут
+    public List<Integer> findUriIds(List<String> uris) {
+        Set<Integer> ids = new LinkedHashSet<>(uris.size());
+        for (String uri : uris) {
+            if (UriTrie.isPattern(uri)) {
+                ids.addAll(uriTrie.match(uri));
+                continue;
+            }
+            UriEntry entry = urisByValue.get(uri);
+            if (entry == null) {
+                entry = dictionaryRepository.findUri(uri);
+                if (entry == null) {
+                    continue;
+                }
+                registerUri(entry);
+            }
+            ids.add(entry.id());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public List<UriEntry> findResources(String type, List<Long> resourceIds) {
+        List<UriEntry> entries = new ArrayList<>(resourceIds.size());
+        for (Long resourceId : resourceIds) {
+            UriEntry entry = urisByResource.get(new ResourceRef(type, resourceId));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private void registerApp(String app, int id) {
+        appIds.put(app, id);
+        appNames.put(id, app);
+    }
+
+    private void registerUri(UriEntry entry) {
+        urisByValue.put(entry.uri(), entry);
+        urisById.put(entry.id(), entry);
+        uriTrie.add(entry.uri(), entry.id());
+        if (entry.resource() != null) {
+            urisByResource.put(entry.resource(), entry);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.ewm.dictionary;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Типизированная ссылка на ресурс, например /events/42 -> (events, 42)
+public record ResourceRef(String type, long id) {
+
+    private static final Pattern RESOURCE_URI = Pattern.compile("^/([A-Za-z_-]+)/(\\d{1,18})$");
+
+    public static Optional<ResourceRef> parse(String uri) {
+        Matcher matcher = RESOURCE_URI.matcher(uri);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResourceRef(matcher.group(1), Long.parseLong(matcher.group(2))));
+    }
+}
@@ -0,0 +1,4 @@
+package ru.practicum.ewm.dictionary;
+
+public record UriEntry(int id, String uri, ResourceRef resource) {
+}
@@ -0,0 +1,121 @@
+package ru.practicum.ewm.dictionary;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Префиксное дерево известных uri по сегментам пути: раскрывает шаблон в идентификаторы словаря,
+// не перебирая все uri. В шаблоне * заменяет любую часть одного сегмента (/events/*, /users/*/events),
+// ** - любое число сегментов, в том числе ни одного (/events/**). Чтение идет без блокировок.
+// Шаблон приходит от пользователя, поэтому обход ограничен: подряд идущие ** схлопываются, каждая пара
+// (узел, позиция в шаблоне) посещается один раз, а * внутри сегмента сравнивается без регулярных выражений
+public final class UriTrie {
+
+    private static final String ANY_SEGMENTS = "**";
+
+    private final Node root = new Node();
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf('*') >= 0;
+    }
+
+    public synchronized void add(String uri, int id) {
+        Node node = root;
+        for (String segment : uri.split("/", -1)) {
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        node.id = id;
+    }
+
+    public List<Integer> match(String pattern) {
+        List<SegmentMatcher> compiled = new ArrayList<>();
+        for (String segment : pattern.split("/", -1)) {
+            SegmentMatcher matcher = SegmentMatcher.of(segment);
+            if (matcher.anySegments && !compiled.isEmpty() && compiled.getLast().anySegments) {
+                continue; // **/** совпадает с тем же, что и **
+            }
+            compiled.add(matcher);
+        }
+        SegmentMatcher[] matchers = compiled.toArray(SegmentMatcher[]::new);
+
+        Set<Integer> ids = new LinkedHashSet<>();
+        collect(root, matchers, 0, ids, new IdentityHashMap<>());
+        return new ArrayList<>(ids);
+    }
+
+    private static void collect(Node node, SegmentMatcher[] matchers, int index, Set<Integer> ids,
+                                Map<Node, BitSet> visited) {
+        BitSet seen = visited.computeIfAbsent(node, key -> new BitSet(matchers.length + 1));
+        if (seen.get(index)) {
+            return; // Из этой пары (узел, позиция) все совпадения уже собраны
+        }
+        seen.set(index);
+        if (index == matchers.length) {
+            if (node.id >= 0) {
+                ids.add(node.id);
+            }
+            return;
+        }
+
+        SegmentMatcher matcher = matchers[index];
+        if (matcher.anySegments) {
+            collect(node, matchers, index + 1, ids, visited);
+            node.children.values().forEach(child -> collect(child, matchers, index, ids, visited));
+        } else if (matcher.glob == null) {
+            Node child = node.children.get(matcher.literal);
+            if (child != null) {
+                collect(child, matchers, index + 1, ids, visited);
+            }
+        } else {
+            node.children.forEach((segment, child) -> {
+                if (matcher.matches(segment)) {
+                    collect(child, matchers, index + 1, ids, visited);
+                }
+            });
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile int id = -1; // Идентификатор uri, который заканчивается в этом узле
+    }
+
+    // glob - части сегмента между *: первая должна начинать сегмент, последняя - заканчивать,
+    // средние ищутся по порядку слева направо. Такое жадное сравнение точно для * и линейно по длине сегмента
+    private record SegmentMatcher(String literal, String[] glob, boolean anySegments) {
+
+        private static SegmentMatcher of(String segment) {
+            if (ANY_SEGMENTS.equals(segment)) {
+                return new SegmentMatcher(null, null, true);
+            }
+            if (!isPattern(segment)) {
+                return new SegmentMatcher(segment, null, false);
+            }
+            return new SegmentMatcher(null, segment.split("\\*+", -1), false);
+        }
+
+        private boolean matches(String segment) {
+            String first = glob[0];
+            String last = glob[glob.length - 1];
+            if (segment.length() < first.length() + last.length()
+                    || !segment.startsWith(first) || !segment.endsWith(last)) {
+                return false;
+            }
+            int from = first.length();
+            int to = segment.length() - last.length();
+            for (int i = 1; i < glob.length - 1; i++) {
+                int found = segment.indexOf(glob[i], from);
+                if (found < 0 || found + glob[i].length() > to) {
+                    return false;
+                }
+                from = found + glob[i].length();
+            }
+            return true;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package ru.practicum.ewm.exception;
 
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -45,4 +47,12 @@ public class ErrorHandler {
         final List<Violation> violations = List.of(new Violation("BAD REQUEST ERROR", e.getMessage()));
         return new ErrorResponse(violations);
     }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException e) {
+        final List<Violation> violations = List.of(new Violation("TOO MANY REQUESTS", e.getMessage()));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(new ErrorResponse(violations));
+    }
 }
@@ -0,0 +1,131 @@
+package ru.practicum.ewm.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.exception.TooManyRequestsException;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Контроль допуска хитов: сначала очередь фоновой записи, затем ограниченное число синхронных записей,
+// а при перегрузке - политика OverloadPolicy. Так медленное хранилище не занимает все потоки Tomcat.
+// Пачка допускается целиком: при отказе 429 ни один ее хит не остается в очереди, и клиент может повторить ее всю
+@Component
+@Slf4j
+public class HitAdmission {
+
+    private final IngestionProperties properties;
+    private final HitBuffer hitBuffer;
+    private final HitWriter hitWriter;
+    private final HitBatchKeys hitBatchKeys;
+    private final Semaphore writeSlots;
+    private final Counter shed;
+    private final Counter duplicates;
+
+    public HitAdmission(IngestionProperties properties, HitBuffer hitBuffer, HitWriter hitWriter, HitBatchKeys hitBatchKeys,
+                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.hitBuffer = hitBuffer;
+        this.hitWriter = hitWriter;
+        this.hitBatchKeys = hitBatchKeys;
+        this.writeSlots = new Semaphore(properties.getMaxConcurrentWrites());
+        this.shed = Counter.builder("stats.ingestion.shed")
+                .description("Количество хитов, отброшенных или отклоненных из-за перегрузки")
+                .tag("policy", properties.getOverloadPolicy().name().toLowerCase())
+                .register(meterRegistry);
+        this.duplicates = Counter.builder("stats.ingestion.duplicate.batches")
+                .description("Повторно присланные пачки с уже принятым ключом идемпотентности")
+                .register(meterRegistry);
+    }
+
+    // batchKey - ключ идемпотентности пачки или null; повтор уже принятой пачки подтверждается без записи
+    public void admit(List<EndpointHit> hits, String batchKey) {
+        if (batchKey == null) {
+            admit(hits);
+            return;
+        }
+        switch (hitBatchKeys.begin(batchKey)) {
+            case DUPLICATE -> {
+                duplicates.increment();
+                log.debug("Пачка {} уже принята, повтор пропущен", batchKey);
+                return;
+            }
+            case IN_FLIGHT -> throw new TooManyRequestsException("Пачка " + batchKey + " еще принимается, повторите запрос позже",
+                    properties.getRetryAfter());
+            case NEW -> {
+                // Пачка принимается ниже
+            }
+        }
+        boolean admitted = false;
+        try {
+            admit(hits);
+            admitted = true;
+        } finally {
+            hitBatchKeys.complete(batchKey, admitted);
+        }
+    }
+
+    public void admit(List<EndpointHit> hits) {
+        if (hits.isEmpty() || hitBuffer.offerAll(hits)) {
+            return;
+        }
+
+        if (writeSlots.tryAcquire()) {
+            write(hits);
+            return;
+        }
+
+        switch (properties.getOverloadPolicy()) {
+            case WAIT -> {
+                writeSlots.acquireUninterruptibly();
+                write(hits);
+            }
+            case DROP -> shed(hits.size());
+            case SAMPLE -> {
+                List<EndpointHit> sampled = sample(hits);
+                shed(hits.size() - sampled.size());
+                if (!sampled.isEmpty()) {
+                    writeSlots.acquireUninterruptibly();
+                    write(sampled);
+                }
+            }
+            case REJECT -> {
+                shed(hits.size());
+                throw new TooManyRequestsException("Сервис статистики перегружен, повторите запрос позже",
+                        properties.getRetryAfter());
+            }
+        }
+    }
+
+    // Вызывается с уже захваченным слотом записи
+    private void write(List<EndpointHit> hits) {
+        try {
+            hitWriter.write(hits);
+        } finally {
+            writeSlots.release();
+        }
+    }
+
+    private List<EndpointHit> sample(List<EndpointHit> hits) {
+        List<EndpointHit> sampled = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (EndpointHit hit : hits) {
+            if (random.nextDouble() < properties.getSampleRate()) {
+                sampled.add(hit);
+            }
+        }
+        return sampled;
+    }
+
+    private void shed(int count) {
+        if (count > 0) {
+            shed.increment(count);
+            log.debug("Перегрузка записи, отброшено хитов: {}", count);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.ewm.ingest;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Ключи идемпотентности пачек POST /hits. Клиент, не дождавшийся ответа, повторяет пачку с тем же ключом:
+// если она уже принята, повтор подтверждается без записи. Ключи живут в памяти узла не дольше ttl
+// и не больше capacity штук, поэтому повтор защищен от двойного счета, только пока ключ не вытеснен
+@Component
+public class HitBatchKeys {
+
+    public enum State {
+        NEW, // Ключ не встречался, пачку нужно принять
+        DUPLICATE, // Пачка с этим ключом уже принята
+        IN_FLIGHT // Пачка с этим ключом принимается в другом запросе
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final Map<String, Long> accepted = new LinkedHashMap<>(); // Ключ -> System.nanoTime() приема
+    private final Set<String> inFlight = new HashSet<>();
+
+    public HitBatchKeys(IngestionProperties properties) {
+        this.capacity = properties.getBatchKeyCapacity();
+        this.ttlNanos = properties.getBatchKeyTtl().toNanos();
+    }
+
+    public synchronized State begin(String key) {
+        evictExpired(System.nanoTime());
+        if (accepted.containsKey(key)) {
+            return State.DUPLICATE;
+        }
+        return inFlight.add(key) ? State.NEW : State.IN_FLIGHT;
+    }
+
+    // admitted = false освобождает ключ, чтобы повтор пачки после ошибки был принят заново
+    public synchronized void complete(String key, boolean admitted) {
+        inFlight.remove(key);
+        if (!admitted) {
+            return;
+        }
+        accepted.put(key, System.nanoTime());
+        if (accepted.size() > capacity) {
+            Iterator<String> oldest = accepted.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    // Ключи добавляются по возрастанию времени, поэтому просроченные всегда в начале
+    private void evictExpired(long now) {
+        Iterator<Long> acceptedAt = accepted.values().iterator();
+        while (acceptedAt.hasNext() && now - acceptedAt.next() > ttlNanos) {
+            acceptedAt.remove();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ru.practicum.ewm.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Очередь хитов фоновой записи. Клиент уже получил ответ на эти хиты, поэтому пачка с ошибкой записи
+// повторяется с растущей паузой, пока не кончатся попытки; отброшенные хиты считаются в stats.ingestion.dropped.
+// При остановке очередь перестает принимать хиты и дописывается целиком, пока не истечет shutdownTimeout
+@Component
+@Slf4j
+public class HitBuffer implements SmartLifecycle {
+
+    private final IngestionProperties properties;
+    private final HitWriter hitWriter;
+    private final BlockingQueue<EndpointHit> queue;
+    private final DistributionSummary batchSize;
+    private final Timer flushLatency;
+    private final Counter dropped;
+    private final Lock producers = new ReentrantLock(); // Места в очереди освобождает только фоновый поток
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public HitBuffer(IngestionProperties properties, HitWriter hitWriter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.hitWriter = hitWriter;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.batchSize = DistributionSummary.builder("stats.ingestion.batch.size")
+                .description("Количество хитов в одной записанной пачке")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("stats.ingestion.flush.latency")
+                .description("Время записи одной пачки хитов в БД")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("stats.ingestion.dropped")
+                .description("Принятые хиты, которые фоновая запись не смогла сохранить")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingestion.queue.depth", queue, BlockingQueue::size)
+                .description("Количество хитов, ожидающих записи")
+                .register(meterRegistry);
+    }
+
+    // Ставит в очередь все хиты или ни одного: false, если места не хватает на всю пачку
+    // или фоновая запись не запущена. Пока производители ждут блокировки, место в очереди может только прибавиться.
+    // running проверяется под блокировкой: после stop ни один хит не попадет в очередь, которую уже никто не разберет
+    public boolean offerAll(List<EndpointHit> hits) {
+        producers.lock();
+        try {
+            if (!running || queue.remainingCapacity() < hits.size()) {
+                return false;
+            }
+            for (EndpointHit hit : hits) {
+                queue.add(hit);
+            }
+            return true;
+        } finally {
+            producers.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (properties.getMode() != IngestionMode.ASYNC) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::drainLoop, "stats-hit-writer");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Запущена фоновая запись хитов: batchSize = {}, flushInterval = {}",
+                properties.getBatchSize(), properties.getFlushInterval());
+    }
+
+    @Override
+    public void stop() {
+        producers.lock();
+        try {
+            running = false;
+        } finally {
+            producers.unlock();
+        }
+        if (worker == null) {
+            return;
+        }
+        try {
+            worker.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            // Оставшиеся хиты засчитает в отброшенные сам фоновый поток, получив прерывание
+            log.error("Фоновая запись хитов не успела за {}, не записано хитов: {}", properties.getShutdownTimeout(), queue.size());
+            worker.interrupt();
+        } else {
+            log.info("Остановлена фоновая запись хитов, очередь записана целиком");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drainLoop() {
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        int maxBatchSize = properties.getBatchSize();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                EndpointHit first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                List<EndpointHit> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    EndpointHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                dropped.increment(queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Пока пачка повторяется, очередь не разбирается: при недоступной БД она заполняется,
+    // и новые хиты отклоняет HitAdmission, а не теряет фоновая запись
+    private void flush(List<EndpointHit> batch) throws InterruptedException {
+        long backoff = properties.getWriteBackoff().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flushLatency.record(() -> hitWriter.write(batch));
+                batchSize.record(batch.size());
+                return;
+            } catch (Exception e) {
+                if (attempt >= properties.getWriteAttempts()) {
+                    dropped.increment(batch.size());
+                    log.error("Пачка из {} хитов не записана за {} попыток и отброшена", batch.size(), attempt, e);
+                    return;
+                }
+                log.warn("Ошибка при записи пачки из {} хитов, попытка {} из {}: {}",
+                        batch.size(), attempt, properties.getWriteAttempts(), e.getMessage());
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                dropped.increment(batch.size());
+                throw e;
+            }
+            backoff *= 2;
+        }
+    }
+}
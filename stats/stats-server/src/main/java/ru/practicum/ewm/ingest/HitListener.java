@@ -0,0 +1,11 @@
+package ru.practicum.ewm.ingest;
+
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.util.List;
+
+// Получает каждую пачку хитов после фиксации транзакции записи; используется in-memory структурами статистики
+public interface HitListener {
+
+    void onHits(List<EndpointHit> hits);
+}
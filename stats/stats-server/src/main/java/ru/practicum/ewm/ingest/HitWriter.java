@@ -0,0 +1,85 @@
+package ru.practicum.ewm.ingest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.store.StatsStore;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HitWriter {
+
+    private final StatsStore statsStore;
+    private final List<HitListener> hitListeners;
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+
+    // Единая точка записи хитов в хранилище: используется и синхронным, и фоновым режимом.
+    // Слушатели получают пачку только после того, как движок хранения ее сохранил
+    public void write(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        writeLock.readLock().lock();
+        try {
+            statsStore.append(hits);
+            notifyListeners(hits);
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    // Сохранение хитов в обход write (массовая загрузка) вместе с их публикацией через publish.
+    // Действие выполняется под тем же замком, что и write: снимок quiesce не попадет между коммитом и слушателями
+    public <T> T writeThrough(Supplier<T> action) {
+        writeLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    // Хиты, сохраненные в хранилище в обход write, передаются только слушателям.
+    // Вызывается внутри writeThrough: замок на чтение повторно входимый
+    public void publish(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        writeLock.readLock().lock();
+        try {
+            notifyListeners(hits);
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    // Выполняет действие, пока ни одна пачка не находится между сохранением и обновлением слушателей.
+    // Нужно для согласованных снимков in-memory структур относительно содержимого хранилища
+    public <T> T quiesce(Supplier<T> action) {
+        writeLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    private void notifyListeners(List<EndpointHit> hits) {
+        for (HitListener hitListener : hitListeners) {
+            try {
+                hitListener.onHits(hits);
+            } catch (Exception e) {
+                log.error("Ошибка при обработке пачки хитов слушателем {}", hitListener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.ewm.ingest;
+
+public enum IngestionMode {
+    SYNC, // каждый хит записывается в БД в потоке запроса
+    ASYNC // хит кладется в очередь и записывается фоновым писателем пачками
+}
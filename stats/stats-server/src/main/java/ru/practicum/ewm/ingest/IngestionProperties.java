@@ -0,0 +1,39 @@
+package ru.practicum.ewm.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.ingestion")
+public class IngestionProperties {
+
+    private IngestionMode mode = IngestionMode.SYNC; // Режим записи хитов
+
+    private int queueCapacity = 100_000; // Емкость очереди хитов, ожидающих записи
+
+    private int batchSize = 1_000; // Максимальный размер пачки, записываемой за одну транзакцию
+
+    private Duration flushInterval = Duration.ofMillis(200); // Максимальное время накопления пачки
+
+    private int writeAttempts = 5; // Сколько раз фоновая запись пробует записать пачку, прежде чем отбросить ее
+
+    private Duration writeBackoff = Duration.ofMillis(100); // Пауза перед второй попыткой, дальше она удваивается
+
+    private Duration shutdownTimeout = Duration.ofSeconds(30); // Сколько остановка ждет записи всей очереди
+
+    private int maxConcurrentWrites = 8; // Сколько потоков запросов одновременно пишут хиты в хранилище синхронно
+
+    private OverloadPolicy overloadPolicy = OverloadPolicy.WAIT; // Поведение при перегрузке
+
+    private double sampleRate = 0.1; // Доля записываемых хитов при политике SAMPLE
+
+    private Duration retryAfter = Duration.ofSeconds(1); // Значение Retry-After при политике REJECT
+
+    private int batchKeyCapacity = 100_000; // Сколько ключей идемпотентности принятых пачек помнит узел
+
+    private Duration batchKeyTtl = Duration.ofHours(1); // Сколько помнится ключ принятой пачки
+}
@@ -0,0 +1,9 @@
+package ru.practicum.ewm.ingest;
+
+// Что делать с хитами, если очередь заполнена и все слоты синхронной записи заняты
+public enum OverloadPolicy {
+    WAIT, // Ждать свободного слота в потоке запроса (поведение без ограничения нагрузки)
+    DROP, // Отбросить хиты и ответить как обычно
+    SAMPLE, // Записать только долю sampleRate хитов, остальные отбросить
+    REJECT // Ответить 429 Too Many Requests с заголовком Retry-After
+}
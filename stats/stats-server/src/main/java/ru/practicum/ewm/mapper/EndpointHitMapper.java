@@ -1,16 +1,64 @@
 package ru.practicum.ewm.mapper;
 
 import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.exception.BadRequestException;
 import ru.practicum.ewm.model.EndpointHit;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
 public class EndpointHitMapper {
+
+    // Октет без ведущих нулей: запись вида 010.1.1.1 в BSD-разборе означала бы восьмеричное число
+    private static final Pattern IPV4 = Pattern.compile("^(0|[1-9]\\d{0,2})(\\.(0|[1-9]\\d{0,2})){3}$");
+    private static final Pattern IPV6 = Pattern.compile("^[0-9a-fA-F:.]{2,45}$");
+
     public static EndpointHit toEndpointHit(EndpointHitInputDto endpointHitInputDto) {
         EndpointHit endpointHit = new EndpointHit();
-        endpointHit.setIp(endpointHitInputDto.getIp());
+        endpointHit.setIp(normalizeIp(endpointHitInputDto.getIp()));
         endpointHit.setApp(endpointHitInputDto.getApp());
         endpointHit.setUri(endpointHitInputDto.getUri());
         endpointHit.setTimestamp(endpointHitInputDto.getTimestamp());
 
         return endpointHit;
     }
+
+    // Приводит IP к единой текстовой форме: она хранится в колонке inet и хешируется в скетчах уникальных IP,
+    // поэтому одинаковые адреса в разной записи (например, IPv6 с сокращениями) не считаются разными.
+    // Разбирается только литерал адреса: IPv4 собирается из октетов вручную, а в IPv6 допускаются лишь
+    // шестнадцатеричные цифры, двоеточия и точки, поэтому разбор никогда не уходит в DNS
+    public static String normalizeIp(String ip) {
+        if (ip == null) {
+            throw invalidIp(null);
+        }
+        try {
+            if (IPV4.matcher(ip).matches()) {
+                return InetAddress.getByAddress(parseIpv4(ip)).getHostAddress();
+            }
+            if (IPV6.matcher(ip).matches() && ip.indexOf(':') >= 0) {
+                return InetAddress.getByName(ip).getHostAddress();
+            }
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            throw invalidIp(ip);
+        }
+        throw invalidIp(ip);
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        String[] parts = ip.split("\\.");
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            int octet = Integer.parseInt(parts[i]);
+            if (octet > 255) {
+                throw new IllegalArgumentException("Октет вне диапазона: " + octet);
+            }
+            address[i] = (byte) octet;
+        }
+        return address;
+    }
+
+    private static BadRequestException invalidIp(String ip) {
+        return new BadRequestException("Некорректный IP-адрес: " + ip);
+    }
 }
@@ -0,0 +1,13 @@
+package ru.practicum.ewm.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.metrics")
+public class MetricsProperties {
+
+    private double hitLogSampleRate = 0.001; // Доля запросов /hit и /hits, попадающих в DEBUG-лог
+}
@@ -0,0 +1,112 @@
+package ru.practicum.ewm.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Метрики горячих путей stats-server. Таймеры публикуют гистограммы, чтобы перцентили считались
+// на стороне Prometheus по всем экземплярам. Список uri в теги не попадает - только его размер по корзинам,
+// иначе число временных рядов росло бы с числом разных запросов
+@Component
+@RequiredArgsConstructor
+public class StatsMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final MetricsProperties properties;
+    // Метры создаются один раз на набор тегов: builder().register() на каждый запрос ищет метр в реестре
+    private final Map<IngestionTags, IngestionMeters> ingestionMeters = new ConcurrentHashMap<>();
+    private final Map<QueryTags, QueryMeters> queryMeters = new ConcurrentHashMap<>();
+
+    // endpoint - hit или hits; outcome - accepted, rejected (429) или error. Время включает запись в хранилище
+    // или постановку в очередь, в зависимости от режима
+    public void recordIngestion(String endpoint, String outcome, int hits, long nanos) {
+        IngestionMeters meters = ingestionMeters.computeIfAbsent(new IngestionTags(endpoint, outcome), this::ingestionMeters);
+        meters.latency().record(nanos, TimeUnit.NANOSECONDS);
+        meters.hits().record(hits);
+    }
+
+    // dbNanos - получение строк из хранилища, serializationNanos - преобразование их в JSON
+    public void recordQuery(String endpoint, boolean unique, List<String> uris, long dbNanos, long serializationNanos, long rows) {
+        QueryMeters meters = queryMeters.computeIfAbsent(new QueryTags(endpoint, unique, urisBucket(uris)), this::queryMeters);
+        meters.db().record(dbNanos, TimeUnit.NANOSECONDS);
+        meters.serialization().record(serializationNanos, TimeUnit.NANOSECONDS);
+        meters.rows().record(rows);
+    }
+
+    // Запись хитов слишком частая, чтобы логировать каждый запрос
+    public boolean sampleHitLog() {
+        return ThreadLocalRandom.current().nextDouble() < properties.getHitLogSampleRate();
+    }
+
+    private IngestionMeters ingestionMeters(IngestionTags key) {
+        Tags tags = Tags.of("endpoint", key.endpoint(), "outcome", key.outcome());
+        return new IngestionMeters(
+                Timer.builder("stats.ingestion.request")
+                        .description("Время обработки запроса на запись хитов")
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                DistributionSummary.builder("stats.ingestion.request.hits")
+                        .description("Хитов в одном запросе на запись")
+                        .tags(tags)
+                        .register(meterRegistry));
+    }
+
+    private QueryMeters queryMeters(QueryTags key) {
+        Tags tags = Tags.of("endpoint", key.endpoint(), "unique", String.valueOf(key.unique()), "uris", key.uris());
+        return new QueryMeters(
+                Timer.builder("stats.query.db")
+                        .description("Время получения статистики из хранилища")
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                Timer.builder("stats.query.serialization")
+                        .description("Время сериализации ответа со статистикой")
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                DistributionSummary.builder("stats.query.rows")
+                        .description("Строк в ответе со статистикой")
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+    }
+
+    private static String urisBucket(List<String> uris) {
+        if (uris == null) {
+            return "all";
+        }
+        int size = uris.size();
+        if (size <= 1) {
+            return "1";
+        }
+        if (size <= 10) {
+            return "2-10";
+        }
+        if (size <= 100) {
+            return "11-100";
+        }
+        return size <= 1000 ? "101-1000" : "1001+";
+    }
+
+    private record IngestionTags(String endpoint, String outcome) {
+    }
+
+    private record IngestionMeters(Timer latency, DistributionSummary hits) {
+    }
+
+    private record QueryTags(String endpoint, boolean unique, String uris) {
+    }
+
+    private record QueryMeters(Timer db, Timer serialization, DistributionSummary rows) {
+    }
+}
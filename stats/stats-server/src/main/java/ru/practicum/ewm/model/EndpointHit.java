@@ -3,6 +3,7 @@ package ru.practicum.ewm.model;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.LocalDateTime;
 
@@ -14,16 +15,29 @@ public class EndpointHit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "app")
-    private String app; // идентификатор сервиса для которого записывается информация
+    @Column(name = "app_id")
+    private Integer appId; // идентификатор сервиса в словаре app_dictionary
 
-    @Column(name = "uri")
-    private String uri; // URI для которого был осуществлен запрос
+    @Column(name = "uri_id")
+    private Integer uriId; // идентификатор URI в словаре uri_dictionary
 
-    @Column(name = "ip")
+    @Column(name = "ip", columnDefinition = "inet")
+    @ColumnTransformer(read = "host(ip)", write = "?::inet")
     private String ip; // IP-адрес пользователя, осуществившего запрос
 
     @Column(name = "timestamp")
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp; // дата и время, когда был совершен запрос к эндпоинту (в формате "yyyy-MM-dd HH:mm:ss")
+
+    @Column(name = "hit_count")
+    private int hitCount = 1; // сколько одинаковых хитов (app, uri, ip) окна HitCompactor представляет строка
+
+    @Transient
+    private String app; // название сервиса; в таблице хранится только его идентификатор
+
+    @Transient
+    private String uri; // URI запроса; в таблице хранится только его идентификатор
+
+    @Transient
+    private boolean repeat; // повтор (app, uri, ip) в окне HitDeduplicator; без дедупликации всегда false
 }
@@ -0,0 +1,8 @@
+package ru.practicum.ewm.model;
+
+public record HitCount(int appId, int uriId, long hits) {
+
+    public HitKey key() {
+        return new HitKey(appId, uriId);
+    }
+}
@@ -0,0 +1,5 @@
+package ru.practicum.ewm.model;
+
+// Пара идентификаторов из словарей, по которой группируется статистика
+public record HitKey(int appId, int uriId) {
+}
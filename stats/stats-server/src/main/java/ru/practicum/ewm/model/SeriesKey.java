@@ -0,0 +1,5 @@
+package ru.practicum.ewm.model;
+
+// Интервал временного ряда (номер от начала диапазона) для пары идентификаторов из словарей
+public record SeriesKey(int appId, int uriId, int bucket) {
+}
@@ -0,0 +1,71 @@
+package ru.practicum.ewm.partition;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.repository.PartitionRepository;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Поддерживает дневные секции endpoint_hit: создает их заранее, а секции старше срока хранения
+// сворачивает в часовые агрегаты, отсоединяет и удаляет
+@Component
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionManager {
+
+    private final PartitionRepository partitionRepository;
+    private final PartitionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        createPartitions();
+    }
+
+    @Scheduled(cron = "${stats.partitioning.maintenance-cron:0 5 0 * * *}")
+    public void maintain() {
+        createPartitions();
+        applyRetention();
+    }
+
+    // Сырые данные старше этого момента уже удалены, по ним остались только часовые и дневные агрегаты
+    public LocalDateTime getRetentionHorizon() {
+        return LocalDate.now().minus(properties.getRawRetention()).atStartOfDay();
+    }
+
+    private void createPartitions() {
+        List<LocalDate> existing = partitionRepository.findPartitionDays();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= properties.getPrecreateDays(); i++) {
+            LocalDate day = today.plusDays(i);
+            if (existing.contains(day)) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> partitionRepository.createPartition(day));
+                log.info("Создана секция endpoint_hit за {}", day);
+            } catch (Exception e) {
+                log.error("Не удалось создать секцию endpoint_hit за {}", day, e);
+            }
+        }
+    }
+
+    private void applyRetention() {
+        LocalDateTime horizon = getRetentionHorizon();
+        for (LocalDate day : partitionRepository.findPartitionDays()) {
+            if (!day.plusDays(1).atStartOfDay().isAfter(horizon)) {
+                transactionTemplate.executeWithoutResult(status -> partitionRepository.downsampleAndDropPartition(day));
+                log.info("Секция endpoint_hit за {} свернута в часовые агрегаты и удалена", day);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> partitionRepository.downsampleAndPurgeDefault(horizon));
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.ewm.partition;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Period;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.partitioning")
+public class PartitionProperties {
+
+    private int precreateDays = 7; // На сколько дней вперед заранее создаются секции endpoint_hit
+
+    private Period rawRetention = Period.ofDays(90); // Сколько хранятся сырые хиты; старше - только часовые агрегаты
+}
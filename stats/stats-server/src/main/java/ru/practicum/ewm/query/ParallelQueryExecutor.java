@@ -0,0 +1,101 @@
+package ru.practicum.ewm.query;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.rollup.QueryRange;
+import ru.practicum.ewm.rollup.StatsQueryPlanner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Выполняет части плана запроса /stats параллельно на виртуальных потоках. Длинные диапазоны агрегатов
+// дробятся на куски из целых бакетов; одновременно к базе идет не больше parallelism частей на весь сервер,
+// поэтому пул соединений не исчерпывается несколькими тяжелыми запросами. Части идут вне транзакции вызывающего
+// потока, каждая со своим соединением: они не пересекаются по времени, так что общий снимок данных не нужен.
+// Вызывающий поток не должен держать транзакцию, иначе его соединение простаивает, пока части ждут своих
+@Component
+public class ParallelQueryExecutor {
+
+    private final QueryProperties properties;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final DistributionSummary speedup;
+
+    public ParallelQueryExecutor(QueryProperties properties, MeterRegistry meterRegistry) {
+        if (properties.getParallelism() < 1) {
+            throw new IllegalStateException("stats.query.parallelism должен быть не меньше 1");
+        }
+        this.properties = properties;
+        this.permits = new Semaphore(properties.getParallelism());
+        this.speedup = DistributionSummary.builder("stats.query.parallel.speedup")
+                .description("Отношение суммарного времени частей запроса ко времени его выполнения")
+                .register(meterRegistry);
+    }
+
+    // Результаты возвращаются в порядке частей плана; короткий диапазон выполняется в вызывающем потоке
+    public <R> List<R> execute(List<QueryRange> plan, Function<QueryRange, R> query) {
+        if (!isParallel(plan)) {
+            return plan.stream().map(query).toList();
+        }
+
+        long started = System.nanoTime();
+        AtomicLong busy = new AtomicLong();
+        List<Future<R>> partials = new ArrayList<>();
+        for (QueryRange range : StatsQueryPlanner.split(plan, properties.getParallelism(),
+                properties.getSplitMinBuckets())) {
+            partials.add(executor.submit(() -> {
+                permits.acquire();
+                long rangeStarted = System.nanoTime();
+                try {
+                    return query.apply(range);
+                } finally {
+                    busy.addAndGet(System.nanoTime() - rangeStarted);
+                    permits.release();
+                }
+            }));
+        }
+
+        List<R> results = new ArrayList<>(partials.size());
+        try {
+            for (Future<R> partial : partials) {
+                results.add(partial.get());
+            }
+        } catch (InterruptedException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Выполнение запроса статистики прервано", e);
+        } catch (ExecutionException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка выполнения части запроса статистики", e.getCause());
+        }
+
+        speedup.record((double) busy.get() / Math.max(1, System.nanoTime() - started));
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean isParallel(List<QueryRange> plan) {
+        if (properties.getParallelism() == 1 || plan.isEmpty()) {
+            return false;
+        }
+        Duration span = Duration.between(plan.getFirst().from(), plan.getLast().to());
+        return span.compareTo(properties.getParallelThreshold()) >= 0;
+    }
+}
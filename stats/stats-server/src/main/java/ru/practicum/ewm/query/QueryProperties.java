@@ -0,0 +1,23 @@
+package ru.practicum.ewm.query;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.query")
+public class QueryProperties {
+
+    private int fetchSize = 1_000; // Сколько строк курсор PostgreSQL отдает за один запрос при потоковом чтении /stats
+    private int maxSeriesPoints = 10_000; // Предел числа интервалов в одном ряду /stats/series
+    private int maxUris = 10_000; // Предел числа uri или идентификаторов ресурсов в одном запросе статистики
+
+    private int parallelism = 4; // Сколько частей диапазонов /stats выполняется одновременно на весь сервер; 1 - последовательно
+
+    private Duration parallelThreshold = Duration.ofDays(7); // Более короткие диапазоны считаются одним потоком
+
+    private int splitMinBuckets = 24; // Меньше стольких бакетов в одной части диапазон агрегатов не делится
+}
@@ -0,0 +1,45 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.counter.CounterSnapshot;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class CounterCheckpointRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long findLastHitId() {
+        List<Long> ids = jdbcTemplate.query("SELECT last_hit_id FROM hit_counter_watermark WHERE id = 1",
+                (rs, rowNum) -> rs.getLong("last_hit_id"));
+        return ids.isEmpty() ? 0 : ids.get(0);
+    }
+
+    public List<CounterSnapshot> findAll() {
+        return jdbcTemplate.query("SELECT app, uri, hits, ip_sketch FROM hit_counter_checkpoint", (rs, rowNum) ->
+                new CounterSnapshot(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"), rs.getBytes("ip_sketch")));
+    }
+
+    // Полностью заменяет контрольную точку; вызывается внутри транзакции
+    public void replace(long lastHitId, List<CounterSnapshot> counters) {
+        jdbcTemplate.update("DELETE FROM hit_counter_checkpoint");
+        jdbcTemplate.batchUpdate("INSERT INTO hit_counter_checkpoint (app, uri, hits, ip_sketch) VALUES (?, ?, ?, ?)",
+                counters, 1_000, (ps, counter) -> {
+                    ps.setString(1, counter.app());
+                    ps.setString(2, counter.uri());
+                    ps.setLong(3, counter.hits());
+                    ps.setBytes(4, counter.ipSketch());
+                });
+        jdbcTemplate.update("""
+                INSERT INTO hit_counter_watermark (id, last_hit_id, created_at) VALUES (1, ?, ?)
+                ON CONFLICT (id) DO UPDATE SET last_hit_id = EXCLUDED.last_hit_id, created_at = EXCLUDED.created_at
+                """, lastHitId, LocalDateTime.now());
+    }
+}
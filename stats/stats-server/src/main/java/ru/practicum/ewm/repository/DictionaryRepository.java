@@ -0,0 +1,73 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.dictionary.ResourceRef;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class DictionaryRepository {
+
+    private static final RowMapper<UriEntry> URI_ENTRY_MAPPER = (rs, rowNum) -> {
+        String resourceType = rs.getString("resource_type");
+        ResourceRef resource = resourceType == null ? null : new ResourceRef(resourceType, rs.getLong("resource_id"));
+        return new UriEntry(rs.getInt("id"), rs.getString("uri"), resource);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Map<String, Integer> findAllApps() {
+        Map<String, Integer> apps = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM app_dictionary", rs -> {
+            apps.put(rs.getString("name"), rs.getInt("id"));
+        });
+        return apps;
+    }
+
+    public List<UriEntry> findAllUris() {
+        return jdbcTemplate.query("SELECT id, uri, resource_type, resource_id FROM uri_dictionary", URI_ENTRY_MAPPER);
+    }
+
+    public String findAppName(int id) {
+        return jdbcTemplate.queryForObject("SELECT name FROM app_dictionary WHERE id = ?", String.class, id);
+    }
+
+    public UriEntry findUri(int id) {
+        return jdbcTemplate.queryForObject("SELECT id, uri, resource_type, resource_id FROM uri_dictionary WHERE id = ?",
+                URI_ENTRY_MAPPER, id);
+    }
+
+    public UriEntry findUri(String uri) {
+        List<UriEntry> entries = jdbcTemplate.query(
+                "SELECT id, uri, resource_type, resource_id FROM uri_dictionary WHERE uri = ?", URI_ENTRY_MAPPER, uri);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    // Идемпотентная вставка: при гонке с другим узлом возвращается уже существующий идентификатор
+    public int saveApp(String name) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO app_dictionary (name) VALUES (?)
+                ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name
+                RETURNING id
+                """, Integer.class, name);
+    }
+
+    public UriEntry saveUri(String uri, ResourceRef resource) {
+        return jdbcTemplate.queryForObject("""
+                        INSERT INTO uri_dictionary (uri, resource_type, resource_id) VALUES (?, ?, ?)
+                        ON CONFLICT (uri) DO UPDATE SET uri = EXCLUDED.uri
+                        RETURNING id, uri, resource_type, resource_id
+                        """, URI_ENTRY_MAPPER, uri,
+                resource == null ? null : resource.type(),
+                resource == null ? null : resource.id());
+    }
+}
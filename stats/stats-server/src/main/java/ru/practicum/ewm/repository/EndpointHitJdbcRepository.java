@@ -0,0 +1,155 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.mapper.EndpointHitMapper;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.model.HitCount;
+import ru.practicum.ewm.model.SeriesKey;
+import ru.practicum.ewm.sketch.UniqueIpAccumulator;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class EndpointHitJdbcRepository {
+
+    private static final String INSERT_HIT = """
+            INSERT INTO endpoint_hit (app_id, uri_id, ip, timestamp, hit_count)
+            VALUES (?, ?, ?::inet, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    // Пакетная вставка хитов: при reWriteBatchedInserts драйвер PostgreSQL собирает пачку в один multi-row INSERT
+    public void saveAll(List<EndpointHit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, hits.size(), (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setObject(4, hit.getTimestamp());
+            ps.setInt(5, hit.getHitCount());
+        });
+    }
+
+    public long findMaxId() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM endpoint_hit", Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
+    // Последовательно читает строки с id больше заданного курсором и возвращает число хитов в них с учетом hit_count.
+    // Заполняются только идентификаторы app и uri, названия подставляет вызывающий код по словарю.
+    // Курсор PostgreSQL работает только при выключенном autocommit, поэтому вызывать внутри транзакции
+    public long forEachHitAfter(long id, int fetchSize, Consumer<EndpointHit> consumer) {
+        long[] count = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, app_id, uri_id, host(ip) AS ip, timestamp, hit_count FROM endpoint_hit WHERE id > ? ORDER BY id");
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, id);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            EndpointHit hit = new EndpointHit();
+            hit.setId(rs.getLong("id"));
+            hit.setAppId(rs.getInt("app_id"));
+            hit.setUriId(rs.getInt("uri_id"));
+            hit.setIp(EndpointHitMapper.normalizeIp(rs.getString("ip")));
+            hit.setTimestamp(rs.getObject("timestamp", LocalDateTime.class));
+            hit.setHitCount(rs.getInt("hit_count"));
+            consumer.accept(hit);
+            count[0] += hit.getHitCount();
+        });
+        return count[0];
+    }
+
+    // Количество хитов по сырым данным в интервале [from, to) или [from, to]
+    public List<HitCount> findStats(List<Integer> uriIds,
+                                    LocalDateTime from,
+                                    LocalDateTime to,
+                                    boolean toInclusive) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hit_count) AS hits FROM endpoint_hit")
+                .append(" WHERE timestamp >= :from AND timestamp ")
+                .append(toInclusive ? "<=" : "<")
+                .append(" :to");
+        sql.append(UriIdFilter.sql(uriIds, params));
+        sql.append(" GROUP BY app_id, uri_id");
+
+        return namedParameterJdbcTemplate.query(sql.toString(), params, (rs, rowNum) ->
+                new HitCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    // Точное количество уникальных IP по сырым данным в интервале [from, to]
+    public List<HitCount> findDistinctIpStats(List<Integer> uriIds, LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM endpoint_hit")
+                .append(" WHERE timestamp >= :from AND timestamp <= :to");
+        sql.append(UriIdFilter.sql(uriIds, params));
+        sql.append(" GROUP BY app_id, uri_id");
+
+        return namedParameterJdbcTemplate.query(sql.toString(), params, (rs, rowNum) ->
+                new HitCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    // Добавляет в скетчи различные IP из сырых данных интервала [from, to) или [from, to]
+    public void addDistinctIpsInto(List<Integer> uriIds,
+                                   LocalDateTime from,
+                                   LocalDateTime to,
+                                   boolean toInclusive,
+                                   UniqueIpAccumulator accumulator) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT app_id, uri_id, host(ip) AS ip FROM endpoint_hit")
+                .append(" WHERE timestamp >= :from AND timestamp ")
+                .append(toInclusive ? "<=" : "<")
+                .append(" :to");
+        sql.append(UriIdFilter.sql(uriIds, params));
+
+        namedParameterJdbcTemplate.query(sql.toString(), params, (RowCallbackHandler) rs ->
+                accumulator.addIp(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        EndpointHitMapper.normalizeIp(rs.getString("ip"))));
+    }
+
+    // Количество хитов (или точное число уникальных IP) по интервалам длиной step секунд от начала [from, to)
+    public void addSeriesInto(List<Integer> uriIds,
+                              LocalDateTime from,
+                              LocalDateTime to,
+                              long step,
+                              boolean unique,
+                              Map<SeriesKey, Long> hitsByBucket) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to)
+                .addValue("step", step);
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id,")
+                .append(" FLOOR(EXTRACT(EPOCH FROM (timestamp - :from)) / :step)::int AS bucket, ")
+                .append(unique ? "COUNT(DISTINCT ip)" : "SUM(hit_count)")
+                .append(" AS hits FROM endpoint_hit WHERE timestamp >= :from AND timestamp < :to");
+        sql.append(UriIdFilter.sql(uriIds, params));
+        sql.append(" GROUP BY app_id, uri_id, bucket");
+
+        namedParameterJdbcTemplate.query(sql.toString(), params, (RowCallbackHandler) rs ->
+                hitsByBucket.merge(new SeriesKey(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getInt("bucket")),
+                        rs.getLong("hits"), Long::sum));
+    }
+}
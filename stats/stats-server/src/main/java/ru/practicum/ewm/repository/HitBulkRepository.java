@@ -0,0 +1,172 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.bulk.HitBulkFormat;
+import ru.practicum.ewm.mapper.EndpointHitMapper;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.rollup.RollupGranularity;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Массовая загрузка и выгрузка хитов через COPY. Загружаемые хиты сначала копируются во временную таблицу
+// и переносятся в hit_import_staging с идентификатором пачки: COPY не умеет подставлять константу в колонку
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class HitBulkRepository {
+
+    private static final String STAGED_HITS = """
+            FROM hit_import_staging s
+            JOIN app_dictionary a ON a.name = s.app
+            JOIN uri_dictionary u ON u.uri = s.uri
+            WHERE s.batch_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Сериализует загрузки одной пачки между узлами до конца транзакции
+    public void lockBatch(String batchId) {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(hashtext(?))", rs -> {
+        }, batchId);
+    }
+
+    public Optional<Long> findImportedHits(String batchId) {
+        return jdbcTemplate.query("SELECT hits FROM hit_import_batch WHERE batch_id = ?",
+                (rs, rowNum) -> rs.getLong("hits"), batchId).stream().findFirst();
+    }
+
+    // Заменяет ранее подготовленные хиты пачки содержимым потока. Вызывать внутри транзакции:
+    // временная таблица удаляется при ее завершении
+    public void stage(String batchId, HitBulkFormat format, InputStream body) {
+        jdbcTemplate.update("DELETE FROM hit_import_staging WHERE batch_id = ?", batchId);
+        jdbcTemplate.execute("""
+                CREATE TEMP TABLE hit_import_copy
+                (
+                    app       VARCHAR(100) NOT NULL,
+                    uri       VARCHAR(100) NOT NULL,
+                    ip        INET         NOT NULL,
+                    timestamp TIMESTAMP    NOT NULL
+                ) ON COMMIT DROP
+                """);
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY hit_import_copy FROM STDIN " + format.getCopyOptions(), body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        jdbcTemplate.update("INSERT INTO hit_import_staging (batch_id, app, uri, ip, timestamp) "
+                + "SELECT ?, app, uri, ip, timestamp FROM hit_import_copy", batchId);
+    }
+
+    public boolean legacyTableExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('endpoint_hit_legacy') IS NOT NULL", Boolean.class));
+    }
+
+    // Заменяет подготовленные хиты пачки строками endpoint_hit_legacy. ip там хранился строкой:
+    // строки, которые не разбираются как inet, пропускаются, иначе одна из них остановила бы весь перенос
+    public void stageLegacy(String batchId) {
+        jdbcTemplate.update("DELETE FROM hit_import_staging WHERE batch_id = ?", batchId);
+        jdbcTemplate.update("INSERT INTO hit_import_staging (batch_id, app, uri, ip, timestamp) "
+                + "SELECT ?, app, uri, ip::inet, timestamp FROM endpoint_hit_legacy "
+                + "WHERE pg_input_is_valid(ip, 'inet')", batchId);
+    }
+
+    public void dropLegacy() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS endpoint_hit_legacy");
+    }
+
+    public List<String> findStagedApps(String batchId) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT app FROM hit_import_staging WHERE batch_id = ?",
+                String.class, batchId);
+    }
+
+    public List<String> findStagedUris(String batchId) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT uri FROM hit_import_staging WHERE batch_id = ?",
+                String.class, batchId);
+    }
+
+    // Переносит пачку в endpoint_hit одним INSERT и возвращает число хитов; app и uri уже должны быть в словарях.
+    // Одинаковые хиты (app, uri, ip) одной секунды пишутся одной строкой с hit_count, как и при обычной записи
+    public long insertHits(String batchId) {
+        return jdbcTemplate.queryForObject("WITH inserted AS (INSERT INTO endpoint_hit (app_id, uri_id, ip, timestamp, hit_count) "
+                + "SELECT a.id, u.id, s.ip, s.timestamp, COUNT(*) " + STAGED_HITS
+                + "GROUP BY a.id, u.id, s.ip, s.timestamp RETURNING hit_count) "
+                + "SELECT COALESCE(SUM(hit_count), 0) FROM inserted", Long.class, batchId);
+    }
+
+    // Строки вставляются в порядке первичного ключа, как и при инкрементальном обновлении,
+    // чтобы не получить взаимную блокировку с параллельной записью хитов
+    public void incrementRollup(RollupGranularity granularity, String batchId) {
+        String table = granularity.getTable();
+        String bucket = "date_trunc('" + granularity.name().toLowerCase() + "', s.timestamp)"; // minute, hour, day
+        jdbcTemplate.update("INSERT INTO " + table + " (app_id, uri_id, bucket_start, hits) "
+                + "SELECT a.id, u.id, " + bucket + ", COUNT(*) " + STAGED_HITS
+                + "GROUP BY u.id, " + bucket + ", a.id ORDER BY u.id, " + bucket + ", a.id "
+                + "ON CONFLICT (uri_id, bucket_start, app_id) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits", batchId);
+    }
+
+    // Последовательно читает хиты пачки по возрастанию времени с идентификаторами из словарей.
+    // Курсор PostgreSQL работает только при выключенном autocommit, поэтому вызывать внутри транзакции
+    public void forEachStagedHit(String batchId, int fetchSize, Consumer<EndpointHit> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT a.id AS app_id, u.id AS uri_id, s.app, s.uri, "
+                    + "host(s.ip) AS ip, s.timestamp " + STAGED_HITS + "ORDER BY s.timestamp");
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, batchId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            EndpointHit hit = new EndpointHit();
+            hit.setAppId(rs.getInt("app_id"));
+            hit.setUriId(rs.getInt("uri_id"));
+            hit.setApp(rs.getString("app"));
+            hit.setUri(rs.getString("uri"));
+            hit.setIp(EndpointHitMapper.normalizeIp(rs.getString("ip")));
+            hit.setTimestamp(rs.getObject("timestamp", LocalDateTime.class));
+            consumer.accept(hit);
+        });
+    }
+
+    public void markImported(String batchId, long hits) {
+        jdbcTemplate.update("INSERT INTO hit_import_batch (batch_id, hits, imported_at) VALUES (?, ?, now())", batchId, hits);
+    }
+
+    public void deleteStaged(String batchId) {
+        jdbcTemplate.update("DELETE FROM hit_import_staging WHERE batch_id = ?", batchId);
+    }
+
+    // Выгружает хиты интервала [from, to] в поток без промежуточной буферизации, по строке на хит:
+    // сжатая строка endpoint_hit повторяется hit_count раз. COPY не принимает параметры,
+    // поэтому границы подставляются литералами - это LocalDateTime, а не строки от клиента
+    public long export(LocalDateTime from, LocalDateTime to, HitBulkFormat format, OutputStream out) {
+        String query = "SELECT a.name AS app, u.uri, h.ip, h.timestamp FROM endpoint_hit h "
+                + "JOIN app_dictionary a ON a.id = h.app_id "
+                + "JOIN uri_dictionary u ON u.id = h.uri_id "
+                + "CROSS JOIN generate_series(1, h.hit_count) "
+                + "WHERE h.timestamp >= '" + from + "'::timestamp AND h.timestamp <= '" + to + "'::timestamp";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyOut("COPY (" + query + ") TO STDOUT " + format.getCopyOptions(), out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
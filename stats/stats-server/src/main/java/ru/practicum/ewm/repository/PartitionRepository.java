@@ -0,0 +1,83 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class PartitionRepository {
+
+    private static final String PARTITION_PREFIX = "endpoint_hit_p";
+    private static final String DEFAULT_PARTITION = "endpoint_hit_default";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // Пересчитывает часовые агрегаты по сырым данным; sketch не трогается, он уже поддерживается при записи.
+    // Меньшее значение не записывается, чтобы пересчет не уменьшил агрегат, поддерживаемый при записи
+    private static final String DOWNSAMPLE = """
+            INSERT INTO endpoint_hit_hour (app_id, uri_id, bucket_start, hits)
+            SELECT app_id, uri_id, date_trunc('hour', timestamp), SUM(hit_count)
+            FROM %s
+            WHERE timestamp < ?
+            GROUP BY app_id, uri_id, date_trunc('hour', timestamp)
+            ON CONFLICT (uri_id, bucket_start, app_id) DO UPDATE SET hits = GREATEST(endpoint_hit_hour.hits, EXCLUDED.hits)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<LocalDate> findPartitionDays() {
+        return jdbcTemplate.queryForList("""
+                        SELECT c.relname
+                        FROM pg_inherits i
+                        JOIN pg_class c ON c.oid = i.inhrelid
+                        JOIN pg_class p ON p.oid = i.inhparent
+                        WHERE p.relname = 'endpoint_hit' AND c.relname LIKE 'endpoint\\_hit\\_p%'
+                        """, String.class).stream()
+                .map(name -> LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX))
+                .sorted()
+                .toList();
+    }
+
+    // Если в секции по умолчанию уже есть хиты этого дня, они переносятся в новую секцию до ее присоединения
+    public void createPartition(LocalDate day) {
+        String partition = partitionName(day);
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = day.plusDays(1).atStartOfDay();
+
+        jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE endpoint_hit INCLUDING DEFAULTS)");
+        jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE timestamp >= ? AND timestamp < ? RETURNING *) INSERT INTO " + partition
+                + " SELECT * FROM moved", from, to);
+        jdbcTemplate.execute("ALTER TABLE endpoint_hit ATTACH PARTITION " + partition
+                + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+    }
+
+    public void downsampleAndDropPartition(LocalDate day) {
+        String partition = partitionName(day);
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = day.plusDays(1).atStartOfDay();
+
+        jdbcTemplate.update(DOWNSAMPLE.formatted(partition), to);
+        jdbcTemplate.update("DELETE FROM endpoint_hit_minute WHERE bucket_start >= ? AND bucket_start < ?", from, to);
+        jdbcTemplate.execute("ALTER TABLE endpoint_hit DETACH PARTITION " + partition);
+        jdbcTemplate.execute("DROP TABLE " + partition);
+    }
+
+    // Хиты с датами без своей секции (например, загруженные задним числом) подчищаются по тому же сроку хранения
+    public void downsampleAndPurgeDefault(LocalDateTime horizon) {
+        jdbcTemplate.update(DOWNSAMPLE.formatted(DEFAULT_PARTITION), horizon);
+        jdbcTemplate.update("DELETE FROM endpoint_hit_minute WHERE bucket_start < ?", horizon);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?", horizon);
+    }
+
+    private String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+}
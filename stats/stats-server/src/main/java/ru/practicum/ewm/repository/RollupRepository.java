@@ -0,0 +1,241 @@
+package ru.practicum.ewm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.HitCount;
+import ru.practicum.ewm.model.HitKey;
+import ru.practicum.ewm.model.SeriesKey;
+import ru.practicum.ewm.rollup.RollupBucket;
+import ru.practicum.ewm.rollup.RollupGranularity;
+import ru.practicum.ewm.rollup.RollupKey;
+import ru.practicum.ewm.sketch.HyperLogLog;
+import ru.practicum.ewm.sketch.UniqueIpAccumulator;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Repository
+@JpaStoreEngine
+@RequiredArgsConstructor
+public class RollupRepository {
+
+    private static final Comparator<RollupKey> LOCK_ORDER = Comparator
+            .comparingInt(RollupKey::uriId)
+            .thenComparing(RollupKey::bucketStart)
+            .thenComparingInt(RollupKey::appId);
+
+    private static final String SERIES_BUCKET = "FLOOR(EXTRACT(EPOCH FROM (bucket_start - :from)) / :step)::int";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    // Инкрементальное обновление бакетов; строки сортируются, чтобы параллельные транзакции брали блокировки в одном порядке
+    public void increment(RollupGranularity granularity, Map<RollupKey, Long> counts) {
+        List<Map.Entry<RollupKey, Long>> rows = new ArrayList<>(counts.entrySet());
+        rows.sort(Map.Entry.comparingByKey(LOCK_ORDER));
+
+        String sql = "INSERT INTO " + granularity.getTable() + " (app_id, uri_id, bucket_start, hits) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (uri_id, bucket_start, app_id) DO UPDATE SET hits = " + granularity.getTable() + ".hits + EXCLUDED.hits";
+
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getKey().appId());
+            ps.setInt(2, row.getKey().uriId());
+            ps.setObject(3, row.getKey().bucketStart());
+            ps.setLong(4, row.getValue());
+        });
+    }
+
+    // Счетчик первых посещений (app, uri, ip) в окне дедупликации. Строки уже созданы инкрементом счетчиков
+    public void incrementUnique(RollupGranularity granularity, Map<RollupKey, Long> counts) {
+        List<Map.Entry<RollupKey, Long>> rows = new ArrayList<>(counts.entrySet());
+        rows.sort(Map.Entry.comparingByKey(LOCK_ORDER));
+
+        jdbcTemplate.batchUpdate("UPDATE " + granularity.getTable() + " SET unique_hits = unique_hits + ? "
+                + "WHERE uri_id = ? AND bucket_start = ? AND app_id = ?", rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.getValue());
+            ps.setInt(2, row.getKey().uriId());
+            ps.setObject(3, row.getKey().bucketStart());
+            ps.setInt(4, row.getKey().appId());
+        });
+    }
+
+    // Объединяет скетчи пачки с сохраненными. Строки уже заблокированы инкрементом счетчиков в той же транзакции.
+    // Сохраненные скетчи всех затронутых бакетов читаются одним запросом по массивам ключей,
+    // а не запросом на бакет: пачка задевает сотни часовых и дневных бакетов
+    public void mergeSketches(RollupGranularity granularity, Map<RollupKey, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<RollupKey, HyperLogLog>> rows = new ArrayList<>(sketches.entrySet());
+        rows.sort(Map.Entry.comparingByKey(LOCK_ORDER));
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("uriIds", rows.stream().map(row -> row.getKey().uriId()).toArray(Integer[]::new))
+                .addValue("buckets", rows.stream().map(row -> row.getKey().bucketStart().toString()).toArray(String[]::new))
+                .addValue("appIds", rows.stream().map(row -> row.getKey().appId()).toArray(Integer[]::new));
+        String select = "SELECT app_id, uri_id, bucket_start, ip_sketch FROM " + granularity.getTable()
+                + " WHERE (uri_id, bucket_start, app_id) IN (SELECT * FROM unnest(:uriIds, :buckets::timestamp[], :appIds))"
+                + " AND ip_sketch IS NOT NULL";
+        Map<RollupKey, byte[]> stored = new HashMap<>();
+        namedParameterJdbcTemplate.query(select, params, (RowCallbackHandler) rs -> stored.put(
+                new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getObject("bucket_start", LocalDateTime.class)),
+                rs.getBytes("ip_sketch")));
+
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Map.Entry<RollupKey, HyperLogLog> row : rows) {
+            RollupKey key = row.getKey();
+            HyperLogLog merged = row.getValue();
+            byte[] bytes = stored.get(key);
+            if (bytes != null) {
+                merged = HyperLogLog.fromBytes(bytes);
+                merged.merge(row.getValue());
+            }
+            updates.add(new Object[]{merged.toBytes(), key.uriId(), key.bucketStart(), key.appId()});
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE " + granularity.getTable()
+                + " SET ip_sketch = ? WHERE uri_id = ? AND bucket_start = ? AND app_id = ?", updates);
+    }
+
+    // Объединение скетчей уникальных IP по целым бакетам из полуоткрытого интервала [from, to)
+    public void mergeSketchesInto(RollupGranularity granularity,
+                                  List<Integer> uriIds,
+                                  LocalDateTime from,
+                                  LocalDateTime to,
+                                  UniqueIpAccumulator accumulator) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, ip_sketch FROM ")
+                .append(granularity.getTable())
+                .append(" WHERE bucket_start >= :from AND bucket_start < :to AND ip_sketch IS NOT NULL");
+        sql.append(UriIdFilter.sql(uriIds, params));
+
+        namedParameterJdbcTemplate.query(sql.toString(), params, (RowCallbackHandler) rs ->
+                accumulator.merge(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        HyperLogLog.fromBytes(rs.getBytes("ip_sketch"))));
+    }
+
+    // Сумма хитов по целым бакетам из полуоткрытого интервала [from, to)
+    public List<HitCount> findStats(RollupGranularity granularity,
+                                    List<Integer> uriIds,
+                                    LocalDateTime from,
+                                    LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hits) AS hits FROM ")
+                .append(granularity.getTable())
+                .append(" WHERE bucket_start >= :from AND bucket_start < :to");
+        sql.append(UriIdFilter.sql(uriIds, params));
+        sql.append(" GROUP BY app_id, uri_id");
+
+        return namedParameterJdbcTemplate.query(sql.toString(), params, (rs, rowNum) ->
+                new HitCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    // Сумма счетчиков первых посещений по целым бакетам из [from, to)
+    public List<HitCount> findUniqueHits(RollupGranularity granularity,
+                                         List<Integer> uriIds,
+                                         LocalDateTime from,
+                                         LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        String sql = "SELECT app_id, uri_id, SUM(unique_hits) AS hits FROM " + granularity.getTable()
+                + " WHERE bucket_start >= :from AND bucket_start < :to" + UriIdFilter.sql(uriIds, params)
+                + " GROUP BY app_id, uri_id HAVING SUM(unique_hits) > 0";
+
+        return namedParameterJdbcTemplate.query(sql, params, (rs, rowNum) ->
+                new HitCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    // Сумма хитов по интервалам длиной step секунд; [from, to) и step выровнены по бакетам гранулярности
+    public void addSeriesInto(RollupGranularity granularity,
+                              List<Integer> uriIds,
+                              LocalDateTime from,
+                              LocalDateTime to,
+                              long step,
+                              Map<SeriesKey, Long> hitsByBucket) {
+        MapSqlParameterSource params = seriesParams(from, to, step);
+        String sql = "SELECT app_id, uri_id, " + SERIES_BUCKET + " AS bucket, SUM(hits) AS hits FROM "
+                + granularity.getTable() + " WHERE bucket_start >= :from AND bucket_start < :to"
+                + UriIdFilter.sql(uriIds, params) + " GROUP BY app_id, uri_id, bucket";
+
+        namedParameterJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                hitsByBucket.merge(new SeriesKey(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getInt("bucket")),
+                        rs.getLong("hits"), Long::sum));
+    }
+
+    // Объединение скетчей уникальных IP по интервалам длиной step секунд
+    public void mergeSeriesSketchesInto(RollupGranularity granularity,
+                                        List<Integer> uriIds,
+                                        LocalDateTime from,
+                                        LocalDateTime to,
+                                        long step,
+                                        Map<SeriesKey, HyperLogLog> sketchesByBucket) {
+        MapSqlParameterSource params = seriesParams(from, to, step);
+        String sql = "SELECT app_id, uri_id, " + SERIES_BUCKET + " AS bucket, ip_sketch FROM "
+                + granularity.getTable() + " WHERE bucket_start >= :from AND bucket_start < :to AND ip_sketch IS NOT NULL"
+                + UriIdFilter.sql(uriIds, params);
+
+        namedParameterJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                sketchesByBucket.computeIfAbsent(
+                        new SeriesKey(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getInt("bucket")),
+                        key -> new HyperLogLog()).merge(HyperLogLog.fromBytes(rs.getBytes("ip_sketch"))));
+    }
+
+    // Обходит бакеты, начиная с from; без from возвращает по одной строке с суммой за все время на (app, uri).
+    // Используется для прогрева in-memory структур при старте
+    public void forEachBucket(RollupGranularity granularity, LocalDateTime from, Consumer<RollupBucket> consumer) {
+        String sql = from == null
+                ? "SELECT app_id, uri_id, MIN(bucket_start) AS bucket_start, SUM(hits) AS hits FROM "
+                + granularity.getTable() + " GROUP BY app_id, uri_id"
+                : "SELECT app_id, uri_id, bucket_start, hits FROM " + granularity.getTable() + " WHERE bucket_start >= ?";
+        Object[] args = from == null ? new Object[0] : new Object[]{from};
+
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(new RollupBucket(rs.getInt("app_id"),
+                rs.getInt("uri_id"), rs.getObject("bucket_start", LocalDateTime.class), rs.getLong("hits"))), args);
+    }
+
+    // Суммы хитов и объединенные скетчи за все время по (app, uri) из дневных бакетов перечисленных uri.
+    // Скетч может отсутствовать (null), если у бакетов uri скетчей нет
+    public void forEachTotal(List<Integer> uriIds, BiConsumer<HitCount, HyperLogLog> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = "SELECT app_id, uri_id, hits, ip_sketch FROM " + RollupGranularity.DAY.getTable()
+                + " WHERE TRUE" + UriIdFilter.sql(uriIds, params);
+
+        Map<HitKey, Long> hits = new HashMap<>();
+        Map<HitKey, HyperLogLog> sketches = new HashMap<>();
+        namedParameterJdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+            HitKey key = new HitKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+            hits.merge(key, rs.getLong("hits"), Long::sum);
+            byte[] sketch = rs.getBytes("ip_sketch");
+            if (sketch != null) {
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).merge(HyperLogLog.fromBytes(sketch));
+            }
+        });
+        hits.forEach((key, total) ->
+                consumer.accept(new HitCount(key.appId(), key.uriId(), total), sketches.get(key)));
+    }
+
+    private static MapSqlParameterSource seriesParams(LocalDateTime from, LocalDateTime to, long step) {
+        return new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to)
+                .addValue("step", step);
+    }
+}
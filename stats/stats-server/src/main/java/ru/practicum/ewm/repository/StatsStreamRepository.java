@@ -0,0 +1,111 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.query.QueryProperties;
+import ru.practicum.ewm.rollup.QueryRange;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Потоковое чтение статистики одним запросом: части плана объединяются и агрегируются в PostgreSQL,
+// а строки передаются потребителю по мере продвижения курсора, не накапливаясь в памяти.
+// Курсор работает только при выключенном autocommit, поэтому вызывать внутри транзакции
+@Repository
+@JpaStoreEngine
+public class StatsStreamRepository {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public StatsStreamRepository(DataSource dataSource, QueryProperties properties) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(properties.getFetchSize());
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    // Количество хитов по плану из сырых краев и целых бакетов агрегатов
+    public void streamStats(List<QueryRange> plan,
+                            List<Integer> uriIds,
+                            StatsCursor after,
+                            Integer limit,
+                            Consumer<ViewStatsOutputDto> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> parts = new ArrayList<>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            QueryRange range = plan.get(i);
+            params.addValue("from" + i, range.from());
+            params.addValue("to" + i, range.to());
+
+            StringBuilder part = new StringBuilder();
+            if (range.isRaw()) {
+                part.append("SELECT app_id, uri_id, SUM(hit_count) AS hits FROM endpoint_hit")
+                        .append(" WHERE timestamp >= :from").append(i)
+                        .append(" AND timestamp ").append(range.toInclusive() ? "<=" : "<").append(" :to").append(i);
+            } else {
+                part.append("SELECT app_id, uri_id, SUM(hits) AS hits FROM ").append(range.granularity().getTable())
+                        .append(" WHERE bucket_start >= :from").append(i)
+                        .append(" AND bucket_start < :to").append(i);
+            }
+            part.append(UriIdFilter.sql(uriIds, params));
+            parts.add(part.append(" GROUP BY app_id, uri_id").toString());
+        }
+
+        String aggregate = "SELECT app_id, uri_id, SUM(hits) AS hits FROM ("
+                + String.join(" UNION ALL ", parts)
+                + ") parts GROUP BY app_id, uri_id";
+        stream(aggregate, params, after, limit, consumer);
+    }
+
+    // Точное количество уникальных IP по сырым данным в интервале [from, to]
+    public void streamDistinctIpStats(List<Integer> uriIds,
+                                      LocalDateTime from,
+                                      LocalDateTime to,
+                                      StatsCursor after,
+                                      Integer limit,
+                                      Consumer<ViewStatsOutputDto> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+
+        StringBuilder aggregate = new StringBuilder("SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM endpoint_hit")
+                .append(" WHERE timestamp >= :from AND timestamp <= :to");
+        aggregate.append(UriIdFilter.sql(uriIds, params));
+        aggregate.append(" GROUP BY app_id, uri_id");
+        stream(aggregate.toString(), params, after, limit, consumer);
+    }
+
+    // Сортировка и сравнение с курсором в COLLATE "C" совпадают с порядком StatsCursor.ORDER
+    private void stream(String aggregate,
+                        MapSqlParameterSource params,
+                        StatsCursor after,
+                        Integer limit,
+                        Consumer<ViewStatsOutputDto> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT a.name AS app, u.uri AS uri, s.hits FROM (")
+                .append(aggregate)
+                .append(") s JOIN app_dictionary a ON a.id = s.app_id JOIN uri_dictionary u ON u.id = s.uri_id");
+        if (after != null) {
+            sql.append(" WHERE s.hits < :afterHits OR (s.hits = :afterHits")
+                    .append(" AND (a.name COLLATE \"C\", u.uri COLLATE \"C\") > (:afterApp, :afterUri))");
+            params.addValue("afterHits", after.getHits())
+                    .addValue("afterApp", after.getApp())
+                    .addValue("afterUri", after.getUri());
+        }
+        sql.append(" ORDER BY s.hits DESC, a.name COLLATE \"C\", u.uri COLLATE \"C\"");
+        if (limit != null) {
+            sql.append(" LIMIT :limit");
+            params.addValue("limit", limit);
+        }
+
+        namedParameterJdbcTemplate.query(sql.toString(), params, (RowCallbackHandler) rs ->
+                consumer.accept(new ViewStatsOutputDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"))));
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.util.List;
+
+// Фильтр по идентификаторам uri одним параметром-массивом. IN (:uriIds) раскрывается в отдельный параметр
+// на каждый элемент: на тысячах uri текст запроса и время планирования растут с длиной списка,
+// а больше 32767 параметров драйвер PostgreSQL не передает. С = ANY план от длины списка не зависит
+final class UriIdFilter {
+
+    private UriIdFilter() {
+    }
+
+    // Условие для WHERE (пустое, если uriIds = null); значение параметра uriIds добавляется в params
+    static String sql(List<Integer> uriIds, MapSqlParameterSource params) {
+        if (uriIds == null) {
+            return "";
+        }
+        params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        return " AND uri_id = ANY(:uriIds)";
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.ewm.rollup;
+
+import java.time.LocalDateTime;
+
+// Часть диапазона запроса: либо целые бакеты таблицы агрегатов, либо кусок сырой таблицы endpoint_hit.
+// Для бакетов интервал всегда полуоткрытый [from, to), для сырых данных конец может быть включен
+public record QueryRange(RollupGranularity granularity, LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+
+    public static QueryRange rollup(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+        return new QueryRange(granularity, from, to, false);
+    }
+
+    public static QueryRange raw(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+        return new QueryRange(null, from, to, toInclusive);
+    }
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.ewm.rollup;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupGranularity {
+    MINUTE("endpoint_hit_minute", ChronoUnit.MINUTES, false),
+    HOUR("endpoint_hit_hour", ChronoUnit.HOURS, true),
+    DAY("endpoint_hit_day", ChronoUnit.DAYS, true);
+
+    private final String table; // Таблица с агрегатами данной гранулярности
+    private final ChronoUnit unit; // Размер одного бакета
+    private final boolean sketched; // Хранит ли таблица скетч уникальных IP (для минут это слишком дорого)
+
+    // Начало бакета, в который попадает момент времени
+    public LocalDateTime truncate(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    // Ближайшая граница бакета, не меньшая заданного момента
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime truncated = truncate(time);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.ewm.rollup;
+
+import java.time.LocalDateTime;
+
+public record RollupKey(int appId, int uriId, LocalDateTime bucketStart) {
+}
@@ -0,0 +1,97 @@
+package ru.practicum.ewm.rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Разбивает диапазон [start, end] на сырые края и максимально крупные целые бакеты агрегатов,
+// чтобы стоимость запроса зависела от длины диапазона, а не от общего числа хитов
+public final class StatsQueryPlanner {
+
+    private StatsQueryPlanner() {
+    }
+
+    public static List<QueryRange> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, RollupGranularity.MINUTE);
+    }
+
+    // finest - самая мелкая гранулярность, которую можно использовать (например, скетчи есть только с HOUR)
+    public static List<QueryRange> plan(LocalDateTime start, LocalDateTime end, RollupGranularity finest) {
+        RollupGranularity[] levels = Arrays.copyOfRange(RollupGranularity.values(), finest.ordinal(),
+                RollupGranularity.values().length);
+        LocalDateTime alignedStart = finest.ceil(start);
+        LocalDateTime alignedEnd = finest.truncate(end);
+
+        List<QueryRange> ranges = new ArrayList<>();
+        if (!alignedStart.isBefore(alignedEnd)) {
+            ranges.add(QueryRange.raw(start, end, true));
+            return ranges;
+        }
+
+        if (start.isBefore(alignedStart)) {
+            ranges.add(QueryRange.raw(start, alignedStart, false));
+        }
+
+        LocalDateTime cursor = alignedStart;
+
+        // Поднимаемся от мелких бакетов к крупным, пока не выровняемся по границе следующего уровня
+        for (int i = 0; i < levels.length - 1; i++) {
+            RollupGranularity level = levels[i];
+            LocalDateTime limit = min(levels[i + 1].ceil(cursor), level.truncate(alignedEnd));
+            cursor = addRange(ranges, level, cursor, limit);
+        }
+
+        RollupGranularity top = levels[levels.length - 1];
+        cursor = addRange(ranges, top, cursor, top.truncate(alignedEnd));
+
+        // Спускаемся обратно к мелким бакетам у правого края
+        for (int i = levels.length - 2; i >= 0; i--) {
+            RollupGranularity level = levels[i];
+            cursor = addRange(ranges, level, cursor, level.truncate(alignedEnd));
+        }
+
+        ranges.add(QueryRange.raw(alignedEnd, end, true));
+        return ranges;
+    }
+
+    // Делит каждый диапазон агрегатов не больше чем на parts частей из целых бакетов, чтобы их можно было
+    // считать параллельно. В каждой части не меньше minBuckets бакетов: короткий диапазон (например, три
+    // минуты у края) остается одним запросом, иначе деление только умножает обращения к базе.
+    // Сырые края короче одного бакета и остаются как есть
+    public static List<QueryRange> split(List<QueryRange> ranges, int parts, int minBuckets) {
+        List<QueryRange> result = new ArrayList<>();
+        for (QueryRange range : ranges) {
+            ChronoUnit unit = range.isRaw() ? null : range.granularity().getUnit();
+            long buckets = unit == null ? 0 : unit.between(range.from(), range.to());
+            long count = Math.min(parts, buckets / Math.max(1, minBuckets));
+            if (count < 2) {
+                result.add(range);
+                continue;
+            }
+            long chunk = (buckets + count - 1) / count;
+            for (LocalDateTime from = range.from(); from.isBefore(range.to()); ) {
+                LocalDateTime to = min(from.plus(chunk, unit), range.to());
+                result.add(QueryRange.rollup(range.granularity(), from, to));
+                from = to;
+            }
+        }
+        return result;
+    }
+
+    private static LocalDateTime addRange(List<QueryRange> ranges,
+                                          RollupGranularity granularity,
+                                          LocalDateTime from,
+                                          LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return from;
+        }
+        ranges.add(QueryRange.rollup(granularity, from, to));
+        return to;
+    }
+
+    private static LocalDateTime min(LocalDateTime first, LocalDateTime second) {
+        return first.isBefore(second) ? first : second;
+    }
+}
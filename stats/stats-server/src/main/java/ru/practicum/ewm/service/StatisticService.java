@@ -1,14 +1,51 @@
 package ru.practicum.ewm.service;
 
 import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.HitTotalsOutputDto;
+import ru.practicum.ewm.ResourceStatsOutputDto;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.TrendingOutputDto;
 import ru.practicum.ewm.ViewStatsOutputDto;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatisticService {
 
     void createEndpointHit(EndpointHitInputDto endpointHitInputDto);
 
-    List<ViewStatsOutputDto> getStats(List<String> uris, LocalDateTime start, LocalDateTime end, Boolean unique);
+    // batchKey - ключ идемпотентности пачки (может быть null): повтор пачки с тем же ключом хиты не дублирует
+    void createEndpointHits(List<EndpointHitInputDto> endpointHitInputDtos, String batchKey);
+
+    // exact = true отключает оценку уникальных IP по скетчам и считает COUNT(DISTINCT) по сырым данным
+    // Элементы uris могут быть шаблонами: /events/* - один сегмент, /events/** - любое число сегментов
+    List<ViewStatsOutputDto> getStats(List<String> uris, LocalDateTime start, LocalDateTime end, Boolean unique, Boolean exact,
+                                      boolean fresh);
+
+    // Потоковая выдача статистики в порядке hits DESC, app, uri: строки передаются потребителю по мере чтения.
+    // after - курсор последней полученной строки (StatsCursor), limit - максимальное количество строк
+    void streamStats(List<String> uris, LocalDateTime start, LocalDateTime end, Boolean unique, Boolean exact,
+                     String after, Integer limit, Consumer<ViewStatsOutputDto> consumer);
+
+    // То же, что streamStats, но параметры и курсор проверяются сразу, а чтение откладывается до StatsStream.writeTo:
+    // так ошибка в запросе превращается в 400 до того, как начат потоковый ответ
+    StatsStream prepareStream(List<String> uris, LocalDateTime start, LocalDateTime end, Boolean unique, Boolean exact,
+                              String after, Integer limit);
+
+    // Гистограмма хитов по интервалам длиной step (например, 5m, 1h, 1d) для каждого (app, uri) диапазона
+    List<StatsSeriesOutputDto> getSeries(List<String> uris, LocalDateTime start, LocalDateTime end, String step, Boolean unique);
+
+    List<HitTotalsOutputDto> getTotals(List<String> uris);
+
+    // Приближенный топ-k самых посещаемых uri сервиса за окно 1h, 24h, 7d или all
+    List<ViewStatsOutputDto> getTop(String app, String window, Integer k);
+
+    // Uri, популярные в последнее время (с экспоненциальным затуханием); с uris - популярность только этих uri
+    List<TrendingOutputDto> getTrending(String app, List<String> uris, Integer k);
+
+    // Статистика по ресурсам вида /{type}/{id}; без start и end возвращаются значения за все время.
+    // exact = true считает уникальные IP через COUNT(DISTINCT) по сырым данным, а не по скетчам
+    List<ResourceStatsOutputDto> getResourceStats(String type, List<Long> ids, LocalDateTime start, LocalDateTime end,
+                                                  Boolean unique, Boolean exact);
 }
@@ -1,41 +1,240 @@
 package ru.practicum.ewm.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.ewm.EndpointHitInputDto;
+import ru.practicum.ewm.HitTotalsOutputDto;
+import ru.practicum.ewm.ResourceStatsOutputDto;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.TrendingOutputDto;
+import ru.practicum.ewm.cache.StatsQueryCache;
+import ru.practicum.ewm.counter.HitCounters;
+import ru.practicum.ewm.dictionary.ResourceRef;
 import ru.practicum.ewm.exception.BadRequestException;
-import ru.practicum.ewm.repository.EndpointHitRepository;
+import ru.practicum.ewm.ingest.HitAdmission;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.query.QueryProperties;
+import ru.practicum.ewm.store.SeriesAssembler;
+import ru.practicum.ewm.store.StatsStore;
+import ru.practicum.ewm.topk.HitTopK;
+import ru.practicum.ewm.topk.TopKProperties;
+import ru.practicum.ewm.topk.TopWindow;
+import ru.practicum.ewm.trending.TrendingProperties;
+import ru.practicum.ewm.trending.TrendingScores;
 import ru.practicum.ewm.ViewStatsOutputDto;
 import ru.practicum.ewm.mapper.EndpointHitMapper;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 
+// Транзакциями управляет движок хранения: с движком segment база данных не используется вовсе
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class StatisticServiceImpl implements StatisticService {
 
-    private final EndpointHitRepository endpointHitRepository;
+    private static final Duration MIN_SERIES_STEP = Duration.ofMinutes(1);
+    private static final LocalDateTime ALL_TIME_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime ALL_TIME_END = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final StatsStore statsStore;
+    private final StatsQueryCache statsQueryCache;
+    private final HitAdmission hitAdmission;
+    private final HitCounters hitCounters;
+    private final HitTopK hitTopK;
+    private final TopKProperties topKProperties;
+    private final QueryProperties queryProperties;
+    private final TrendingScores trendingScores;
+    private final TrendingProperties trendingProperties;
 
     @Override
-    @Transactional
     public void createEndpointHit(EndpointHitInputDto endpointHitInputDto) {
-        endpointHitRepository.save(EndpointHitMapper.toEndpointHit(endpointHitInputDto));
+        hitAdmission.admit(List.of(EndpointHitMapper.toEndpointHit(endpointHitInputDto)));
+    }
+
+    @Override
+    public void createEndpointHits(List<EndpointHitInputDto> endpointHitInputDtos, String batchKey) {
+        if (batchKey != null && (batchKey.isBlank() || batchKey.length() > 100)) {
+            throw new BadRequestException("Idempotency-Key должен быть непустой строкой не длиннее 100 символов");
+        }
+        List<EndpointHit> hits = new ArrayList<>(endpointHitInputDtos.size());
+        for (EndpointHitInputDto endpointHitInputDto : endpointHitInputDtos) {
+            hits.add(EndpointHitMapper.toEndpointHit(endpointHitInputDto));
+        }
+
+        hitAdmission.admit(hits, batchKey);
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> getStats(List<String> uris,
+                                             LocalDateTime start,
+                                             LocalDateTime end,
+                                             Boolean unique,
+                                             Boolean exact,
+                                             boolean fresh) {
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new BadRequestException("Даты не должны быть пустыми и start должен предшествовать end");
+        }
+        checkSize(uris);
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+
+        // Кэш узла видит только пачки, записанные через этот узел
+        if (fresh) {
+            return statsStore.findStats(uris, start, end, unique, exact);
+        }
+        return statsQueryCache.get(uris, start, end, unique, exact,
+                () -> statsStore.findStats(uris, start, end, unique, exact));
     }
 
     @Override
-    public List<ViewStatsOutputDto> getStats(List<String> uris, LocalDateTime start, LocalDateTime end, Boolean unique) {
+    public void streamStats(List<String> uris,
+                            LocalDateTime start,
+                            LocalDateTime end,
+                            Boolean unique,
+                            Boolean exact,
+                            String after,
+                            Integer limit,
+                            Consumer<ViewStatsOutputDto> consumer) {
+        prepareStream(uris, start, end, unique, exact, after, limit).writeTo(consumer);
+    }
+
+    @Override
+    public StatsStream prepareStream(List<String> uris,
+                                     LocalDateTime start,
+                                     LocalDateTime end,
+                                     Boolean unique,
+                                     Boolean exact,
+                                     String after,
+                                     Integer limit) {
         if (start == null || end == null || start.isAfter(end)) {
             throw new BadRequestException("Даты не должны быть пустыми и start должен предшествовать end");
         }
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit должен быть положительным");
+        }
+        checkSize(uris);
+
+        StatsCursor cursor = null;
+        if (after != null) {
+            try {
+                cursor = StatsCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Некорректный курсор after: " + after);
+            }
+        }
+        if (uris != null && uris.isEmpty()) {
+            return consumer -> { };
+        }
+
+        StatsCursor from = cursor;
+        return consumer -> statsStore.streamStats(uris, start, end, unique, exact, from, limit, consumer);
+    }
+
+    @Override
+    public List<StatsSeriesOutputDto> getSeries(List<String> uris,
+                                                LocalDateTime start,
+                                                LocalDateTime end,
+                                                String step,
+                                                Boolean unique) {
+        if (start == null || end == null || !start.isBefore(end)) {
+            throw new BadRequestException("Даты не должны быть пустыми и start должен предшествовать end");
+        }
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(step);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Некорректный шаг step: " + step);
+        }
+        if (duration.compareTo(MIN_SERIES_STEP) < 0 || duration.toSeconds() % MIN_SERIES_STEP.toSeconds() != 0) {
+            throw new BadRequestException("Шаг step должен быть целым числом минут");
+        }
+        if (SeriesAssembler.bucketCount(start, end, duration) > queryProperties.getMaxSeriesPoints()) {
+            throw new BadRequestException("Ряд не может содержать больше " + queryProperties.getMaxSeriesPoints() + " интервалов");
+        }
+        if (uris != null && uris.isEmpty()) {
+            return List.of();
+        }
+
+        return statsStore.findSeries(uris, start, end, duration, unique);
+    }
+
+    @Override
+    public List<HitTotalsOutputDto> getTotals(List<String> uris) {
+        return hitCounters.getTotals(uris);
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> getTop(String app, String window, Integer k) {
+        TopWindow topWindow = TopWindow.fromCode(window)
+                .orElseThrow(() -> new BadRequestException("Неизвестное окно " + window + ", допустимы 1h, 24h, 7d, all"));
+        if (k <= 0 || k > topKProperties.getCapacity()) {
+            throw new BadRequestException("k должно быть от 1 до " + topKProperties.getCapacity());
+        }
+        return hitTopK.top(app, topWindow, k);
+    }
 
-        if (unique) {
-            return endpointHitRepository.findDistinctIpStats(uris, start, end);
+    @Override
+    public List<TrendingOutputDto> getTrending(String app, List<String> uris, Integer k) {
+        if (uris != null) {
+            return trendingScores.scores(app, uris);
+        }
+        if (k <= 0 || k > trendingProperties.getMaxK()) {
+            throw new BadRequestException("k должно быть от 1 до " + trendingProperties.getMaxK());
+        }
+        return trendingScores.top(app, k);
+    }
+
+    @Override
+    public List<ResourceStatsOutputDto> getResourceStats(String type,
+                                                         List<Long> ids,
+                                                         LocalDateTime start,
+                                                         LocalDateTime end,
+                                                         Boolean unique,
+                                                         Boolean exact) {
+        checkSize(ids);
+        List<String> uris = statsStore.findResourceUris(type, ids);
+        if (uris.isEmpty()) {
+            return List.of();
+        }
+
+        List<ResourceStatsOutputDto> result = new ArrayList<>();
+        boolean allTime = start == null && end == null;
+        if (allTime && !(unique && exact)) {
+            // Значения за все время отдают in-memory счетчики
+            for (HitTotalsOutputDto totals : hitCounters.getTotals(uris)) {
+                ResourceRef resource = ResourceRef.parse(totals.getUri()).orElseThrow();
+                result.add(new ResourceStatsOutputDto(totals.getApp(), resource.type(), resource.id(),
+                        unique ? totals.getUniqueHits() : totals.getHits()));
+            }
         } else {
-            return endpointHitRepository.findStats(uris, start, end);
+            if (!allTime && (start == null || end == null || start.isAfter(end))) {
+                throw new BadRequestException("Даты должны быть заданы обе и start должен предшествовать end");
+            }
+            // Точное число уникальных IP за все время считается по сырым хитам, которые еще хранятся
+            // (stats.partitioning.raw-retention): скетч счетчика дает только оценку
+            List<ViewStatsOutputDto> stats = allTime
+                    ? statsStore.findStats(uris, ALL_TIME_START, ALL_TIME_END, true, true)
+                    : statsStore.findStats(uris, start, end, unique, exact);
+            for (ViewStatsOutputDto stat : stats) {
+                ResourceRef resource = ResourceRef.parse(stat.getUri()).orElseThrow();
+                result.add(new ResourceStatsOutputDto(stat.getApp(), resource.type(), resource.id(), stat.getHits()));
+            }
         }
+        result.sort(Comparator.comparingLong(ResourceStatsOutputDto::getHits).reversed());
+        return result;
     }
 
+    private void checkSize(List<?> values) {
+        if (values != null && values.size() > queryProperties.getMaxUris()) {
+            throw new BadRequestException("В одном запросе можно передать не больше " + queryProperties.getMaxUris()
+                    + " uri или идентификаторов");
+        }
+    }
 }
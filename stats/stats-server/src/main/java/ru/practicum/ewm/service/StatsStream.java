@@ -0,0 +1,12 @@
+package ru.practicum.ewm.service;
+
+import ru.practicum.ewm.ViewStatsOutputDto;
+
+import java.util.function.Consumer;
+
+// Подготовленная потоковая выдача /stats: параметры уже проверены, чтение из хранилища начинается при вызове writeTo
+@FunctionalInterface
+public interface StatsStream {
+
+    void writeTo(Consumer<ViewStatsOutputDto> consumer);
+}
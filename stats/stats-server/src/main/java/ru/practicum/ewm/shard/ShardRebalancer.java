@@ -0,0 +1,63 @@
+package ru.practicum.ewm.shard;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.HitShardRing;
+import ru.practicum.ewm.ShardRebalanceInputDto;
+import ru.practicum.ewm.cache.StatsQueryCache;
+import ru.practicum.ewm.counter.HitCounters;
+import ru.practicum.ewm.counter.HitCountersCheckpointer;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.exception.BadRequestException;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.store.JpaStoreEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Приводит in-memory состояние узла в соответствие с новым кольцом, когда узлы делят одно хранилище.
+// Клиент шлет прежний и новый состав кольца; перешедшие к узлу uri получают счетчики из агрегатов
+// и свежие результаты кэша, ушедшие к другим узлам - забываются. Повтор с теми же кольцами безопасен
+@Component
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Slf4j
+public class ShardRebalancer {
+
+    private final DictionaryRepository dictionaryRepository;
+    private final HitCounters hitCounters;
+    private final HitCountersCheckpointer hitCountersCheckpointer;
+    private final StatsQueryCache statsQueryCache;
+
+    public void rebalance(ShardRebalanceInputDto rebalance) {
+        if (rebalance.getSelf() == null || rebalance.getPreviousNodes() == null || rebalance.getNodes() == null
+                || rebalance.getVirtualNodes() < 1) {
+            throw new BadRequestException("self, previousNodes, nodes и положительное virtualNodes обязательны");
+        }
+        HitShardRing previous = new HitShardRing(rebalance.getPreviousNodes(), rebalance.getVirtualNodes());
+        HitShardRing next = new HitShardRing(rebalance.getNodes(), rebalance.getVirtualNodes());
+        String self = rebalance.getSelf();
+
+        // Без прежнего кольца переходить нечему: счетчики узла восстановлены при старте
+        List<UriEntry> movedIn = new ArrayList<>();
+        int movedOut = 0;
+        if (!previous.isEmpty()) {
+            for (UriEntry entry : dictionaryRepository.findAllUris()) {
+                boolean owned = !next.isEmpty() && self.equals(next.owner(entry.uri()));
+                boolean wasOwned = self.equals(previous.owner(entry.uri()));
+                if (owned && !wasOwned) {
+                    movedIn.add(entry);
+                } else if (!owned && wasOwned) {
+                    hitCounters.forget(entry.uri());
+                    movedOut++;
+                }
+            }
+        }
+
+        hitCountersCheckpointer.rebuild(movedIn);
+        statsQueryCache.invalidate(movedIn.stream().map(UriEntry::uri).toList());
+        log.info("Кольцо узлов перестроено: {} -> {}, к узлу {} перешло uri: {}, ушло: {}",
+                rebalance.getPreviousNodes(), rebalance.getNodes(), self, movedIn.size(), movedOut);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.practicum.ewm.sketch;
+
+import ru.practicum.ewm.StatsHash;
+
+// Скетч HyperLogLog для оценки числа уникальных значений. Скетчи одной точности объединяются без потерь,
+// поэтому уникальные IP по диапазону считаются как объединение скетчей бакетов.
+// Стандартная ошибка оценки ~ 1.04 / sqrt(2^precision), для точности 12 это около 1.6%
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть в диапазоне 4..18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        addHash(StatsHash.hash(value));
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = Math.min(Long.numberOfLeadingZeros(rest), 64 - precision) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить скетчи разной точности");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    // Тот же скетч с меньшей точностью, как если бы значения сразу добавлялись в него: отброшенные биты индекса
+    // регистра становятся старшими битами остатка хеша. Нужен, чтобы объединять скетчи разной точности
+    public HyperLogLog reduce(int precision) {
+        if (precision > this.precision) {
+            throw new IllegalArgumentException("Точность скетча можно только уменьшить: " + this.precision + " -> " + precision);
+        }
+        HyperLogLog reduced = new HyperLogLog(precision);
+        int dropped = this.precision - precision;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] == 0) {
+                continue;
+            }
+            int low = i & ((1 << dropped) - 1);
+            int rank = low != 0
+                    ? Integer.numberOfLeadingZeros(low) - (Integer.SIZE - dropped) + 1
+                    : registers[i] + dropped;
+            int index = i >>> dropped;
+            if (rank > reduced.registers[index]) {
+                reduced.registers[index] = (byte) rank;
+            }
+        }
+        return reduced;
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+
+        // На малых мощностях линейный подсчет по пустым регистрам точнее
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return bytes;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        int precision = bytes[0];
+        byte[] registers = new byte[1 << precision];
+        System.arraycopy(bytes, 1, registers, 0, registers.length);
+        return new HyperLogLog(precision, registers);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.ewm.sketch;
+
+import ru.practicum.ewm.model.HitKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Собирает скетчи уникальных IP по (app, uri) из бакетов агрегатов и сырых краев диапазона
+public class UniqueIpAccumulator {
+
+    private final Map<HitKey, HyperLogLog> sketches = new HashMap<>();
+
+    public void addIp(int appId, int uriId, String ip) {
+        sketch(appId, uriId).add(ip);
+    }
+
+    public void merge(int appId, int uriId, HyperLogLog other) {
+        sketch(appId, uriId).merge(other);
+    }
+
+    public void merge(UniqueIpAccumulator other) {
+        other.sketches.forEach((key, sketch) -> merge(key.appId(), key.uriId(), sketch));
+    }
+
+    public Map<HitKey, Long> estimates() {
+        Map<HitKey, Long> result = new HashMap<>();
+        sketches.forEach((key, sketch) -> result.put(key, sketch.estimate()));
+        return result;
+    }
+
+    private HyperLogLog sketch(int appId, int uriId) {
+        return sketches.computeIfAbsent(new HitKey(appId, uriId), key -> new HyperLogLog());
+    }
+}
@@ -0,0 +1,333 @@
+package ru.practicum.ewm.store;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.compaction.HitCompactor;
+import ru.practicum.ewm.dedupe.DedupeMarks;
+import ru.practicum.ewm.dedupe.HitDeduplicator;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.exception.BadRequestException;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.model.HitCount;
+import ru.practicum.ewm.model.HitKey;
+import ru.practicum.ewm.model.SeriesKey;
+import ru.practicum.ewm.partition.PartitionManager;
+import ru.practicum.ewm.query.ParallelQueryExecutor;
+import ru.practicum.ewm.repository.EndpointHitJdbcRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.StatsStreamRepository;
+import ru.practicum.ewm.rollup.RollupGranularity;
+import ru.practicum.ewm.rollup.RollupKey;
+import ru.practicum.ewm.rollup.StatsQueryPlanner;
+import ru.practicum.ewm.sketch.HyperLogLog;
+import ru.practicum.ewm.sketch.UniqueIpAccumulator;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Движок хранения по умолчанию: сырые хиты в секционированной endpoint_hit и агрегаты по бакетам в PostgreSQL
+@Component
+@JpaStoreEngine
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class JpaStatsStore implements StatsStore {
+
+    private final EndpointHitJdbcRepository endpointHitJdbcRepository;
+    private final RollupRepository rollupRepository;
+    private final StatsStreamRepository statsStreamRepository;
+    private final HitDictionary hitDictionary;
+    private final PartitionManager partitionManager;
+    private final TransactionTemplate transactionTemplate;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitCompactor hitCompactor;
+    private final ParallelQueryExecutor parallelQueryExecutor;
+
+    // Сырые хиты и агрегаты пишутся в одной транзакции, поэтому агрегаты всегда согласованы с endpoint_hit.
+    // Новые app и uri попадают в словари отдельными короткими транзакциями до записи пачки
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void append(List<EndpointHit> hits) {
+        for (EndpointHit hit : hits) {
+            hit.setAppId(hitDictionary.appId(hit.getApp()));
+            hit.setUriId(hitDictionary.uriId(hit.getUri()));
+        }
+        DedupeMarks marks = hitDeduplicator.mark(hits);
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(hits));
+        } catch (RuntimeException e) {
+            hitDeduplicator.release(marks);
+            throw e;
+        }
+        hitDeduplicator.remember(marks);
+    }
+
+    // Без транзакции: части плана берут соединения сами, и соединение запроса не простаивает, пока они выполняются
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ViewStatsOutputDto> findStats(List<String> uris,
+                                              LocalDateTime start,
+                                              LocalDateTime end,
+                                              boolean unique,
+                                              boolean exact) {
+        List<Integer> uriIds = null;
+        if (uris != null) {
+            uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        return toViewStats(countHits(uriIds, start, end, unique, exact));
+    }
+
+    // Транзакция открывается только для чтения курсором; оценка по скетчам идет частями без нее, как в findStats
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamStats(List<String> uris,
+                            LocalDateTime start,
+                            LocalDateTime end,
+                            boolean unique,
+                            boolean exact,
+                            StatsCursor after,
+                            Integer limit,
+                            Consumer<ViewStatsOutputDto> consumer) {
+        List<Integer> uriIds = null;
+        if (uris != null) {
+            uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return;
+            }
+        }
+
+        List<Integer> filter = uriIds;
+        if (!unique) {
+            RollupGranularity finest = finestGranularity(start);
+            readOnly(() -> statsStreamRepository.streamStats(StatsQueryPlanner.plan(start, end, finest), filter, after, limit, consumer));
+        } else if (exact) {
+            readOnly(() -> statsStreamRepository.streamDistinctIpStats(filter, start, end, after, limit, consumer));
+        } else {
+            // Скетчи и счетчики первых посещений объединяются в памяти, поэтому здесь постранично отдается уже посчитанный результат
+            toViewStats(countHits(uriIds, start, end, true, false)).stream()
+                    .filter(stat -> after == null || after.isBefore(stat))
+                    .limit(limit == null ? Long.MAX_VALUE : limit)
+                    .forEach(consumer);
+        }
+    }
+
+    // Если шаг и границы кратны бакетам агрегатов, ряд собирается из самой крупной подходящей таблицы,
+    // иначе одним GROUP BY по сырым хитам. Уникальные IP по агрегатам оцениваются скетчами, по сырым - точно
+    @Override
+    public List<StatsSeriesOutputDto> findSeries(List<String> uris,
+                                                 LocalDateTime start,
+                                                 LocalDateTime end,
+                                                 Duration step,
+                                                 boolean unique) {
+        List<Integer> uriIds = null;
+        if (uris != null) {
+            uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        long stepSeconds = step.toSeconds();
+        Optional<RollupGranularity> rollup = seriesGranularity(start, end, step, unique);
+        if (rollup.isEmpty() && start.isBefore(partitionManager.getRetentionHorizon())) {
+            throw new BadRequestException("Сырые хиты старше " + partitionManager.getRetentionHorizon()
+                    + " удалены: шаг и границы ряда должны быть кратны часу");
+        }
+
+        Map<SeriesKey, Long> hitsByBucket = new HashMap<>();
+        if (rollup.isEmpty()) {
+            endpointHitJdbcRepository.addSeriesInto(uriIds, start, end, stepSeconds, unique, hitsByBucket);
+        } else if (unique) {
+            Map<SeriesKey, HyperLogLog> sketches = new HashMap<>();
+            rollupRepository.mergeSeriesSketchesInto(rollup.get(), uriIds, start, end, stepSeconds, sketches);
+            sketches.forEach((key, sketch) -> hitsByBucket.put(key, sketch.estimate()));
+        } else {
+            rollupRepository.addSeriesInto(rollup.get(), uriIds, start, end, stepSeconds, hitsByBucket);
+        }
+
+        return SeriesAssembler.assemble(hitsByBucket, start, step, SeriesAssembler.bucketCount(start, end, step),
+                hitDictionary::appName, uriId -> hitDictionary.uri(uriId).uri());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<String> findResourceUris(String type, List<Long> ids) {
+        return hitDictionary.findResources(type, ids).stream()
+                .map(UriEntry::uri)
+                .toList();
+    }
+
+    // В режиме COLLAPSE повторы прибавляются к hit_count строки (app, uri, ip) за минуту, а не пишутся отдельно
+    private void persist(List<EndpointHit> hits) {
+        List<EndpointHit> raw = hitCompactor.compact(hits, hitDeduplicator.isCollapsing());
+        if (!raw.isEmpty()) {
+            endpointHitJdbcRepository.saveAll(raw);
+        }
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            rollupRepository.increment(granularity, aggregate(hits, granularity, false));
+            if (granularity.isSketched()) {
+                rollupRepository.mergeSketches(granularity, sketch(hits, granularity));
+            }
+        }
+        if (hitDeduplicator.isEnabled()) {
+            rollupRepository.incrementUnique(hitDeduplicator.getWindow(), aggregate(hits, hitDeduplicator.getWindow(), true));
+        }
+    }
+
+    private Map<RollupKey, Long> aggregate(List<EndpointHit> hits, RollupGranularity granularity, boolean firstVisitsOnly) {
+        Map<RollupKey, Long> counts = new HashMap<>();
+        for (EndpointHit hit : hits) {
+            if (firstVisitsOnly && hit.isRepeat()) {
+                continue;
+            }
+            RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), granularity.truncate(hit.getTimestamp()));
+            counts.merge(key, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    private Map<RollupKey, HyperLogLog> sketch(List<EndpointHit> hits, RollupGranularity granularity) {
+        Map<RollupKey, HyperLogLog> sketches = new HashMap<>();
+        for (EndpointHit hit : hits) {
+            RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), granularity.truncate(hit.getTimestamp()));
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(hit.getIp());
+        }
+        return sketches;
+    }
+
+    private Map<HitKey, Long> countHits(List<Integer> uriIds,
+                                        LocalDateTime start,
+                                        LocalDateTime end,
+                                        boolean unique,
+                                        boolean exact) {
+        LocalDateTime windowEnd = unique && !exact ? dedupeWindowEnd(start, end) : null;
+        if (unique && exact) {
+            return toHitsByKey(endpointHitJdbcRepository.findDistinctIpStats(uriIds, start, end));
+        } else if (windowEnd != null) {
+            return toHitsByKey(rollupRepository.findUniqueHits(hitDeduplicator.getWindow(), uriIds, start, windowEnd));
+        } else if (unique) {
+            return findUniqueStatsBySketches(uriIds, start, end);
+        } else {
+            return findStatsByPlan(uriIds, start, end);
+        }
+    }
+
+    // Суммирует целые бакеты агрегатов и сырые края диапазона; части длинного диапазона считаются параллельно
+    private Map<HitKey, Long> findStatsByPlan(List<Integer> uriIds, LocalDateTime start, LocalDateTime end) {
+        RollupGranularity finest = finestGranularity(start);
+
+        List<List<HitCount>> partials = parallelQueryExecutor.execute(StatsQueryPlanner.plan(start, end, finest),
+                range -> range.isRaw()
+                        ? endpointHitJdbcRepository.findStats(uriIds, range.from(), range.to(), range.toInclusive())
+                        : rollupRepository.findStats(range.granularity(), uriIds, range.from(), range.to()));
+
+        Map<HitKey, Long> hitsByKey = new HashMap<>();
+        for (List<HitCount> partial : partials) {
+            for (HitCount count : partial) {
+                hitsByKey.merge(count.key(), count.hits(), Long::sum);
+            }
+        }
+        return hitsByKey;
+    }
+
+    // Оценка уникальных IP объединением скетчей HyperLogLog; сырые края добираются до границ часа.
+    // Каждая часть плана собирает свои скетчи, они объединяются после выполнения всех частей
+    private Map<HitKey, Long> findUniqueStatsBySketches(List<Integer> uriIds, LocalDateTime start, LocalDateTime end) {
+        List<UniqueIpAccumulator> partials = parallelQueryExecutor.execute(
+                StatsQueryPlanner.plan(start, end, RollupGranularity.HOUR), range -> {
+                    UniqueIpAccumulator partial = new UniqueIpAccumulator();
+                    if (range.isRaw()) {
+                        endpointHitJdbcRepository.addDistinctIpsInto(uriIds, range.from(), range.to(), range.toInclusive(), partial);
+                    } else {
+                        rollupRepository.mergeSketchesInto(range.granularity(), uriIds, range.from(), range.to(), partial);
+                    }
+                    return partial;
+                });
+
+        UniqueIpAccumulator accumulator = new UniqueIpAccumulator();
+        partials.forEach(accumulator::merge);
+        return accumulator.estimates();
+    }
+
+    private void readOnly(Runnable action) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> action.run());
+    }
+
+    // Самая крупная гранулярность, бакеты которой целиком укладываются в интервалы ряда
+    private Optional<RollupGranularity> seriesGranularity(LocalDateTime start,
+                                                          LocalDateTime end,
+                                                          Duration step,
+                                                          boolean unique) {
+        List<RollupGranularity> candidates = new ArrayList<>(List.of(RollupGranularity.values()));
+        Collections.reverse(candidates);
+        RollupGranularity finest = finestGranularity(start);
+        for (RollupGranularity granularity : candidates) {
+            if (granularity.compareTo(finest) < 0 || (unique && !granularity.isSketched())) {
+                continue;
+            }
+            long bucketSeconds = granularity.getUnit().getDuration().toSeconds();
+            if (step.toSeconds() % bucketSeconds == 0
+                    && granularity.truncate(start).equals(start)
+                    && granularity.truncate(end).equals(end)) {
+                return Optional.of(granularity);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Конец окна дедупликации, если диапазон совпадает ровно с одним окном: тогда уникальные точно берутся
+    // из счетчика первых посещений этого окна. Так как end входит в диапазон, подходит и 23:59:59, и 00:00:00.
+    // Диапазон из нескольких окон оценивается скетчами: сумма счетчиков учла бы посетителя в каждом окне
+    private LocalDateTime dedupeWindowEnd(LocalDateTime start, LocalDateTime end) {
+        if (!hitDeduplicator.isEnabled()) {
+            return null;
+        }
+        RollupGranularity window = hitDeduplicator.getWindow();
+        if (!window.truncate(start).equals(start)) {
+            return null;
+        }
+        LocalDateTime windowEnd = start.plus(1, window.getUnit());
+        return end.equals(windowEnd) || end.plusSeconds(1).equals(windowEnd) ? windowEnd : null;
+    }
+
+    // Минутные агрегаты и сырые хиты старше срока хранения удалены, там доступна только часовая точность
+    private RollupGranularity finestGranularity(LocalDateTime start) {
+        return start.isBefore(partitionManager.getRetentionHorizon())
+                ? RollupGranularity.HOUR
+                : RollupGranularity.MINUTE;
+    }
+
+    private List<ViewStatsOutputDto> toViewStats(Map<HitKey, Long> hitsByKey) {
+        List<ViewStatsOutputDto> result = new ArrayList<>(hitsByKey.size());
+        hitsByKey.forEach((key, hits) -> result.add(new ViewStatsOutputDto(
+                hitDictionary.appName(key.appId()), hitDictionary.uri(key.uriId()).uri(), hits)));
+        result.sort(StatsCursor.ORDER);
+        return result;
+    }
+
+    private Map<HitKey, Long> toHitsByKey(List<HitCount> counts) {
+        Map<HitKey, Long> hitsByKey = new HashMap<>();
+        counts.forEach(count -> hitsByKey.put(count.key(), count.hits()));
+        return hitsByKey;
+    }
+}
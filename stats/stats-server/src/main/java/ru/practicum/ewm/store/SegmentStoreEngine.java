@@ -0,0 +1,15 @@
+package ru.practicum.ewm.store;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Бин нужен только движку хранения segment (файлы сегментов на локальном диске)
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@ConditionalOnProperty(prefix = "stats.store", name = "engine", havingValue = "segment")
+public @interface SegmentStoreEngine {
+}
@@ -0,0 +1,67 @@
+package ru.practicum.ewm.store;
+
+import ru.practicum.ewm.SeriesPointDto;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.model.HitKey;
+import ru.practicum.ewm.model.SeriesKey;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Собирает плотные временные ряды из счетчиков по интервалам; пустые интервалы заполняются нулями.
+// Ряды упорядочены как строки /stats - по сумме за диапазон
+public final class SeriesAssembler {
+
+    private SeriesAssembler() {
+    }
+
+    public static int bucketCount(LocalDateTime start, LocalDateTime end, Duration step) {
+        long seconds = Duration.between(start, end).toSeconds();
+        return (int) Math.max(1, (seconds + step.toSeconds() - 1) / step.toSeconds());
+    }
+
+    public static List<StatsSeriesOutputDto> assemble(Map<SeriesKey, Long> hitsByBucket,
+                                                      LocalDateTime start,
+                                                      Duration step,
+                                                      int buckets,
+                                                      IntFunction<String> appName,
+                                                      IntFunction<String> uri) {
+        Map<HitKey, long[]> series = new HashMap<>();
+        hitsByBucket.forEach((key, hits) -> {
+            if (key.bucket() >= 0 && key.bucket() < buckets) {
+                series.computeIfAbsent(new HitKey(key.appId(), key.uriId()), k -> new long[buckets])[key.bucket()] += hits;
+            }
+        });
+
+        List<ViewStatsOutputDto> order = new ArrayList<>(series.size());
+        Map<ViewStatsOutputDto, long[]> byRow = new HashMap<>();
+        series.forEach((key, counts) -> {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            ViewStatsOutputDto row = new ViewStatsOutputDto(appName.apply(key.appId()), uri.apply(key.uriId()), total);
+            order.add(row);
+            byRow.put(row, counts);
+        });
+        order.sort(StatsCursor.ORDER);
+
+        List<StatsSeriesOutputDto> result = new ArrayList<>(order.size());
+        for (ViewStatsOutputDto row : order) {
+            long[] counts = byRow.get(row);
+            List<SeriesPointDto> points = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                points.add(new SeriesPointDto(start.plus(step.multipliedBy(i)), counts[i]));
+            }
+            result.add(new StatsSeriesOutputDto(row.getApp(), row.getUri(), points));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.ewm.store;
+
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Движок хранения хитов. Выбирается свойством stats.store.engine: jpa (по умолчанию) или segment.
+// uris = null означает все uri; результаты упорядочены по StatsCursor.ORDER
+public interface StatsStore {
+
+    // Атомарно сохраняет пачку хитов; вызывается только из HitWriter
+    void append(List<EndpointHit> hits);
+
+    // exact = true - точный подсчет уникальных IP вместо оценки по скетчам
+    List<ViewStatsOutputDto> findStats(List<String> uris, LocalDateTime start, LocalDateTime end,
+                                       boolean unique, boolean exact);
+
+    // Строки строго после курсора after, не более limit штук; null снимает соответствующее ограничение
+    void streamStats(List<String> uris, LocalDateTime start, LocalDateTime end, boolean unique, boolean exact,
+                     StatsCursor after, Integer limit, Consumer<ViewStatsOutputDto> consumer);
+
+    // Ряды счетчиков по интервалам длиной step от start; последний интервал обрезается по end
+    List<StatsSeriesOutputDto> findSeries(List<String> uris, LocalDateTime start, LocalDateTime end,
+                                          Duration step, boolean unique);
+
+    // Известные хранилищу uri ресурсов вида /{type}/{id}
+    List<String> findResourceUris(String type, List<Long> ids);
+}
@@ -0,0 +1,144 @@
+package ru.practicum.ewm.store.segment;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+// Файл сегмента фиксированного размера, отображенный в память. Записи только дописываются в конец:
+// [длина тела: 1 байт][время, epoch seconds: 8][app id: 4][uri id: 4][IP: 4 или 16 байт].
+// Нулевой байт длины означает конец данных. Индексы min/max времени и множества uri держатся в памяти
+// и восстанавливаются чтением сегмента при открытии
+final class Segment {
+
+    private static final int HEADER = 1 + 8 + 4 + 4;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final BitSet uriIds = new BitSet();
+
+    private int position; // Конец записанных данных, меняется только писателем
+    private volatile int committed; // Конец данных, видимых читателям
+    private volatile long minTimestamp = Long.MAX_VALUE;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    private Segment(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    static Segment open(Path file, int size) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+
+        Segment segment = new Segment(file, buffer);
+        segment.recover();
+        return segment;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    boolean isEmpty() {
+        return committed == 0;
+    }
+
+    // Записывает хит после последнего; false, если в сегменте не осталось места.
+    // Видимым для чтения хит становится только после commit. Вызывается одним писателем
+    boolean append(long timestamp, int appId, int uriId, byte[] ip) {
+        int length = HEADER - 1 + ip.length;
+        if (position + 1 + length > buffer.capacity()) {
+            return false;
+        }
+        // Сначала тело, затем длина: запись без длины при восстановлении считается концом данных
+        buffer.putLong(position + 1, timestamp);
+        buffer.putInt(position + 9, appId);
+        buffer.putInt(position + 13, uriId);
+        buffer.put(position + HEADER, ip);
+        buffer.put(position, (byte) length);
+        position += 1 + length;
+
+        synchronized (uriIds) {
+            uriIds.set(uriId);
+        }
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        return true;
+    }
+
+    // Сбрасывает записанное на диск и делает его видимым читателям
+    void commit() {
+        buffer.force();
+        committed = position;
+    }
+
+    boolean overlaps(long from, long to) {
+        return minTimestamp <= to && maxTimestamp >= from;
+    }
+
+    boolean containsAny(BitSet filter) {
+        synchronized (uriIds) {
+            return uriIds.intersects(filter);
+        }
+    }
+
+    // Обходит записи в интервале [from, to]; filter = null - все uri. IP читается, только если он нужен
+    void scan(long from, long to, BitSet filter, boolean withIp, RecordVisitor visitor) {
+        ByteBuffer view = buffer.duplicate();
+        int end = committed;
+        int offset = 0;
+        while (offset < end) {
+            int length = view.get(offset) & 0xFF;
+            long timestamp = view.getLong(offset + 1);
+            int uriId = view.getInt(offset + 13);
+            if (timestamp >= from && timestamp <= to && (filter == null || filter.get(uriId))) {
+                String ip = null;
+                if (withIp) {
+                    byte[] address = new byte[length + 1 - HEADER];
+                    view.get(offset + HEADER, address);
+                    ip = toIp(address);
+                }
+                visitor.visit(timestamp, view.getInt(offset + 9), uriId, ip);
+            }
+            offset += 1 + length;
+        }
+    }
+
+    private void recover() {
+        position = 0;
+        while (position < buffer.capacity()) {
+            int length = buffer.get(position) & 0xFF;
+            if (length == 0 || position + 1 + length > buffer.capacity()) {
+                break;
+            }
+            long timestamp = buffer.getLong(position + 1);
+            uriIds.set(buffer.getInt(position + 13));
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            position += 1 + length;
+        }
+        committed = position;
+    }
+
+    private static String toIp(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Поврежденная запись IP в сегменте", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(long timestamp, int appId, int uriId, String ip);
+    }
+}
@@ -0,0 +1,141 @@
+package ru.practicum.ewm.store.segment;
+
+import ru.practicum.ewm.dictionary.UriTrie;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Словарь app и uri движка segment: журнал записей (тип, id, значение) с дописыванием в конец.
+// Новая запись сбрасывается на диск до того, как на ее id сошлется хит в сегменте
+final class SegmentDictionary implements AutoCloseable {
+
+    private static final byte APP = 1;
+    private static final byte URI = 2;
+
+    private final FileChannel channel;
+    private final List<String> apps = new ArrayList<>();
+    private final List<String> uris = new ArrayList<>();
+    private final Map<String, Integer> appIds = new HashMap<>();
+    private final Map<String, Integer> uriIds = new HashMap<>();
+    private final UriTrie uriTrie = new UriTrie();
+
+    SegmentDictionary(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long valid = load();
+        // Недописанная при аварии последняя запись отбрасывается
+        channel.truncate(valid);
+        channel.position(valid);
+    }
+
+    synchronized int appId(String app) throws IOException {
+        Integer id = appIds.get(app);
+        return id != null ? id : register(APP, app, apps, appIds);
+    }
+
+    synchronized int uriId(String uri) throws IOException {
+        Integer id = uriIds.get(uri);
+        return id != null ? id : register(URI, uri, uris, uriIds);
+    }
+
+    synchronized Integer findUriId(String uri) {
+        return uriIds.get(uri);
+    }
+
+    // Идентификаторы uri, подходящих под шаблон UriTrie
+    List<Integer> matchUriIds(String pattern) {
+        return uriTrie.match(pattern);
+    }
+
+    synchronized String appName(int id) {
+        return apps.get(id);
+    }
+
+    synchronized String uri(int id) {
+        return uris.get(id);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int register(byte kind, String value, List<String> values, Map<String, Integer> ids) throws IOException {
+        int id = values.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(kind);
+            out.writeInt(id);
+            out.writeUTF(value);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+
+        values.add(value);
+        ids.put(value, id);
+        if (kind == URI) {
+            uriTrie.add(value, id);
+        }
+        return id;
+    }
+
+    private long load() throws IOException {
+        long valid = 0;
+        channel.position(0);
+        // Поток не закрывается: это закрыло бы и канал, через который словарь дописывается дальше
+        InputStream stream = Channels.newInputStream(channel);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        try {
+            while (true) {
+                byte kind = in.readByte();
+                int id = in.readInt();
+                String value = in.readUTF();
+                if (kind == APP && id == apps.size()) {
+                    apps.add(value);
+                    appIds.put(value, id);
+                } else if (kind == URI && id == uris.size()) {
+                    uris.add(value);
+                    uriIds.put(value, id);
+                    uriTrie.add(value, id);
+                } else {
+                    break;
+                }
+                valid += 1 + 4 + 2 + utfLength(value);
+            }
+        } catch (EOFException e) {
+            // Конец журнала
+        }
+        return valid;
+    }
+
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,421 @@
+package ru.practicum.ewm.store.segment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.StatsCursor;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.dictionary.UriTrie;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.model.HitKey;
+import ru.practicum.ewm.model.SeriesKey;
+import ru.practicum.ewm.sketch.HyperLogLog;
+import ru.practicum.ewm.store.SegmentStoreEngine;
+import ru.practicum.ewm.store.SeriesAssembler;
+import ru.practicum.ewm.store.StatsStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Движок хранения без базы данных: хиты дописываются в отображенные в память файлы сегментов,
+// агрегации по диапазону считаются параллельным сканированием сегментов, подходящих по времени и uri.
+// Счетчики за все время и топ восстанавливаются при старте повтором всех хитов в слушателей
+@Component
+@SegmentStoreEngine
+@Slf4j
+public class SegmentStatsStore implements StatsStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final ScanKey<HitKey> HIT_KEY = (timestamp, appId, uriId) -> new HitKey(appId, uriId);
+
+    private final SegmentStoreProperties properties;
+    private final List<HitListener> hitListeners;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    private SegmentDictionary dictionary;
+    private ExecutorService scanExecutor;
+    private Segment active;
+
+    public SegmentStatsStore(SegmentStoreProperties properties, List<HitListener> hitListeners) {
+        this.properties = properties;
+        this.hitListeners = hitListeners;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (properties.getSegmentSize().toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Размер сегмента не может превышать 2 ГБ");
+        }
+        Files.createDirectories(properties.getDirectory());
+        dictionary = new SegmentDictionary(properties.getDirectory().resolve("dictionary.log"));
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(properties.getDirectory())) {
+            files = list.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            segments.add(Segment.open(file, segmentSize()));
+        }
+        active = segments.isEmpty() ? createSegment() : segments.get(segments.size() - 1);
+
+        AtomicInteger threads = new AtomicInteger();
+        scanExecutor = Executors.newFixedThreadPool(properties.getScanThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "stats-segment-scan-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long replayed = replay();
+        log.info("Открыто хранилище сегментов {}: {} сегментов, восстановлено хитов {}",
+                properties.getDirectory(), segments.size(), replayed);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        scanExecutor.shutdownNow();
+        dictionary.close();
+    }
+
+    @Override
+    public synchronized void append(List<EndpointHit> hits) {
+        try {
+            for (EndpointHit hit : hits) {
+                long timestamp = toEpochSecond(hit.getTimestamp());
+                int appId = dictionary.appId(hit.getApp());
+                int uriId = dictionary.uriId(hit.getUri());
+                byte[] ip = toAddress(hit.getIp());
+                if (!active.append(timestamp, appId, uriId, ip)) {
+                    active.commit();
+                    active = createSegment();
+                    active.append(timestamp, appId, uriId, ip);
+                }
+            }
+            active.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<ViewStatsOutputDto> findStats(List<String> uris,
+                                              LocalDateTime start,
+                                              LocalDateTime end,
+                                              boolean unique,
+                                              boolean exact) {
+        BitSet filter = uriFilter(uris);
+        if (filter != null && filter.isEmpty()) {
+            return List.of();
+        }
+
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        Map<HitKey, Long> hitsByKey;
+        if (!unique) {
+            hitsByKey = aggregate(from, to, filter, Aggregation.COUNT, HIT_KEY);
+        } else if (exact) {
+            hitsByKey = aggregate(from, to, filter, Aggregation.DISTINCT, HIT_KEY);
+        } else {
+            hitsByKey = aggregate(from, to, filter, Aggregation.SKETCH, HIT_KEY);
+        }
+
+        List<ViewStatsOutputDto> result = new ArrayList<>(hitsByKey.size());
+        hitsByKey.forEach((key, hits) ->
+                result.add(new ViewStatsOutputDto(dictionary.appName(key.appId()), dictionary.uri(key.uriId()), hits)));
+        result.sort(StatsCursor.ORDER);
+        return result;
+    }
+
+    // Результат агрегируется в памяти целиком, поэтому курсор и limit применяются к готовому списку
+    @Override
+    public void streamStats(List<String> uris,
+                            LocalDateTime start,
+                            LocalDateTime end,
+                            boolean unique,
+                            boolean exact,
+                            StatsCursor after,
+                            Integer limit,
+                            Consumer<ViewStatsOutputDto> consumer) {
+        findStats(uris, start, end, unique, exact).stream()
+                .filter(stat -> after == null || after.isBefore(stat))
+                .limit(limit == null ? Long.MAX_VALUE : limit)
+                .forEach(consumer);
+    }
+
+    // Интервал хита вычисляется при сканировании, поэтому ряд любого шага строится за один проход по сегментам
+    @Override
+    public List<StatsSeriesOutputDto> findSeries(List<String> uris,
+                                                 LocalDateTime start,
+                                                 LocalDateTime end,
+                                                 Duration step,
+                                                 boolean unique) {
+        BitSet filter = uriFilter(uris);
+        if (filter != null && filter.isEmpty()) {
+            return List.of();
+        }
+
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end) - 1; // scan включает правую границу, а ряд строится по [start, end)
+        long stepSeconds = step.toSeconds();
+        ScanKey<SeriesKey> seriesKey = (timestamp, appId, uriId) ->
+                new SeriesKey(appId, uriId, (int) ((timestamp - from) / stepSeconds));
+        Map<SeriesKey, Long> hitsByBucket = unique
+                ? aggregate(from, to, filter, Aggregation.SKETCH, seriesKey)
+                : aggregate(from, to, filter, Aggregation.COUNT, seriesKey);
+
+        return SeriesAssembler.assemble(hitsByBucket, start, step, SeriesAssembler.bucketCount(start, end, step),
+                dictionary::appName, dictionary::uri);
+    }
+
+    @Override
+    public List<String> findResourceUris(String type, List<Long> ids) {
+        List<String> uris = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            String uri = "/" + type + "/" + id;
+            if (dictionary.findUriId(uri) != null) {
+                uris.add(uri);
+            }
+        }
+        return uris;
+    }
+
+    // null - без фильтра; пустой набор - ни один из uri хранилищу не известен
+    private BitSet uriFilter(List<String> uris) {
+        if (uris == null) {
+            return null;
+        }
+        BitSet filter = new BitSet();
+        for (String uri : uris) {
+            if (UriTrie.isPattern(uri)) {
+                dictionary.matchUriIds(uri).forEach(filter::set);
+                continue;
+            }
+            Integer uriId = dictionary.findUriId(uri);
+            if (uriId != null) {
+                filter.set(uriId);
+            }
+        }
+        return filter;
+    }
+
+    // Каждый подходящий сегмент сканируется в своей задаче, частичные результаты объединяются
+    private <K, T> Map<K, Long> aggregate(long from, long to, BitSet filter, Aggregation<T> aggregation, ScanKey<K> scanKey) {
+        List<Future<Map<K, T>>> partials = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.isEmpty() || !segment.overlaps(from, to) || (filter != null && !segment.containsAny(filter))) {
+                continue;
+            }
+            partials.add(scanExecutor.submit(() -> {
+                Map<K, T> partial = new HashMap<>();
+                segment.scan(from, to, filter, aggregation.needsIp(), (timestamp, appId, uriId, ip) ->
+                        aggregation.add(partial.computeIfAbsent(scanKey.of(timestamp, appId, uriId),
+                                key -> aggregation.create()), ip));
+                return partial;
+            }));
+        }
+
+        Map<K, T> merged = new HashMap<>();
+        try {
+            for (Future<Map<K, T>> partial : partials) {
+                partial.get().forEach((key, state) -> merged.merge(key, state, (left, right) -> {
+                    aggregation.merge(left, right);
+                    return left;
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Сканирование сегментов прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка сканирования сегментов", e.getCause());
+        }
+
+        Map<K, Long> result = new HashMap<>();
+        merged.forEach((key, state) -> result.put(key, aggregation.result(state)));
+        return result;
+    }
+
+    private long replay() {
+        int batchSize = properties.getReplayBatchSize();
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        long[] replayed = {0};
+        for (Segment segment : segments) {
+            segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, null, true, (timestamp, appId, uriId, ip) -> {
+                EndpointHit hit = new EndpointHit();
+                hit.setApp(dictionary.appName(appId));
+                hit.setUri(dictionary.uri(uriId));
+                hit.setIp(ip);
+                hit.setTimestamp(LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC));
+                batch.add(hit);
+                replayed[0]++;
+                if (batch.size() >= batchSize) {
+                    notifyListeners(batch);
+                    batch.clear();
+                }
+            });
+        }
+        notifyListeners(batch);
+        return replayed[0];
+    }
+
+    private void notifyListeners(List<EndpointHit> hits) {
+        for (HitListener hitListener : hitListeners) {
+            hitListener.onHits(hits);
+        }
+    }
+
+    private Segment createSegment() throws IOException {
+        Path file = properties.getDirectory()
+                .resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segments.size() + 1, SEGMENT_SUFFIX));
+        Segment segment = Segment.open(file, segmentSize());
+        segments.add(segment);
+        return segment;
+    }
+
+    private int segmentSize() {
+        return (int) properties.getSegmentSize().toBytes();
+    }
+
+    // Время хранится как локальное время с точностью до секунды, как и в колонке timestamp движка jpa
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // IP уже проверен и нормализован при приеме, поэтому разбор литерала не обращается к DNS
+    private static byte[] toAddress(String ip) {
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректный IP-адрес: " + ip, e);
+        }
+    }
+
+    // Ключ группировки хита при сканировании
+    @FunctionalInterface
+    private interface ScanKey<K> {
+
+        K of(long timestamp, int appId, int uriId);
+    }
+
+    // Способ свертки хитов одного (app, uri): количество, точное множество IP или скетч IP
+    private interface Aggregation<T> {
+
+        Aggregation<long[]> COUNT = new Aggregation<>() {
+            @Override
+            public boolean needsIp() {
+                return false;
+            }
+
+            @Override
+            public long[] create() {
+                return new long[1];
+            }
+
+            @Override
+            public void add(long[] state, String ip) {
+                state[0]++;
+            }
+
+            @Override
+            public void merge(long[] into, long[] other) {
+                into[0] += other[0];
+            }
+
+            @Override
+            public long result(long[] state) {
+                return state[0];
+            }
+        };
+
+        Aggregation<Set<String>> DISTINCT = new Aggregation<>() {
+            @Override
+            public boolean needsIp() {
+                return true;
+            }
+
+            @Override
+            public Set<String> create() {
+                return new HashSet<>();
+            }
+
+            @Override
+            public void add(Set<String> state, String ip) {
+                state.add(ip);
+            }
+
+            @Override
+            public void merge(Set<String> into, Set<String> other) {
+                into.addAll(other);
+            }
+
+            @Override
+            public long result(Set<String> state) {
+                return state.size();
+            }
+        };
+
+        Aggregation<HyperLogLog> SKETCH = new Aggregation<>() {
+            @Override
+            public boolean needsIp() {
+                return true;
+            }
+
+            @Override
+            public HyperLogLog create() {
+                return new HyperLogLog();
+            }
+
+            @Override
+            public void add(HyperLogLog state, String ip) {
+                state.add(ip);
+            }
+
+            @Override
+            public void merge(HyperLogLog into, HyperLogLog other) {
+                into.merge(other);
+            }
+
+            @Override
+            public long result(HyperLogLog state) {
+                return state.estimate();
+            }
+        };
+
+        boolean needsIp();
+
+        T create();
+
+        void add(T state, String ip);
+
+        void merge(T into, T other);
+
+        long result(T state);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.ewm.store.segment;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.store.segment")
+public class SegmentStoreProperties {
+
+    private Path directory = Path.of("data", "segments"); // Каталог с файлами сегментов и словарем
+
+    private DataSize segmentSize = DataSize.ofMegabytes(64); // Размер одного сегмента, не больше 2 ГБ
+
+    private int scanThreads = Runtime.getRuntime().availableProcessors(); // Потоки параллельного сканирования сегментов
+
+    private int replayBatchSize = 10_000; // Размер пачки при восстановлении счетчиков и топа из сегментов при старте
+}
@@ -0,0 +1,86 @@
+package ru.practicum.ewm.topk;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.repository.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Приближенный топ самых посещаемых uri по каждому сервису и окну, обновляется при записи каждой пачки хитов
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HitTopK implements HitListener {
+
+    private final TopKProperties properties;
+    private final ObjectProvider<RollupRepository> rollupRepository;
+    private final ObjectProvider<HitDictionary> hitDictionary;
+    private final Map<String, Map<TopWindow, WindowRing>> ringsByApp = new ConcurrentHashMap<>();
+
+    // Окна заполняются из агрегатов до начала приема хитов, дальше их ведет только onHits.
+    // Агрегаты есть только у движка jpa; движок segment восстанавливает слушателей повтором хитов
+    @PostConstruct
+    public void warmUp() {
+        RollupRepository rollups = rollupRepository.getIfAvailable();
+        HitDictionary dictionary = hitDictionary.getIfAvailable();
+        if (!properties.isWarmUp() || rollups == null || dictionary == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (TopWindow window : TopWindow.values()) {
+            LocalDateTime from = window.getLength() == null
+                    ? null
+                    : window.getSourceGranularity().truncate(now.minus(window.getLength()));
+            rollups.forEachBucket(window.getSourceGranularity(), from, bucket ->
+                    ring(dictionary.appName(bucket.appId()), window).add(bucket.bucketStart(),
+                            dictionary.uri(bucket.uriId()).uri(), bucket.hits(), now));
+        }
+        log.info("Топ посещаемых uri прогрет из агрегатов для {} сервисов", ringsByApp.size());
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        LocalDateTime now = LocalDateTime.now();
+        for (EndpointHit hit : hits) {
+            for (TopWindow window : TopWindow.values()) {
+                ring(hit.getApp(), window).add(hit.getTimestamp(), hit.getUri(), 1, now);
+            }
+        }
+    }
+
+    // Оценка hits завышена не более чем на погрешность Space-Saving; при k <= capacity частые uri не теряются
+    public List<ViewStatsOutputDto> top(String app, TopWindow window, int k) {
+        Map<TopWindow, WindowRing> rings = ringsByApp.get(app);
+        if (rings == null) {
+            return List.of();
+        }
+
+        List<ViewStatsOutputDto> top = new ArrayList<>(k);
+        for (SpaceSaving.Entry entry : rings.get(window).snapshot(LocalDateTime.now()).top(k)) {
+            top.add(new ViewStatsOutputDto(app, entry.item(), entry.count()));
+        }
+        return top;
+    }
+
+    private WindowRing ring(String app, TopWindow window) {
+        return ringsByApp.computeIfAbsent(app, key -> {
+            Map<TopWindow, WindowRing> rings = new EnumMap<>(TopWindow.class);
+            for (TopWindow w : TopWindow.values()) {
+                rings.put(w, new WindowRing(w, properties.getCapacity(), properties.getSnapshotTtl()));
+            }
+            return rings;
+        }).get(window);
+    }
+}
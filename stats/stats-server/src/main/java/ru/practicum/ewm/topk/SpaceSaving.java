@@ -0,0 +1,98 @@
+package ru.practicum.ewm.topk;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Алгоритм Space-Saving (Metwally et al.): хранит не более capacity счетчиков и находит самые частые элементы потока.
+// При вытеснении новый элемент наследует счетчик минимального, поэтому оценка завышена не более чем на error.
+// Любой элемент с частотой больше N / capacity гарантированно присутствует. Не потокобезопасен
+public class SpaceSaving {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator
+            .comparingLong((Counter counter) -> counter.count)
+            .thenComparingLong(counter -> counter.id);
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+    private long nextId;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Емкость Space-Saving должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public void offer(String item, long weight) {
+        offer(item, weight, 0);
+    }
+
+    // Слияние сводок: веса суммируются, накопленная погрешность переносится вместе с элементом
+    public void merge(SpaceSaving other) {
+        for (Counter counter : other.counters.values()) {
+            offer(counter.item, counter.count, counter.error);
+        }
+    }
+
+    // Самые частые элементы по убыванию оценки
+    public List<Entry> top(int k) {
+        List<Entry> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> iterator = byCount.descendingIterator();
+        while (iterator.hasNext() && top.size() < k) {
+            Counter counter = iterator.next();
+            top.add(new Entry(counter.item, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    public void clear() {
+        counters.clear();
+        byCount.clear();
+    }
+
+    private void offer(String item, long weight, long error) {
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            counter.error += error;
+        } else if (counters.size() < capacity) {
+            counter = new Counter(item, weight, error, nextId++);
+            counters.put(item, counter);
+        } else {
+            Counter evicted = byCount.pollFirst();
+            counters.remove(evicted.item);
+            counter = new Counter(item, evicted.count + weight, evicted.count + error, nextId++);
+            counters.put(item, counter);
+        }
+        byCount.add(counter);
+    }
+
+    // count - оценка частоты сверху, count - error - гарантированная нижняя граница
+    public record Entry(String item, long count, long error) {
+    }
+
+    private static final class Counter {
+        private final String item;
+        private final long id;
+        private long count;
+        private long error;
+
+        private Counter(String item, long count, long error, long id) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.id = id;
+        }
+    }
+}
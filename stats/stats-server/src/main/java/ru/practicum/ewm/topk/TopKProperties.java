@@ -0,0 +1,19 @@
+package ru.practicum.ewm.topk;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.top")
+public class TopKProperties {
+
+    private int capacity = 1_000; // Счетчиков Space-Saving на один слот окна; это же максимальное k в запросе
+
+    private Duration snapshotTtl = Duration.ofSeconds(1); // Сколько переиспользуется объединенная сводка окна
+
+    private boolean warmUp = true; // Заполнять окна из таблиц агрегатов при старте
+}
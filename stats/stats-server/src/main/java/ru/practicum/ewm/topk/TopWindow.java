@@ -0,0 +1,37 @@
+package ru.practicum.ewm.topk;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Скользящие окна топа: окно состоит из slots слотов длиной slot, текущий слот заполняется по мере записи.
+// sourceGranularity - таблица агрегатов, из которой окно прогревается при старте
+@Getter
+@RequiredArgsConstructor
+public enum TopWindow {
+    HOUR("1h", Duration.ofMinutes(5), 12, RollupGranularity.MINUTE),
+    DAY("24h", Duration.ofHours(1), 24, RollupGranularity.HOUR),
+    WEEK("7d", Duration.ofDays(1), 7, RollupGranularity.HOUR),
+    ALL("all", null, 1, RollupGranularity.DAY);
+
+    private final String code; // Значение параметра window в запросе
+    private final Duration slot; // Длина слота; null - окно за все время без вытеснения
+    private final int slots; // Количество слотов в окне
+    private final RollupGranularity sourceGranularity;
+
+    public static Optional<TopWindow> fromCode(String code) {
+        for (TopWindow window : values()) {
+            if (window.code.equals(code)) {
+                return Optional.of(window);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Duration getLength() {
+        return slot == null ? null : slot.multipliedBy(slots);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.ewm.topk;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// Кольцо слотов одного окна: слот переиспользуется, когда время уходит дальше длины окна.
+// Хиты старше окна отбрасываются, хиты из будущего учитываются в текущем слоте
+final class WindowRing {
+
+    private final TopWindow window;
+    private final int capacity;
+    private final SpaceSaving[] slots;
+    private final long[] epochs;
+    private final long snapshotTtlNanos;
+
+    private SpaceSaving snapshot;
+    private long snapshotAt;
+
+    WindowRing(TopWindow window, int capacity, Duration snapshotTtl) {
+        this.window = window;
+        this.capacity = capacity;
+        this.snapshotTtlNanos = snapshotTtl.toNanos();
+        this.slots = new SpaceSaving[window.getSlots()];
+        this.epochs = new long[window.getSlots()];
+        Arrays.fill(epochs, Long.MIN_VALUE);
+    }
+
+    synchronized void add(LocalDateTime timestamp, String uri, long weight, LocalDateTime now) {
+        long current = epoch(now);
+        long epoch = Math.min(epoch(timestamp), current);
+        if (epoch <= current - slots.length) {
+            return;
+        }
+
+        int index = (int) Math.floorMod(epoch, (long) slots.length);
+        if (epochs[index] != epoch) {
+            if (epochs[index] > epoch) {
+                return;
+            }
+            if (slots[index] == null) {
+                slots[index] = new SpaceSaving(capacity);
+            } else {
+                slots[index].clear();
+            }
+            epochs[index] = epoch;
+        }
+        slots[index].offer(uri, weight);
+    }
+
+    // Сводка по всем слотам, попадающим в окно на момент now. Слияние слотов стоит миллисекунды,
+    // поэтому результат переиспользуется в течение snapshotTtl и запрос топа отвечает сразу
+    synchronized SpaceSaving snapshot(LocalDateTime now) {
+        long nanos = System.nanoTime();
+        if (snapshot == null || nanos - snapshotAt >= snapshotTtlNanos) {
+            snapshot = merge(now);
+            snapshotAt = nanos;
+        }
+        return snapshot;
+    }
+
+    private SpaceSaving merge(LocalDateTime now) {
+        long current = epoch(now);
+        SpaceSaving merged = new SpaceSaving(capacity);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null && epochs[i] > current - slots.length && epochs[i] <= current) {
+                merged.merge(slots[i]);
+            }
+        }
+        return merged;
+    }
+
+    private long epoch(LocalDateTime time) {
+        if (window.getSlot() == null) {
+            return 0;
+        }
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), window.getSlot().toSeconds());
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.ewm.trending;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.trending")
+public class TrendingProperties {
+
+    private Duration halfLife = Duration.ofHours(6); // За это время вклад хита в популярность уменьшается вдвое
+
+    private double evictBelow = 0.01; // uri с меньшей текущей популярностью удаляются при очистке
+
+    private Duration sweepInterval = Duration.ofMinutes(10); // Период очистки затухших uri
+
+    private int maxK = 1_000; // Максимальное k в запросе топа
+
+    private boolean warmUp = true; // Восстанавливать популярность из часовых агрегатов при старте
+}
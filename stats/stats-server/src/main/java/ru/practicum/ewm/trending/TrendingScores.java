@@ -0,0 +1,205 @@
+package ru.practicum.ewm.trending;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.TrendingOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Популярность uri с экспоненциальным затуханием: хит в момент t весит 2^(-(now - t) / halfLife).
+// Хранится сумма весов относительно опорного момента landmark (прямое затухание), поэтому хит
+// добавляется одним сложением, а порядок uri от момента запроса не зависит. Когда веса новых хитов
+// становятся слишком большими для double, все суммы пересчитываются к новому опорному моменту
+@Component
+@Slf4j
+public class TrendingScores implements HitListener {
+
+    private static final Comparator<TrendingOutputDto> ORDER = Comparator
+            .comparingDouble(TrendingOutputDto::getScore).reversed()
+            .thenComparing(TrendingOutputDto::getApp)
+            .thenComparing(TrendingOutputDto::getUri);
+
+    private static final double REBASE_EXPONENT = 64; // e^64 ~ 6e27, запас точности double еще велик
+
+    private final TrendingProperties properties;
+    private final ObjectProvider<RollupRepository> rollupRepository;
+    private final ObjectProvider<HitDictionary> hitDictionary;
+    private final Map<String, Map<String, DoubleAdder>> scoresByUri = new ConcurrentHashMap<>();
+    // Хиты добавляются под блокировкой чтения, пересчет к новому landmark и очистка - под блокировкой записи
+    private final ReadWriteLock landmarkLock = new ReentrantReadWriteLock();
+    private final double lambda;
+
+    private volatile long landmark;
+
+    public TrendingScores(TrendingProperties properties,
+                          ObjectProvider<RollupRepository> rollupRepository,
+                          ObjectProvider<HitDictionary> hitDictionary) {
+        if (properties.getHalfLife().toSeconds() <= 0) {
+            throw new IllegalStateException("stats.trending.half-life должен быть не меньше секунды");
+        }
+        this.properties = properties;
+        this.rollupRepository = rollupRepository;
+        this.hitDictionary = hitDictionary;
+        this.lambda = Math.log(2) / properties.getHalfLife().toSeconds();
+        this.landmark = epochSecond(LocalDateTime.now());
+    }
+
+    // Популярность восстанавливается из часовых агрегатов за период, после которого вклад хитов ничтожен.
+    // Хиты бакета считаются пришедшими в его середине. Движок segment восстанавливает слушателей повтором хитов
+    @PostConstruct
+    public void warmUp() {
+        RollupRepository rollups = rollupRepository.getIfAvailable();
+        HitDictionary dictionary = hitDictionary.getIfAvailable();
+        if (!properties.isWarmUp() || rollups == null || dictionary == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long nowSecond = epochSecond(now);
+        LocalDateTime from = RollupGranularity.HOUR.truncate(now.minus(properties.getHalfLife().multipliedBy(32)));
+        long halfHour = RollupGranularity.HOUR.getUnit().getDuration().toSeconds() / 2;
+        rollups.forEachBucket(RollupGranularity.HOUR, from, bucket -> add(dictionary.appName(bucket.appId()),
+                dictionary.uri(bucket.uriId()).uri(), bucket.hits(),
+                Math.min(epochSecond(bucket.bucketStart()) + halfHour, nowSecond)));
+        log.info("Популярность восстановлена из агрегатов для {} uri", scoresByUri.size());
+    }
+
+    @Override
+    public void onHits(List<EndpointHit> hits) {
+        long now = epochSecond(LocalDateTime.now());
+        rebaseIfNeeded(now);
+        landmarkLock.readLock().lock();
+        try {
+            for (EndpointHit hit : hits) {
+                // Хиты из будущего (рассинхронизация часов клиента) не должны получать вес больше единицы
+                add(hit.getApp(), hit.getUri(), 1, Math.min(epochSecond(hit.getTimestamp()), now));
+            }
+        } finally {
+            landmarkLock.readLock().unlock();
+        }
+    }
+
+    // Самые популярные сейчас uri; app = null - по всем сервисам
+    public List<TrendingOutputDto> top(String app, int k) {
+        PriorityQueue<TrendingOutputDto> top = new PriorityQueue<>(k + 1, ORDER.reversed());
+        landmarkLock.readLock().lock();
+        try {
+            double decay = decayToNow();
+            scoresByUri.forEach((uri, byApp) -> byApp.forEach((uriApp, score) -> {
+                if (app == null || app.equals(uriApp)) {
+                    top.add(new TrendingOutputDto(uriApp, uri, score.sum() * decay));
+                    if (top.size() > k) {
+                        top.poll();
+                    }
+                }
+            }));
+        } finally {
+            landmarkLock.readLock().unlock();
+        }
+
+        List<TrendingOutputDto> result = new ArrayList<>(top);
+        result.sort(ORDER);
+        return result;
+    }
+
+    // Текущая популярность заданных uri; uri без хитов в ответ не попадают
+    public List<TrendingOutputDto> scores(String app, List<String> uris) {
+        List<TrendingOutputDto> result = new ArrayList<>();
+        landmarkLock.readLock().lock();
+        try {
+            double decay = decayToNow();
+            for (String uri : uris) {
+                Map<String, DoubleAdder> byApp = scoresByUri.get(uri);
+                if (byApp == null) {
+                    continue;
+                }
+                byApp.forEach((uriApp, score) -> {
+                    if (app == null || app.equals(uriApp)) {
+                        result.add(new TrendingOutputDto(uriApp, uri, score.sum() * decay));
+                    }
+                });
+            }
+        } finally {
+            landmarkLock.readLock().unlock();
+        }
+        result.sort(ORDER);
+        return result;
+    }
+
+    // Удаляет uri, популярность которых затухла; заодно переносит landmark, если хитов давно не было
+    @Scheduled(initialDelayString = "${stats.trending.sweep-interval:PT10M}",
+            fixedDelayString = "${stats.trending.sweep-interval:PT10M}")
+    public void sweep() {
+        rebaseIfNeeded(epochSecond(LocalDateTime.now()));
+        int evicted = 0;
+        landmarkLock.writeLock().lock();
+        try {
+            double threshold = properties.getEvictBelow() / decayToNow();
+            for (Map.Entry<String, Map<String, DoubleAdder>> entry : scoresByUri.entrySet()) {
+                Map<String, DoubleAdder> byApp = entry.getValue();
+                int before = byApp.size();
+                byApp.values().removeIf(score -> score.sum() < threshold);
+                evicted += before - byApp.size();
+                if (byApp.isEmpty()) {
+                    scoresByUri.remove(entry.getKey());
+                }
+            }
+        } finally {
+            landmarkLock.writeLock().unlock();
+        }
+        if (evicted > 0) {
+            log.debug("Удалено затухших записей популярности: {}", evicted);
+        }
+    }
+
+    private void add(String app, String uri, double hits, long timestamp) {
+        scoresByUri.computeIfAbsent(uri, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(app, key -> new DoubleAdder())
+                .add(hits * Math.exp(lambda * (timestamp - landmark)));
+    }
+
+    private void rebaseIfNeeded(long now) {
+        if (lambda * (now - landmark) < REBASE_EXPONENT) {
+            return;
+        }
+        landmarkLock.writeLock().lock();
+        try {
+            if (lambda * (now - landmark) < REBASE_EXPONENT) {
+                return;
+            }
+            double factor = Math.exp(-lambda * (now - landmark));
+            scoresByUri.values().forEach(byApp -> byApp.values().forEach(score -> {
+                double rebased = score.sumThenReset() * factor;
+                score.add(rebased);
+            }));
+            landmark = now;
+        } finally {
+            landmarkLock.writeLock().unlock();
+        }
+    }
+
+    private double decayToNow() {
+        return Math.exp(-lambda * (epochSecond(LocalDateTime.now()) - landmark));
+    }
+
+    private static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -1,11 +1,133 @@
-DROP TABLE if EXISTS endpoint_hit;
+-- Схема создается при каждом старте узла и только дополняется: таблицы с хитами, агрегатами, контрольными
+-- точками и отметками загруженных пачек переживают перезапуск. Сбросить данные можно только вручную
 
 
+-- Словари сервисов и URI: хиты и агрегаты хранят вместо строк целые идентификаторы.
+-- Для URI вида /{resource_type}/{resource_id} тип и идентификатор ресурса выделены в отдельные колонки
+CREATE TABLE IF NOT EXISTS app_dictionary
+(
+    id   INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    name VARCHAR(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uri_dictionary
+(
+    id            INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    uri           VARCHAR(100) NOT NULL UNIQUE,
+    resource_type VARCHAR(50),
+    resource_id   BIGINT
+);
+
+CREATE INDEX IF NOT EXISTS uri_dictionary_resource_idx ON uri_dictionary (resource_type, resource_id);
+
+
+-- До секционирования endpoint_hit была обычной таблицей со строками app, uri и ip. Если такая таблица осталась
+-- на томе, она переименовывается в endpoint_hit_legacy вместе с ключом и последовательностью, чтобы освободить
+-- имена; ее хиты после старта узла переносит HitBulkService, затем таблица удаляется.
+-- Тело DO в одинарных кавычках: скрипт делится на команды по точке с запятой вне кавычек
+DO '
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext(''endpoint_hit_legacy''));
+    IF EXISTS (SELECT 1 FROM pg_class WHERE oid = to_regclass(''endpoint_hit'') AND relkind = ''r'') THEN
+        ALTER TABLE endpoint_hit RENAME TO endpoint_hit_legacy;
+        ALTER INDEX IF EXISTS endpoint_hit_pkey RENAME TO endpoint_hit_legacy_pkey;
+        ALTER SEQUENCE IF EXISTS endpoint_hit_id_seq RENAME TO endpoint_hit_legacy_id_seq;
+    END IF;
+END';
+
+-- Сырые хиты секционированы по дням; секции создает и удаляет PartitionManager,
+-- в секцию по умолчанию попадают хиты, для дня которых секции еще нет
 CREATE TABLE IF NOT EXISTS endpoint_hit
 (
-    id        BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id        BIGINT GENERATED ALWAYS AS IDENTITY,
+    app_id    INT                         NOT NULL,
+    uri_id    INT                         NOT NULL,
+    ip        INET                        NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hit_count INT                         NOT NULL DEFAULT 1, -- Одинаковые хиты окна сжатия хранятся одной строкой
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hit_default PARTITION OF endpoint_hit DEFAULT;
+
+-- Индексы создаются в каждой секции; нужны для дешевого чтения сырых краев диапазона
+CREATE INDEX IF NOT EXISTS endpoint_hit_timestamp_idx ON endpoint_hit (timestamp);
+CREATE INDEX IF NOT EXISTS endpoint_hit_uri_timestamp_idx ON endpoint_hit (uri_id, timestamp);
+
+
+-- Агрегаты хитов по бакетам, обновляются инкрементально при записи каждой пачки хитов.
+-- Часовые и дневные бакеты дополнительно хранят скетч HyperLogLog уникальных IP, а при включенной
+-- дедупликации хитов таблица ее окна - счетчик первых посещений (app, uri, ip) в бакете
+CREATE TABLE IF NOT EXISTS endpoint_hit_minute
+(
+    app_id       INT                         NOT NULL,
+    uri_id       INT                         NOT NULL,
+    bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits         BIGINT                      NOT NULL,
+    PRIMARY KEY (uri_id, bucket_start, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_hit_hour
+(
+    app_id       INT                         NOT NULL,
+    uri_id       INT                         NOT NULL,
+    bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits         BIGINT                      NOT NULL,
+    ip_sketch    BYTEA,
+    unique_hits  BIGINT                      NOT NULL DEFAULT 0,
+    PRIMARY KEY (uri_id, bucket_start, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_hit_day
+(
+    app_id       INT                         NOT NULL,
+    uri_id       INT                         NOT NULL,
+    bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits         BIGINT                      NOT NULL,
+    ip_sketch    BYTEA,
+    unique_hits  BIGINT                      NOT NULL DEFAULT 0,
+    PRIMARY KEY (uri_id, bucket_start, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS endpoint_hit_minute_bucket_idx ON endpoint_hit_minute (bucket_start);
+CREATE INDEX IF NOT EXISTS endpoint_hit_hour_bucket_idx ON endpoint_hit_hour (bucket_start);
+CREATE INDEX IF NOT EXISTS endpoint_hit_day_bucket_idx ON endpoint_hit_day (bucket_start);
+
+
+-- Контрольная точка in-memory счетчиков за все время; при старте к ней дочитываются хиты с id > last_hit_id
+CREATE TABLE IF NOT EXISTS hit_counter_checkpoint
+(
+    app       VARCHAR(100) NOT NULL,
+    uri       VARCHAR(100) NOT NULL,
+    hits      BIGINT       NOT NULL,
+    ip_sketch BYTEA        NOT NULL,
+    PRIMARY KEY (uri, app)
+);
+
+CREATE TABLE IF NOT EXISTS hit_counter_watermark
+(
+    id          INT PRIMARY KEY,
+    last_hit_id BIGINT                      NOT NULL,
+    created_at  TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+
+-- Массовая загрузка хитов: подготовленные, но еще не перенесенные в endpoint_hit хиты пачек
+-- и отметки о загруженных пачках, по которым повторная загрузка той же пачки пропускается
+CREATE UNLOGGED TABLE IF NOT EXISTS hit_import_staging
+(
+    batch_id  VARCHAR(100)                NOT NULL,
     app       VARCHAR(100)                NOT NULL,
     uri       VARCHAR(100)                NOT NULL,
-    ip        VARCHAR(100)                NOT NULL,
+    ip        INET                        NOT NULL,
     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
 );
+
+CREATE INDEX IF NOT EXISTS hit_import_staging_batch_idx ON hit_import_staging (batch_id, timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_import_batch
+(
+    batch_id    VARCHAR(100) PRIMARY KEY,
+    hits        BIGINT                      NOT NULL,
+    imported_at TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
@@ -0,0 +1,141 @@
+package ru.practicum.ewm.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsQueryCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    private QueryCacheProperties properties;
+    private StatsQueryCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        properties = new QueryCacheProperties();
+        properties.setMaxStaleness(Duration.ZERO);
+        cache = new StatsQueryCache(properties, new SimpleMeterRegistry());
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void repeatedQueryIsServedFromCache() {
+        query(List.of("/events/1"));
+        query(List.of("/events/1"));
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void batchWithQueriedUriMakesResultStale() {
+        query(List.of("/events/1", "/events/2"));
+        cache.onHits(List.of(hit("/events/2")));
+        query(List.of("/events/1", "/events/2"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void batchWithOtherUriKeepsResultFresh() {
+        query(List.of("/events/1"));
+        cache.onHits(List.of(hit("/events/2")));
+        query(List.of("/events/1"));
+
+        assertThat(loads).hasValue(1);
+    }
+
+    // Запрос по всем uri или по шаблону устаревает от любой пачки
+    @Test
+    void patternAndAllUriQueriesGoStaleOnAnyBatch() {
+        query(null);
+        query(List.of("/events/*"));
+        cache.onHits(List.of(hit("/users/1")));
+        query(null);
+        query(List.of("/events/*"));
+
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void staleResultIsServedWithinMaxStaleness() {
+        properties.setMaxStaleness(Duration.ofMinutes(1));
+        query(List.of("/events/1"));
+        cache.onHits(List.of(hit("/events/1")));
+        query(List.of("/events/1"));
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void invalidateMakesResultStale() {
+        query(List.of("/events/1"));
+        cache.invalidate(List.of("/events/1"));
+        query(List.of("/events/1"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        properties.setEnabled(false);
+        query(List.of("/events/1"));
+        query(List.of("/events/1"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    // Водяные знаки не копятся для каждого uri, когда-либо получившего хиты
+    @Test
+    void uriWatermarksStayBounded() {
+        properties.setMaxEntries(100);
+        for (int i = 0; i < 10_000; i++) {
+            cache.onHits(List.of(hit("/events/" + i)));
+        }
+
+        assertThat(cache.watermarkCount()).isLessThanOrEqualTo(2 * properties.getMaxEntries());
+    }
+
+    // Удаление знаков не должно делать свежим результат, чьи uri получили хиты после него
+    @Test
+    void pruningNeverMakesStaleResultFresh() {
+        properties.setMaxEntries(100);
+        query(List.of("/events/old"));
+        cache.onHits(List.of(hit("/events/old")));
+        for (int i = 0; i < 10_000; i++) {
+            cache.onHits(List.of(hit("/events/" + i)));
+        }
+        query(List.of("/events/old"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private List<ViewStatsOutputDto> query(List<String> uris) {
+        Supplier<List<ViewStatsOutputDto>> loader = () -> {
+            loads.incrementAndGet();
+            return List.of(new ViewStatsOutputDto("ewm-main-service", "/events/1", loads.get()));
+        };
+        return cache.get(uris, START, END, false, false, loader);
+    }
+
+    private static EndpointHit hit(String uri) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp("ewm-main-service");
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        hit.setTimestamp(END);
+        return hit;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.practicum.ewm.compaction;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class HitCompactorTest {
+
+    private static final LocalDateTime MINUTE = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void identicalHitsOfOneWindowBecomeOneRow() {
+        HitCompactor compactor = compactor(true, Duration.ofSeconds(1));
+        List<EndpointHit> hits = List.of(
+                hit(7, "10.0.0.1", MINUTE),
+                hit(7, "10.0.0.1", MINUTE),
+                hit(7, "10.0.0.2", MINUTE),
+                hit(8, "10.0.0.1", MINUTE),
+                hit(7, "10.0.0.1", MINUTE.plusSeconds(1)));
+
+        List<EndpointHit> rows = compactor.compact(hits);
+
+        assertThat(rows).extracting(EndpointHit::getUriId, EndpointHit::getIp, EndpointHit::getTimestamp, EndpointHit::getHitCount)
+                .containsExactly(
+                        tuple(7, "10.0.0.1", MINUTE, 2),
+                        tuple(7, "10.0.0.2", MINUTE, 1),
+                        tuple(8, "10.0.0.1", MINUTE, 1),
+                        tuple(7, "10.0.0.1", MINUTE.plusSeconds(1), 1));
+        assertThat(counter("written")).isEqualTo(4);
+        assertThat(counter("merged")).isEqualTo(1);
+    }
+
+    @Test
+    void rowKeepsEarliestTimestampAndSourceHitsAreUntouched() {
+        HitCompactor compactor = compactor(true, Duration.ofSeconds(10));
+        EndpointHit later = hit(7, "10.0.0.1", MINUTE.plusSeconds(8));
+        EndpointHit earlier = hit(7, "10.0.0.1", MINUTE.plusSeconds(2));
+
+        List<EndpointHit> rows = compactor.compact(List.of(later, earlier));
+
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.getTimestamp()).isEqualTo(MINUTE.plusSeconds(2));
+            assertThat(row.getHitCount()).isEqualTo(2);
+        });
+        assertThat(later.getHitCount()).isEqualTo(1);
+        assertThat(later.getTimestamp()).isEqualTo(MINUTE.plusSeconds(8));
+    }
+
+    @Test
+    void disabledCompactionReturnsHitsAsIs() {
+        HitCompactor compactor = compactor(false, Duration.ofSeconds(1));
+        List<EndpointHit> hits = List.of(hit(7, "10.0.0.1", MINUTE), hit(7, "10.0.0.1", MINUTE));
+
+        assertThat(compactor.compact(hits)).isSameAs(hits);
+    }
+
+    @Test
+    void repeatsCollapseWithinMinuteSeparatelyFromFirstVisits() {
+        HitCompactor compactor = compactor(false, Duration.ofSeconds(1));
+        EndpointHit first = hit(7, "10.0.0.1", MINUTE.plusSeconds(5));
+        EndpointHit repeat = repeat(hit(7, "10.0.0.1", MINUTE.plusSeconds(20)));
+        EndpointHit anotherRepeat = repeat(hit(7, "10.0.0.1", MINUTE.plusSeconds(50)));
+        EndpointHit nextMinute = repeat(hit(7, "10.0.0.1", MINUTE.plusSeconds(61)));
+
+        List<EndpointHit> rows = compactor.compact(List.of(first, repeat, anotherRepeat, nextMinute), true);
+
+        assertThat(rows).extracting(EndpointHit::getTimestamp, EndpointHit::getHitCount)
+                .containsExactly(
+                        tuple(MINUTE.plusSeconds(5), 1),
+                        tuple(MINUTE.plusSeconds(20), 2),
+                        tuple(MINUTE.plusSeconds(61), 1));
+    }
+
+    @Test
+    void windowMustDivideMinute() {
+        assertThatThrownBy(() -> compactor(true, Duration.ofSeconds(7))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> compactor(true, Duration.ofMillis(1500))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> compactor(true, Duration.ZERO)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private HitCompactor compactor(boolean enabled, Duration window) {
+        CompactionProperties properties = new CompactionProperties();
+        properties.setEnabled(enabled);
+        properties.setWindow(window);
+        return new HitCompactor(properties, meterRegistry);
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("stats.ingestion.compaction").tag("result", result).counter().count();
+    }
+
+    private static EndpointHit repeat(EndpointHit hit) {
+        hit.setRepeat(true);
+        return hit;
+    }
+
+    private static EndpointHit hit(int uriId, String ip, LocalDateTime timestamp) {
+        EndpointHit hit = new EndpointHit();
+        hit.setAppId(1);
+        hit.setUriId(uriId);
+        hit.setIp(ip);
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.practicum.ewm.counter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.HitTotalsOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.ingest.HitWriter;
+import ru.practicum.ewm.model.HitCount;
+import ru.practicum.ewm.repository.CounterCheckpointRepository;
+import ru.practicum.ewm.repository.EndpointHitJdbcRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.sketch.HyperLogLog;
+import ru.practicum.ewm.store.StatsStore;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HitCountersCheckpointerTest {
+
+    private static final String APP = "ewm-main-service";
+
+    private final CounterProperties properties = new CounterProperties();
+    private final HitDictionary hitDictionary = mock(HitDictionary.class);
+    private final CounterCheckpointRepository checkpointRepository = mock(CounterCheckpointRepository.class);
+    private final EndpointHitJdbcRepository hitRepository = mock(EndpointHitJdbcRepository.class);
+    private final RollupRepository rollupRepository = mock(RollupRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private HitCounters hitCounters;
+    private HitCountersCheckpointer checkpointer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(hitDictionary.appName(1)).thenReturn(APP);
+        when(hitDictionary.uri(7)).thenReturn(new UriEntry(7, "/events/7", null));
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Consumer.class).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void sharedStorageBuildsCountersFromRollupsAndNeverWritesCheckpoint() {
+        properties.setSharedStorage(true);
+        HyperLogLog ips = new HyperLogLog(properties.getSketchPrecision());
+        ips.add("10.0.0.1");
+        ips.add("10.0.0.2");
+        doAnswer(invocation -> {
+            invocation.<BiConsumer<HitCount, HyperLogLog>>getArgument(1).accept(new HitCount(1, 7, 42), ips);
+            return null;
+        }).when(rollupRepository).forEachTotal(isNull(), any());
+        create();
+
+        checkpointer.rebuild();
+        checkpointer.checkpoint();
+
+        assertThat(hitCounters.getTotals(List.of("/events/7")))
+                .extracting(HitTotalsOutputDto::getHits, HitTotalsOutputDto::getUniqueHits)
+                .containsExactly(tuple(42L, 2L));
+        verifyNoInteractions(checkpointRepository, hitRepository);
+    }
+
+    @Test
+    void separateStorageRestoresCheckpointAndSavesSnapshot() {
+        HyperLogLog ips = new HyperLogLog(properties.getSketchPrecision());
+        ips.add("10.0.0.1");
+        when(checkpointRepository.findLastHitId()).thenReturn(10L);
+        when(checkpointRepository.findAll()).thenReturn(List.of(new CounterSnapshot(APP, "/events/7", 5, ips.toBytes())));
+        when(hitRepository.findMaxId()).thenReturn(12L);
+        create();
+
+        checkpointer.rebuild();
+        checkpointer.checkpoint();
+
+        assertThat(hitCounters.getTotals(List.of("/events/7")))
+                .singleElement().extracting(HitTotalsOutputDto::getHits).isEqualTo(5L);
+        verify(hitRepository).forEachHitAfter(eq(10L), anyInt(), any());
+        verify(checkpointRepository).replace(eq(12L), anyList());
+        verify(rollupRepository, never()).forEachTotal(any(), any());
+    }
+
+    private void create() {
+        hitCounters = new HitCounters(properties);
+        checkpointer = new HitCountersCheckpointer(hitCounters, new HitWriter(mock(StatsStore.class), List.of()),
+                hitDictionary, checkpointRepository, hitRepository, rollupRepository, properties, transactionTemplate);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.ewm.dedupe;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitDeduplicatorTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 2, 12, 30);
+
+    private HitDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        DedupeProperties properties = new DedupeProperties();
+        properties.setMode(DedupeMode.FLAG);
+        properties.setExpectedInsertions(10_000);
+        deduplicator = new HitDeduplicator(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void repeatWithinBatchIsMarked() {
+        List<EndpointHit> batch = List.of(hit("10.0.0.1", NOW), hit("10.0.0.1", NOW), hit("10.0.0.2", NOW));
+
+        deduplicator.mark(batch, NOW);
+
+        assertThat(batch).extracting(EndpointHit::isRepeat).containsExactly(false, true, false);
+    }
+
+    @Test
+    void savedBatchMakesLaterHitsRepeats() {
+        deduplicator.remember(deduplicator.mark(List.of(hit("10.0.0.1", NOW)), NOW));
+        List<EndpointHit> later = List.of(hit("10.0.0.1", NOW.plusMinutes(5)), hit("10.0.0.2", NOW));
+
+        deduplicator.mark(later, NOW);
+
+        assertThat(later).extracting(EndpointHit::isRepeat).containsExactly(true, false);
+    }
+
+    // Пока первая пачка не сохранена, параллельная пачка с тем же посетителем не получает второе первое посещение
+    @Test
+    void inFlightBatchMakesConcurrentHitsRepeats() {
+        DedupeMarks first = deduplicator.mark(List.of(hit("10.0.0.1", NOW)), NOW);
+        List<EndpointHit> concurrent = List.of(hit("10.0.0.1", NOW));
+
+        deduplicator.mark(concurrent, NOW);
+        deduplicator.remember(first);
+
+        assertThat(concurrent.getFirst().isRepeat()).isTrue();
+    }
+
+    @Test
+    void releasedBatchIsFirstVisitAgainOnRetry() {
+        DedupeMarks failed = deduplicator.mark(List.of(hit("10.0.0.1", NOW)), NOW);
+        deduplicator.release(failed);
+        List<EndpointHit> retry = List.of(hit("10.0.0.1", NOW));
+
+        deduplicator.mark(retry, NOW);
+
+        assertThat(retry.getFirst().isRepeat()).isFalse();
+    }
+
+    @Test
+    void sameVisitorInNextWindowIsFirstVisit() {
+        deduplicator.remember(deduplicator.mark(List.of(hit("10.0.0.1", NOW.minusDays(1))), NOW));
+        List<EndpointHit> today = List.of(hit("10.0.0.1", NOW));
+
+        deduplicator.mark(today, NOW);
+
+        assertThat(today.getFirst().isRepeat()).isFalse();
+    }
+
+    // Хиты вне живых окон считаются новыми и фильтры не меняют
+    @Test
+    void hitsOutsideRetainedWindowsAreNeverRepeats() {
+        LocalDateTime old = NOW.minusDays(5);
+        deduplicator.remember(deduplicator.mark(List.of(hit("10.0.0.1", old)), NOW));
+        List<EndpointHit> again = List.of(hit("10.0.0.1", old), hit("10.0.0.1", NOW.plusDays(1)));
+
+        deduplicator.mark(again, NOW);
+
+        assertThat(again).extracting(EndpointHit::isRepeat).containsExactly(false, false);
+    }
+
+    @Test
+    void disabledDeduplicatorMarksNothing() {
+        HitDeduplicator off = new HitDeduplicator(new DedupeProperties(), new SimpleMeterRegistry());
+        List<EndpointHit> batch = List.of(hit("10.0.0.1", NOW), hit("10.0.0.1", NOW));
+
+        assertThat(off.mark(batch, NOW)).isEqualTo(DedupeMarks.EMPTY);
+        assertThat(batch).extracting(EndpointHit::isRepeat).containsOnly(false);
+    }
+
+    @Test
+    void minuteWindowIsRejected() {
+        DedupeProperties properties = new DedupeProperties();
+        properties.setWindow(RollupGranularity.MINUTE);
+
+        assertThatThrownBy(() -> new HitDeduplicator(properties, new SimpleMeterRegistry()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static EndpointHit hit(String ip, LocalDateTime timestamp) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp("ewm-main-service");
+        hit.setUri("/events/1");
+        hit.setIp(ip);
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.ewm.dictionary;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class UriTrieTest {
+
+    private final UriTrie trie = new UriTrie();
+
+    @BeforeEach
+    void fill() {
+        trie.add("/events", 1);
+        trie.add("/events/1", 2);
+        trie.add("/events/12", 3);
+        trie.add("/events/1/comments", 4);
+        trie.add("/users/1", 5);
+        trie.add("/users/1/events/7/comments", 6);
+    }
+
+    @Test
+    void literalMatchesOnlyItself() {
+        assertThat(trie.match("/events/1")).containsExactly(2);
+        assertThat(trie.match("/events/2")).isEmpty();
+    }
+
+    @Test
+    void singleStarMatchesOneSegment() {
+        assertThat(trie.match("/events/*")).containsExactlyInAnyOrder(2, 3);
+        assertThat(trie.match("/*/1")).containsExactlyInAnyOrder(2, 5);
+    }
+
+    @Test
+    void starInsideSegmentMatchesPartOfIt() {
+        assertThat(trie.match("/events/1*")).containsExactlyInAnyOrder(2, 3);
+        assertThat(trie.match("/events/*2")).containsExactly(3);
+        assertThat(trie.match("/ev*nts")).containsExactly(1);
+        assertThat(trie.match("/events/1*2*")).containsExactly(3);
+    }
+
+    @Test
+    void doubleStarMatchesAnyNumberOfSegmentsIncludingNone() {
+        assertThat(trie.match("/events/**")).containsExactlyInAnyOrder(1, 2, 3, 4);
+        assertThat(trie.match("/**/comments")).containsExactlyInAnyOrder(4, 6);
+        assertThat(trie.match("/**")).containsExactlyInAnyOrder(1, 2, 3, 4, 5, 6);
+        assertThat(trie.match("**")).containsExactlyInAnyOrder(1, 2, 3, 4, 5, 6);
+        assertThat(trie.match("/**/events/**/comments")).containsExactlyInAnyOrder(4, 6);
+    }
+
+    @Test
+    void isPatternDetectsStars() {
+        assertThat(UriTrie.isPattern("/events/*")).isTrue();
+        assertThat(UriTrie.isPattern("/events/1")).isFalse();
+    }
+
+    // Повторяющиеся ** и * не должны перебирать все разбиения пути и сегмента
+    @Test
+    void repeatedWildcardsStayLinear() {
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            deep.append("/a");
+        }
+        trie.add(deep.toString(), 100);
+        trie.add("/" + "a".repeat(5_000), 101);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertThat(trie.match("/**/a/**/a/**/a/**/a/**/a/**/b")).isEmpty();
+            assertThat(trie.match("/**/**/**/**/**/**/a")).contains(100);
+            assertThat(trie.match("/*a*a*a*a*a*a*a*a*a*a*b")).isEmpty();
+            assertThat(trie.match("/*a*a*a*a*a*a*a*a*a*a*")).containsExactly(101);
+        });
+    }
+}
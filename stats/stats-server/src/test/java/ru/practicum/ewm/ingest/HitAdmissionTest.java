@@ -0,0 +1,143 @@
+package ru.practicum.ewm.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.exception.TooManyRequestsException;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitAdmissionTest {
+
+    private final HitBuffer hitBuffer = mock(HitBuffer.class);
+    private final HitWriter hitWriter = mock(HitWriter.class);
+    private IngestionProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new IngestionProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        when(hitBuffer.offerAll(anyList())).thenReturn(false);
+    }
+
+    @Test
+    void queuedBatchIsNotWrittenSynchronously() {
+        when(hitBuffer.offerAll(anyList())).thenReturn(true);
+
+        admission().admit(hits(3));
+
+        verify(hitWriter, never()).write(anyList());
+    }
+
+    @Test
+    void batchIsWrittenWhenQueueIsFullAndWriteSlotIsFree() {
+        List<EndpointHit> hits = hits(3);
+
+        admission().admit(hits);
+
+        verify(hitWriter).write(hits);
+    }
+
+    @Test
+    void rejectPolicyRefusesWholeBatchWhenNoSlotIsFree() {
+        properties.setMaxConcurrentWrites(0);
+        properties.setOverloadPolicy(OverloadPolicy.REJECT);
+        HitAdmission admission = admission();
+
+        assertThatThrownBy(() -> admission.admit(hits(5)))
+                .isInstanceOfSatisfying(TooManyRequestsException.class,
+                        e -> assertThat(e.getRetryAfter()).isEqualTo(properties.getRetryAfter()));
+        verify(hitWriter, never()).write(anyList());
+        assertThat(shed()).isEqualTo(5);
+    }
+
+    @Test
+    void dropPolicyShedsBatchSilently() {
+        properties.setMaxConcurrentWrites(0);
+        properties.setOverloadPolicy(OverloadPolicy.DROP);
+
+        admission().admit(hits(4));
+
+        verify(hitWriter, never()).write(anyList());
+        assertThat(shed()).isEqualTo(4);
+    }
+
+    @Test
+    void samplePolicyShedsUnsampledHits() {
+        properties.setMaxConcurrentWrites(0);
+        properties.setOverloadPolicy(OverloadPolicy.SAMPLE);
+        properties.setSampleRate(0);
+
+        admission().admit(hits(4));
+
+        verify(hitWriter, never()).write(anyList());
+        assertThat(shed()).isEqualTo(4);
+    }
+
+    @Test
+    void repeatedBatchKeyIsAcknowledgedWithoutWriting() {
+        HitAdmission admission = admission();
+
+        admission.admit(hits(2), "batch");
+        admission.admit(hits(2), "batch");
+
+        verify(hitWriter, times(1)).write(anyList());
+        assertThat(meterRegistry.get("stats.ingestion.duplicate.batches").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedBatchCanBeRetriedWithSameKey() {
+        doThrow(new IllegalStateException("БД недоступна")).doNothing().when(hitWriter).write(anyList());
+        HitAdmission admission = admission();
+
+        assertThatThrownBy(() -> admission.admit(hits(2), "batch")).isInstanceOf(IllegalStateException.class);
+        admission.admit(hits(2), "batch");
+
+        verify(hitWriter, times(2)).write(anyList());
+    }
+
+    @Test
+    void batchInFlightIsRefusedWithRetryAfter() {
+        HitBatchKeys hitBatchKeys = new HitBatchKeys(properties);
+        HitAdmission admission = new HitAdmission(properties, hitBuffer, hitWriter, hitBatchKeys, meterRegistry);
+        assertThat(hitBatchKeys.begin("batch")).isEqualTo(HitBatchKeys.State.NEW);
+
+        assertThatThrownBy(() -> admission.admit(hits(2), "batch")).isInstanceOf(TooManyRequestsException.class);
+        verify(hitWriter, never()).write(anyList());
+    }
+
+    private HitAdmission admission() {
+        return new HitAdmission(properties, hitBuffer, hitWriter, new HitBatchKeys(properties), meterRegistry);
+    }
+
+    private double shed() {
+        return meterRegistry.get("stats.ingestion.shed").counter().count();
+    }
+
+    private static List<EndpointHit> hits(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    EndpointHit hit = new EndpointHit();
+                    hit.setApp("ewm-main-service");
+                    hit.setUri("/events/" + i);
+                    hit.setIp("10.0.0." + i);
+                    hit.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0));
+                    return hit;
+                })
+                .toList();
+    }
+}
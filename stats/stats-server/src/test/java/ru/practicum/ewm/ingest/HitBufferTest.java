@@ -0,0 +1,149 @@
+package ru.practicum.ewm.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.store.StatsStore;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HitBufferTest {
+
+    private final List<EndpointHit> written = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final CountDownLatch writesAllowed = new CountDownLatch(1);
+    private volatile boolean blockWrites;
+
+    private IngestionProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private HitBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        StatsStore store = mock(StatsStore.class);
+        doAnswer(invocation -> {
+            if (blockWrites) {
+                writesAllowed.await();
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("БД недоступна");
+            }
+            written.addAll(invocation.getArgument(0));
+            return null;
+        }).when(store).append(anyList());
+
+        properties = new IngestionProperties();
+        properties.setMode(IngestionMode.ASYNC);
+        properties.setQueueCapacity(100);
+        properties.setBatchSize(10);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        properties.setWriteBackoff(Duration.ofMillis(1));
+        meterRegistry = new SimpleMeterRegistry();
+        buffer = new HitBuffer(properties, new HitWriter(store, List.of()), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writesAllowed.countDown();
+        buffer.stop();
+    }
+
+    @Test
+    void failedWriteIsRetried() {
+        failuresLeft.set(2);
+        buffer.start();
+
+        assertThat(buffer.offerAll(hits(5))).isTrue();
+        buffer.stop();
+
+        assertThat(written).hasSize(5);
+        assertThat(dropped()).isZero();
+    }
+
+    @Test
+    void batchIsDroppedAndCountedAfterLastAttempt() {
+        properties.setWriteAttempts(3);
+        failuresLeft.set(3);
+        buffer.start();
+
+        assertThat(buffer.offerAll(hits(5))).isTrue();
+        buffer.stop();
+
+        assertThat(written).isEmpty();
+        assertThat(dropped()).isEqualTo(5);
+    }
+
+    // Остановка дожидается записи всей очереди, а не только текущей пачки
+    @Test
+    void stopWritesWholeQueue() {
+        buffer.start();
+        for (int i = 0; i < 9; i++) {
+            assertThat(buffer.offerAll(hits(10))).isTrue();
+        }
+
+        buffer.stop();
+
+        assertThat(written).hasSize(90);
+        assertThat(buffer.isRunning()).isFalse();
+    }
+
+    @Test
+    void stoppedBufferRefusesHits() {
+        buffer.start();
+        buffer.stop();
+
+        assertThat(buffer.offerAll(hits(1))).isFalse();
+    }
+
+    // Фоновая запись держит не больше одного хита, остальные остаются в очереди
+    @Test
+    void batchIsQueuedWholeOrNotAtAll() {
+        properties.setBatchSize(1);
+        blockWrites = true;
+        buffer.start();
+
+        assertThat(buffer.offerAll(hits(95))).isTrue();
+        assertThat(buffer.offerAll(hits(10))).isFalse();
+        assertThat(buffer.offerAll(hits(5))).isTrue();
+    }
+
+    @Test
+    void syncModeDoesNotStartWriter() {
+        properties.setMode(IngestionMode.SYNC);
+        buffer.start();
+
+        assertThat(buffer.isRunning()).isFalse();
+        assertThat(buffer.offerAll(hits(1))).isFalse();
+    }
+
+    private double dropped() {
+        return meterRegistry.get("stats.ingestion.dropped").counter().count();
+    }
+
+    private static List<EndpointHit> hits(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    EndpointHit hit = new EndpointHit();
+                    hit.setApp("ewm-main-service");
+                    hit.setUri("/events/" + i);
+                    hit.setIp("10.0.0.1");
+                    hit.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0));
+                    return hit;
+                })
+                .toList();
+    }
+}
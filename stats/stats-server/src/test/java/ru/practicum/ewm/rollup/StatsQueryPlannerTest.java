@@ -0,0 +1,104 @@
+package ru.practicum.ewm.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsQueryPlannerTest {
+
+    @Test
+    void rangeInsideOneMinuteIsReadRaw() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 10);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 15, 50);
+
+        assertThat(StatsQueryPlanner.plan(start, end)).containsExactly(QueryRange.raw(start, end, true));
+    }
+
+    @Test
+    void unalignedRangeClimbsToDaysAndDescendsAtRightEdge() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 5, 40, 10);
+
+        List<QueryRange> ranges = StatsQueryPlanner.plan(start, end);
+
+        assertThat(ranges).containsExactly(
+                QueryRange.raw(start, LocalDateTime.of(2024, 1, 1, 10, 16), false),
+                QueryRange.rollup(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 1, 10, 16), LocalDateTime.of(2024, 1, 1, 11, 0)),
+                QueryRange.rollup(RollupGranularity.HOUR, LocalDateTime.of(2024, 1, 1, 11, 0), LocalDateTime.of(2024, 1, 2, 0, 0)),
+                QueryRange.rollup(RollupGranularity.DAY, LocalDateTime.of(2024, 1, 2, 0, 0), LocalDateTime.of(2024, 1, 3, 0, 0)),
+                QueryRange.rollup(RollupGranularity.HOUR, LocalDateTime.of(2024, 1, 3, 0, 0), LocalDateTime.of(2024, 1, 3, 5, 0)),
+                QueryRange.rollup(RollupGranularity.MINUTE, LocalDateTime.of(2024, 1, 3, 5, 0), LocalDateTime.of(2024, 1, 3, 5, 40)),
+                QueryRange.raw(LocalDateTime.of(2024, 1, 3, 5, 40), end, true));
+        assertCovers(ranges, start, end);
+    }
+
+    // Конец диапазона включен, поэтому хиты ровно в end читаются из сырой таблицы даже при выровненном end
+    @Test
+    void alignedRangeHasNoLeftEdgeAndKeepsInclusiveEnd() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        assertThat(StatsQueryPlanner.plan(start, end)).containsExactly(
+                QueryRange.rollup(RollupGranularity.DAY, start, end),
+                QueryRange.raw(end, end, true));
+    }
+
+    @Test
+    void finestGranularityLimitsRollupLevels() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 5, 40, 10);
+
+        List<QueryRange> ranges = StatsQueryPlanner.plan(start, end, RollupGranularity.HOUR);
+
+        assertThat(ranges).noneMatch(range -> range.granularity() == RollupGranularity.MINUTE);
+        assertThat(ranges.getFirst()).isEqualTo(QueryRange.raw(start, LocalDateTime.of(2024, 1, 1, 11, 0), false));
+        assertThat(ranges.getLast()).isEqualTo(QueryRange.raw(LocalDateTime.of(2024, 1, 3, 5, 0), end, true));
+        assertCovers(ranges, start, end);
+    }
+
+    @Test
+    void splitDividesLongRangeIntoContiguousWholeBuckets() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 1, 11, 0, 0);
+        QueryRange edge = QueryRange.raw(to, to.plusMinutes(5), true);
+
+        List<QueryRange> parts = StatsQueryPlanner.split(List.of(QueryRange.rollup(RollupGranularity.DAY, from, to), edge), 4, 1);
+
+        assertThat(parts).containsExactly(
+                QueryRange.rollup(RollupGranularity.DAY, from, from.plusDays(3)),
+                QueryRange.rollup(RollupGranularity.DAY, from.plusDays(3), from.plusDays(6)),
+                QueryRange.rollup(RollupGranularity.DAY, from.plusDays(6), from.plusDays(9)),
+                QueryRange.rollup(RollupGranularity.DAY, from.plusDays(9), to),
+                edge);
+    }
+
+    @Test
+    void splitKeepsRangeShorterThanMinBucketsPerPart() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        QueryRange hours = QueryRange.rollup(RollupGranularity.HOUR, from, from.plusHours(30));
+
+        assertThat(StatsQueryPlanner.split(List.of(hours), 8, 24)).containsExactly(hours);
+        assertThat(StatsQueryPlanner.split(List.of(hours), 8, 10)).hasSize(3);
+    }
+
+    // Части идут встык, агрегаты выровнены по своим бакетам, а последний кусок включает end
+    private static void assertCovers(List<QueryRange> ranges, LocalDateTime start, LocalDateTime end) {
+        assertThat(ranges.getFirst().from()).isEqualTo(start);
+        assertThat(ranges.getLast().to()).isEqualTo(end);
+        assertThat(ranges.getLast().toInclusive()).isTrue();
+        for (int i = 1; i < ranges.size(); i++) {
+            assertThat(ranges.get(i).from()).isEqualTo(ranges.get(i - 1).to());
+            assertThat(ranges.get(i - 1).toInclusive()).isFalse();
+        }
+        for (QueryRange range : ranges) {
+            if (!range.isRaw()) {
+                assertThat(range.granularity().truncate(range.from())).isEqualTo(range.from());
+                assertThat(range.granularity().truncate(range.to())).isEqualTo(range.to());
+                assertThat(range.from()).isBefore(range.to());
+            }
+        }
+    }
+}
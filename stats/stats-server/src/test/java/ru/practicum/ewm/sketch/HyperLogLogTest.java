@@ -0,0 +1,97 @@
+package ru.practicum.ewm.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    // Три стандартные ошибки 1.04 / sqrt(2^12): хеш детерминирован, поэтому запас нужен только на выбор данных
+    private static final double MAX_ERROR = 3 * 1.04 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION);
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 1_000, 10_000, 100_000, 1_000_000})
+    void estimateStaysWithinErrorBound(int distinct) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < distinct; i++) {
+            sketch.add(ip(i));
+        }
+
+        assertThat((double) sketch.estimate()).isCloseTo(distinct, within(distinct * MAX_ERROR));
+    }
+
+    @Test
+    void repeatedValuesAreCountedOnce() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 500; i++) {
+                sketch.add(ip(i));
+            }
+        }
+
+        assertThat((double) sketch.estimate()).isCloseTo(500, within(500 * MAX_ERROR));
+        assertThat(new HyperLogLog().estimate()).isZero();
+        assertThat(new HyperLogLog().isEmpty()).isTrue();
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            first.add(ip(i));
+            union.add(ip(i));
+        }
+        for (int i = 40_000; i < 100_000; i++) {
+            second.add(ip(i));
+            union.add(ip(i));
+        }
+
+        first.merge(second);
+
+        assertThat(first.toBytes()).isEqualTo(union.toBytes());
+        assertThat((double) first.estimate()).isCloseTo(100_000, within(100_000 * MAX_ERROR));
+    }
+
+    @Test
+    void mergeOfDifferentPrecisionIsRejected() {
+        assertThatThrownBy(() -> new HyperLogLog(12).merge(new HyperLogLog(10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reduceMatchesSketchBuiltAtLowerPrecision() {
+        HyperLogLog precise = new HyperLogLog(12);
+        HyperLogLog coarse = new HyperLogLog(10);
+        for (int i = 0; i < 50_000; i++) {
+            precise.add(ip(i));
+            coarse.add(ip(i));
+        }
+
+        assertThat(precise.reduce(10).toBytes()).isEqualTo(coarse.toBytes());
+        assertThat(precise.reduce(12).toBytes()).isEqualTo(precise.toBytes());
+        assertThatThrownBy(() -> coarse.reduce(12)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add(ip(i));
+        }
+
+        HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertThat(restored.getPrecision()).isEqualTo(10);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    private static String ip(int i) {
+        return "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+    }
+}
@@ -0,0 +1,198 @@
+package ru.practicum.ewm.store.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.ewm.SeriesPointDto;
+import ru.practicum.ewm.StatsSeriesOutputDto;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.ingest.HitListener;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SegmentStatsStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @TempDir
+    private Path directory;
+
+    private final List<EndpointHit> replayed = new ArrayList<>();
+    private final List<SegmentStatsStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() throws IOException {
+        for (SegmentStatsStore store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    void countsHitsAndUniqueIpsWithinRange() throws IOException {
+        SegmentStatsStore store = open(DataSize.ofKilobytes(64));
+        store.append(List.of(
+                hit("/events/1", "10.0.0.1", START),
+                hit("/events/1", "10.0.0.1", START.plusMinutes(1)),
+                hit("/events/1", "10.0.0.2", START.plusMinutes(2)),
+                hit("/events/2", "10.0.0.1", START.plusMinutes(1)),
+                hit("/events/1", "10.0.0.3", START.plusHours(2))));
+
+        assertThat(store.findStats(null, START, START.plusHours(1), false, false))
+                .extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactlyInAnyOrder(tuple("/events/1", 3L), tuple("/events/2", 1L));
+        assertThat(store.findStats(null, START, START.plusHours(1), true, true))
+                .extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactlyInAnyOrder(tuple("/events/1", 2L), tuple("/events/2", 1L));
+        assertThat(store.findStats(null, START, START.plusHours(1), true, false))
+                .extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactlyInAnyOrder(tuple("/events/1", 2L), tuple("/events/2", 1L));
+    }
+
+    @Test
+    void filtersByUriAndPattern() throws IOException {
+        SegmentStatsStore store = open(DataSize.ofKilobytes(64));
+        store.append(List.of(
+                hit("/events/1", "10.0.0.1", START),
+                hit("/events/2", "10.0.0.1", START),
+                hit("/users/1/events", "10.0.0.1", START)));
+
+        assertThat(store.findStats(List.of("/events/2"), START, START, false, false))
+                .extracting(ViewStatsOutputDto::getUri)
+                .containsExactly("/events/2");
+        assertThat(store.findStats(List.of("/events/*"), START, START, false, false))
+                .extracting(ViewStatsOutputDto::getUri)
+                .containsExactlyInAnyOrder("/events/1", "/events/2");
+        assertThat(store.findStats(List.of("/unknown"), START, START, false, false)).isEmpty();
+    }
+
+    @Test
+    void keepsIpv6AddressesDistinct() throws IOException {
+        SegmentStatsStore store = open(DataSize.ofKilobytes(64));
+        store.append(List.of(
+                hit("/events/1", "2001:db8::1", START),
+                hit("/events/1", "2001:db8::2", START),
+                hit("/events/1", "2001:db8::1", START),
+                hit("/events/1", "10.0.0.1", START)));
+
+        assertThat(store.findStats(null, START, START, true, true))
+                .singleElement()
+                .extracting(ViewStatsOutputDto::getHits)
+                .isEqualTo(3L);
+    }
+
+    @Test
+    void rollsOverToNewSegmentWhenFull() throws IOException {
+        // Запись IPv4 занимает 21 байт, в сегмент помещается три хита
+        SegmentStatsStore store = open(DataSize.ofBytes(64));
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            hits.add(hit("/events/1", "10.0.0." + i, START.plusSeconds(i)));
+        }
+        store.append(hits);
+
+        assertThat(segmentFiles()).hasSize(4);
+        assertThat(store.findStats(null, START, START.plusMinutes(1), false, false))
+                .singleElement()
+                .extracting(ViewStatsOutputDto::getHits)
+                .isEqualTo(10L);
+        assertThat(store.findStats(null, START.plusSeconds(4), START.plusSeconds(6), false, false))
+                .singleElement()
+                .extracting(ViewStatsOutputDto::getHits)
+                .isEqualTo(3L);
+    }
+
+    @Test
+    void reopenedStoreKeepsHitsAndReplaysThemToListeners() throws IOException {
+        SegmentStatsStore store = open(DataSize.ofBytes(64));
+        store.append(List.of(
+                hit("/events/1", "10.0.0.1", START),
+                hit("/events/1", "10.0.0.2", START),
+                hit("/events/2", "10.0.0.1", START),
+                hit("/events/2", "2001:db8::1", START.plusSeconds(1))));
+        store.close();
+        opened.remove(store);
+        replayed.clear();
+
+        SegmentStatsStore reopened = open(DataSize.ofBytes(64));
+
+        assertThat(replayed)
+                .extracting(EndpointHit::getApp, EndpointHit::getUri, EndpointHit::getIp, EndpointHit::getTimestamp)
+                .containsExactly(
+                        tuple("ewm-main-service", "/events/1", "10.0.0.1", START),
+                        tuple("ewm-main-service", "/events/1", "10.0.0.2", START),
+                        tuple("ewm-main-service", "/events/2", "10.0.0.1", START),
+                        tuple("ewm-main-service", "/events/2", "2001:db8:0:0:0:0:0:1", START.plusSeconds(1)));
+
+        reopened.append(List.of(hit("/events/3", "10.0.0.1", START)));
+        assertThat(reopened.findStats(null, START, START.plusMinutes(1), false, false))
+                .extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactlyInAnyOrder(tuple("/events/1", 2L), tuple("/events/2", 2L), tuple("/events/3", 1L));
+        assertThat(reopened.findResourceUris("events", List.of(1L, 3L, 4L)))
+                .containsExactly("/events/1", "/events/3");
+    }
+
+    @Test
+    void buildsSeriesWithEmptyBuckets() throws IOException {
+        SegmentStatsStore store = open(DataSize.ofKilobytes(64));
+        store.append(List.of(
+                hit("/events/1", "10.0.0.1", START),
+                hit("/events/1", "10.0.0.2", START.plusSeconds(59)),
+                hit("/events/1", "10.0.0.1", START.plusMinutes(2)),
+                hit("/events/1", "10.0.0.1", START.plusMinutes(3))));
+
+        List<StatsSeriesOutputDto> series = store.findSeries(null, START, START.plusMinutes(3), Duration.ofMinutes(1), false);
+
+        assertThat(series).singleElement().satisfies(row -> assertThat(row.getPoints())
+                .extracting(SeriesPointDto::getBucketStart, SeriesPointDto::getHits)
+                .containsExactly(
+                        tuple(START, 2L),
+                        tuple(START.plusMinutes(1), 0L),
+                        tuple(START.plusMinutes(2), 1L)));
+    }
+
+    @Test
+    void rejectsSegmentsLargerThanTwoGigabytes() {
+        assertThatThrownBy(() -> open(DataSize.ofGigabytes(3))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private SegmentStatsStore open(DataSize segmentSize) throws IOException {
+        SegmentStoreProperties properties = new SegmentStoreProperties();
+        properties.setDirectory(directory);
+        properties.setSegmentSize(segmentSize);
+        properties.setScanThreads(2);
+        properties.setReplayBatchSize(2);
+        HitListener listener = replayed::addAll;
+        SegmentStatsStore store = new SegmentStatsStore(properties, List.of(listener));
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).toList();
+        }
+    }
+
+    private static EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp("ewm-main-service");
+        hit.setUri(uri);
+        hit.setIp(ip);
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
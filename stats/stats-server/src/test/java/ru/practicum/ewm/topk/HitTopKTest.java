@@ -0,0 +1,57 @@
+package ru.practicum.ewm.topk;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.practicum.ewm.ViewStatsOutputDto;
+import ru.practicum.ewm.model.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+
+class HitTopKTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void topIsKeptPerAppAndWindow() {
+        TopKProperties properties = new TopKProperties();
+        properties.setSnapshotTtl(Duration.ZERO);
+        properties.setWarmUp(false);
+        HitTopK topK = new HitTopK(properties, mock(ObjectProvider.class), mock(ObjectProvider.class));
+        topK.warmUp();
+
+        LocalDateTime now = LocalDateTime.now();
+        topK.onHits(List.of(
+                hit("ewm-main-service", "/events/1", now),
+                hit("ewm-main-service", "/events/1", now),
+                hit("ewm-main-service", "/events/2", now),
+                hit("ewm-main-service", "/events/3", now.minusDays(2)),
+                hit("other-service", "/events/9", now)));
+
+        assertThat(topK.top("ewm-main-service", TopWindow.HOUR, 5))
+                .extracting(ViewStatsOutputDto::getUri, ViewStatsOutputDto::getHits)
+                .containsExactly(tuple("/events/1", 2L), tuple("/events/2", 1L));
+        assertThat(topK.top("ewm-main-service", TopWindow.WEEK, 5))
+                .extracting(ViewStatsOutputDto::getUri)
+                .containsExactlyInAnyOrder("/events/1", "/events/2", "/events/3");
+        assertThat(topK.top("ewm-main-service", TopWindow.ALL, 1))
+                .extracting(ViewStatsOutputDto::getUri)
+                .containsExactly("/events/1");
+        assertThat(topK.top("other-service", TopWindow.DAY, 5)).extracting(ViewStatsOutputDto::getUri)
+                .containsExactly("/events/9");
+        assertThat(topK.top("unknown-service", TopWindow.DAY, 5)).isEmpty();
+    }
+
+    private static EndpointHit hit(String app, String uri, LocalDateTime timestamp) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp(app);
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.ewm.topk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsAreExactWhileItemsFitCapacity() {
+        SpaceSaving summary = new SpaceSaving(10);
+        summary.offer("/events/1", 3);
+        summary.offer("/events/2", 5);
+        summary.offer("/events/1", 4);
+
+        assertThat(summary.top(10))
+                .extracting(SpaceSaving.Entry::item, SpaceSaving.Entry::count, SpaceSaving.Entry::error)
+                .containsExactly(tuple("/events/1", 7L, 0L), tuple("/events/2", 5L, 0L));
+    }
+
+    @Test
+    void frequentItemsSurviveEvictionWithBoundedError() {
+        SpaceSaving summary = new SpaceSaving(4);
+        for (int i = 0; i < 1_000; i++) {
+            summary.offer("/events/hot", 3);
+            summary.offer("/events/warm", 2);
+            summary.offer("/events/cold-" + i, 1); // Редкие uri постоянно вытесняют друг друга
+        }
+
+        List<SpaceSaving.Entry> top = summary.top(2);
+        assertThat(top).extracting(SpaceSaving.Entry::item).containsExactly("/events/hot", "/events/warm");
+        // Оценка не занижена, а нижняя граница count - error не превышает истинной частоты
+        assertThat(top.get(0).count()).isGreaterThanOrEqualTo(3_000);
+        assertThat(top.get(0).count() - top.get(0).error()).isLessThanOrEqualTo(3_000);
+        assertThat(top.get(1).count()).isGreaterThanOrEqualTo(2_000);
+        assertThat(top.get(1).count() - top.get(1).error()).isLessThanOrEqualTo(2_000);
+    }
+
+    @Test
+    void mergeSumsWeightsOfBothSummaries() {
+        SpaceSaving first = new SpaceSaving(10);
+        first.offer("/events/1", 2);
+        first.offer("/events/2", 1);
+        SpaceSaving second = new SpaceSaving(10);
+        second.offer("/events/2", 6);
+
+        SpaceSaving merged = new SpaceSaving(10);
+        merged.merge(first);
+        merged.merge(second);
+
+        assertThat(merged.top(10))
+                .extracting(SpaceSaving.Entry::item, SpaceSaving.Entry::count)
+                .containsExactly(tuple("/events/2", 7L), tuple("/events/1", 2L));
+    }
+
+    @Test
+    void topIsLimitedByKAndClearEmptiesSummary() {
+        SpaceSaving summary = new SpaceSaving(10);
+        for (int i = 1; i <= 5; i++) {
+            summary.offer("/events/" + i, i);
+        }
+
+        assertThat(summary.top(2)).extracting(SpaceSaving.Entry::item).containsExactly("/events/5", "/events/4");
+        summary.clear();
+        assertThat(summary.isEmpty()).isTrue();
+        assertThat(summary.top(2)).isEmpty();
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThatThrownBy(() -> new SpaceSaving(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
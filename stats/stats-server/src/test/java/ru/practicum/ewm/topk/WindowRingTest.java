@@ -0,0 +1,70 @@
+package ru.practicum.ewm.topk;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class WindowRingTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Test
+    void hitsOlderThanWindowAreDropped() {
+        WindowRing ring = new WindowRing(TopWindow.HOUR, 10, Duration.ZERO);
+        ring.add(NOW.minusMinutes(30), "/events/1", 2, NOW);
+        ring.add(NOW.minusMinutes(61), "/events/2", 5, NOW);
+
+        assertThat(ring.snapshot(NOW).top(10))
+                .extracting(SpaceSaving.Entry::item, SpaceSaving.Entry::count)
+                .containsExactly(tuple("/events/1", 2L));
+    }
+
+    @Test
+    void slotsLeaveWindowAsTimeMovesOn() {
+        WindowRing ring = new WindowRing(TopWindow.HOUR, 10, Duration.ZERO);
+        ring.add(NOW, "/events/1", 1, NOW);
+        ring.add(NOW.plusMinutes(30), "/events/2", 1, NOW.plusMinutes(30));
+
+        assertThat(ring.snapshot(NOW.plusMinutes(30)).top(10)).hasSize(2);
+        assertThat(ring.snapshot(NOW.plusMinutes(61)).top(10))
+                .extracting(SpaceSaving.Entry::item)
+                .containsExactly("/events/2");
+    }
+
+    @Test
+    void futureHitsCountInCurrentSlot() {
+        WindowRing ring = new WindowRing(TopWindow.HOUR, 10, Duration.ZERO);
+        ring.add(NOW.plusHours(3), "/events/1", 4, NOW);
+
+        assertThat(ring.snapshot(NOW).top(10))
+                .extracting(SpaceSaving.Entry::item, SpaceSaving.Entry::count)
+                .containsExactly(tuple("/events/1", 4L));
+    }
+
+    @Test
+    void allTimeWindowKeepsEveryHit() {
+        WindowRing ring = new WindowRing(TopWindow.ALL, 10, Duration.ZERO);
+        ring.add(NOW.minusYears(3), "/events/1", 1, NOW);
+        ring.add(NOW, "/events/1", 1, NOW);
+
+        assertThat(ring.snapshot(NOW).top(10))
+                .extracting(SpaceSaving.Entry::count)
+                .containsExactly(2L);
+    }
+
+    @Test
+    void snapshotIsReusedWithinTtl() {
+        WindowRing ring = new WindowRing(TopWindow.HOUR, 10, Duration.ofHours(1));
+        ring.add(NOW, "/events/1", 1, NOW);
+        SpaceSaving first = ring.snapshot(NOW);
+
+        ring.add(NOW, "/events/2", 1, NOW);
+
+        assertThat(ring.snapshot(NOW)).isSameAs(first);
+        assertThat(first.top(10)).extracting(SpaceSaving.Entry::item).containsExactly("/events/1");
+    }
+}
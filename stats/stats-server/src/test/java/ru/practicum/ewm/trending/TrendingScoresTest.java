@@ -0,0 +1,129 @@
+package ru.practicum.ewm.trending;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.practicum.ewm.TrendingOutputDto;
+import ru.practicum.ewm.dictionary.HitDictionary;
+import ru.practicum.ewm.dictionary.UriEntry;
+import ru.practicum.ewm.model.EndpointHit;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.rollup.RollupBucket;
+import ru.practicum.ewm.rollup.RollupGranularity;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.InstanceOfAssertFactories.DOUBLE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TrendingScoresTest {
+
+    private static final String APP = "ewm-main-service";
+
+    private final TrendingProperties properties = new TrendingProperties();
+    private final ObjectProvider<RollupRepository> rollupRepository = provider();
+    private final ObjectProvider<HitDictionary> hitDictionary = provider();
+
+    @BeforeEach
+    void setUp() {
+        properties.setHalfLife(Duration.ofHours(1));
+        properties.setWarmUp(false);
+    }
+
+    @Test
+    void hitWeightHalvesEveryHalfLife() {
+        TrendingScores scores = new TrendingScores(properties, rollupRepository, hitDictionary);
+        LocalDateTime now = LocalDateTime.now();
+        scores.onHits(List.of(hit(APP, "/events/1", now), hit(APP, "/events/2", now.minusHours(1)),
+                hit(APP, "/events/2", now.minusHours(2))));
+
+        List<TrendingOutputDto> result = scores.scores(APP, List.of("/events/1", "/events/2", "/events/3"));
+
+        assertThat(result).extracting(TrendingOutputDto::getUri).containsExactly("/events/1", "/events/2");
+        assertThat(result.get(0).getScore()).isCloseTo(1.0, within(0.01));
+        assertThat(result.get(1).getScore()).isCloseTo(0.75, within(0.01));
+    }
+
+    @Test
+    void hitsFromFutureWeighNoMoreThanOne() {
+        TrendingScores scores = new TrendingScores(properties, rollupRepository, hitDictionary);
+        scores.onHits(List.of(hit(APP, "/events/1", LocalDateTime.now().plusDays(1))));
+
+        assertThat(scores.top(APP, 10)).singleElement()
+                .extracting(TrendingOutputDto::getScore).asInstanceOf(DOUBLE)
+                .isCloseTo(1.0, within(0.01));
+    }
+
+    @Test
+    void topIsOrderedAndFilteredByApp() {
+        TrendingScores scores = new TrendingScores(properties, rollupRepository, hitDictionary);
+        LocalDateTime now = LocalDateTime.now();
+        scores.onHits(List.of(
+                hit(APP, "/events/1", now),
+                hit(APP, "/events/2", now), hit(APP, "/events/2", now),
+                hit(APP, "/events/3", now), hit(APP, "/events/3", now), hit(APP, "/events/3", now),
+                hit("other-service", "/events/9", now), hit("other-service", "/events/9", now),
+                hit("other-service", "/events/9", now), hit("other-service", "/events/9", now)));
+
+        assertThat(scores.top(APP, 2)).extracting(TrendingOutputDto::getUri).containsExactly("/events/3", "/events/2");
+        assertThat(scores.top(null, 1)).extracting(TrendingOutputDto::getApp).containsExactly("other-service");
+    }
+
+    @Test
+    void sweepEvictsFadedUris() {
+        TrendingScores scores = new TrendingScores(properties, rollupRepository, hitDictionary);
+        LocalDateTime now = LocalDateTime.now();
+        scores.onHits(List.of(hit(APP, "/events/1", now), hit(APP, "/events/2", now.minusHours(10))));
+
+        scores.sweep();
+
+        assertThat(scores.top(APP, 10)).extracting(TrendingOutputDto::getUri).containsExactly("/events/1");
+    }
+
+    @Test
+    void warmUpCountsBucketHitsAtBucketMiddle() {
+        properties.setWarmUp(true);
+        RollupRepository rollups = mock(RollupRepository.class);
+        HitDictionary dictionary = mock(HitDictionary.class);
+        when(rollupRepository.getIfAvailable()).thenReturn(rollups);
+        when(hitDictionary.getIfAvailable()).thenReturn(dictionary);
+        when(dictionary.appName(1)).thenReturn(APP);
+        when(dictionary.uri(7)).thenReturn(new UriEntry(7, "/events/7", null));
+        // Середина бакета - ровно полтора периода полураспада назад: вес 4 хитов ~ 4 / 2^1.5
+        LocalDateTime bucketStart = LocalDateTime.now().minusHours(2);
+        doAnswer(invocation -> {
+            invocation.<Consumer<RollupBucket>>getArgument(2).accept(new RollupBucket(1, 7, bucketStart, 4));
+            return null;
+        }).when(rollups).forEachBucket(eq(RollupGranularity.HOUR), any(), any());
+        TrendingScores scores = new TrendingScores(properties, rollupRepository, hitDictionary);
+
+        scores.warmUp();
+
+        assertThat(scores.scores(APP, List.of("/events/7"))).singleElement()
+                .extracting(TrendingOutputDto::getScore).asInstanceOf(DOUBLE)
+                .isCloseTo(4 / Math.pow(2, 1.5), within(0.02));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider() {
+        return mock(ObjectProvider.class);
+    }
+
+    private static EndpointHit hit(String app, String uri, LocalDateTime timestamp) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp(app);
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}